@@ -1,45 +1,416 @@
-package splat;
-
-import java.io.File;
-import java.util.List;
-
-import splat.lexer.Lexer;
-import splat.lexer.Token;
-
-import splat.parser.Parser;
-import splat.parser.elements.ProgramAST;
-
-import splat.executor.Executor;
-
-import splat.semanticanalyzer.SemanticAnalyzer;
-
-public class Splat {
-
-	private File progFile;
-	
-	public Splat(File progFile) {
-		this.progFile = progFile;
-	}
-	
-	public void processFileAndExecute() throws SplatException {
-		
-		// Step 1.  Tokenize
-		Lexer lexer = new Lexer(progFile);
-		List<Token> tokens = lexer.tokenize();
-		
-		// Step 2.  Parse
-		Parser parser = new Parser(tokens);
-		ProgramAST progAST = parser.parse();
-		
-		// Step 3.  Semantic Analysis
-		SemanticAnalyzer analyzer = new SemanticAnalyzer(progAST);
-		analyzer.analyze();
-		
-		// Step 4.  Executor
-		Executor executor = new Executor(progAST);
-		executor.runProgram();
-		
-		// THE END!
-	}
-
-}
+package splat;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+
+import splat.cache.AnalysisCache;
+import splat.cache.CompileCache;
+
+import splat.lexer.Lexer;
+import splat.lexer.LineIndex;
+import splat.lexer.ParallelLexer;
+import splat.lexer.SourceBuffer;
+import splat.lexer.TokenBuffer;
+import splat.lexer.TokenStream;
+
+import splat.parser.ParallelParser;
+import splat.parser.Parser;
+import splat.parser.StreamingParser;
+import splat.parser.elements.ProgramAST;
+import splat.parser.elements.Statement;
+import splat.parser.flat.FlatAST;
+import splat.parser.flat.FlatASTBuilder;
+
+import splat.executor.Executor;
+import splat.executor.FlatExecutor;
+
+import splat.optimizer.PassManager;
+
+import splat.semanticanalyzer.CallGraph;
+import splat.semanticanalyzer.SemanticAnalyzer;
+
+public class Splat {
+
+	private File progFile;
+	private boolean parallelLexing = false;
+	private boolean parallelParsing = false;
+	private boolean streaming = false;
+	private boolean flatExecution = false;
+	private boolean dropPositions = false;
+	private CompileCache cache = null;
+	private boolean dumpEffects = false;
+	private int optLevel = 0;
+	private boolean verifyPasses = false;
+	private boolean printPassStats = false;
+	
+	public Splat(File progFile) {
+		this.progFile = progFile;
+	}
+	
+	/**
+	 * Lexes the whole file up front on a ForkJoinPool instead of pulling
+	 * tokens from a single Lexer while parsing.  Pays off for very large
+	 * (generated) programs.
+	 */
+	public void setParallelLexing(boolean parallelLexing) {
+		this.parallelLexing = parallelLexing;
+	}
+	
+	/**
+	 * Lexes the whole file up front and parses the top-level declarations
+	 * on a ForkJoinPool.  Pays off for programs with thousands of functions.
+	 */
+	public void setParallelParsing(boolean parallelParsing) {
+		this.parallelParsing = parallelParsing;
+	}
+	
+	/**
+	 * Once the declarations are parsed and analyzed, parses, analyzes and
+	 * runs the statements of the program body one at a time, dropping each
+	 * one after it has run.  Memory stays flat however long the body is, and
+	 * output starts right away.  The catch is that errors are found in the
+	 * order the file is processed: an error in a statement only shows up
+	 * after the statements before it have run, and an error in the
+	 * declarations wins over a syntax error in the body.  Takes precedence
+	 * over parallel parsing.
+	 */
+	public void setStreaming(boolean streaming) {
+		this.streaming = streaming;
+	}
+	
+	/**
+	 * Packs the analyzed program into a FlatAST and runs that instead of
+	 * the ProgramAST, which can then be garbage collected.  Doesn't apply
+	 * to streaming.
+	 */
+	public void setFlatExecution(boolean flatExecution) {
+		this.flatExecution = flatExecution;
+	}
+	
+	/**
+	 * For programs already known to be valid: runs the FlatAST without the
+	 * source positions of its nodes, so an execution error is reported at
+	 * line -1, column -1.  Implies flat execution.
+	 */
+	public void setDropPositions(boolean dropPositions) {
+		this.dropPositions = dropPositions;
+	}
+	
+	/**
+	 * Looks the source up in the cache before lexing it, and runs the
+	 * analyzed program stored there if there is one.  Programs that pass
+	 * semantic analysis are stored for next time.  Doesn't apply to
+	 * streaming.
+	 */
+	public void setCache(CompileCache cache) {
+		this.cache = cache;
+	}
+	
+	/**
+	 * Prints the call graph of the analyzed program, with what effects each
+	 * function can have, instead of running it.  Takes precedence over
+	 * streaming.
+	 */
+	public void setDumpEffects(boolean dumpEffects) {
+		this.dumpEffects = dumpEffects;
+	}
+	
+	/**
+	 * Runs the passes of PassManager.forLevel on the analyzed program before
+	 * running it.  Level 0, the default, runs it as written.  Doesn't apply
+	 * to streaming.
+	 */
+	public void setOptLevel(int optLevel) {
+		if (optLevel < 0 || optLevel > PassManager.MAX_LEVEL) {
+			throw new IllegalArgumentException("No optimization level " + optLevel);
+		}
+		this.optLevel = optLevel;
+	}
+	
+	/**
+	 * Analyzes the program again after each optimization pass, to catch a
+	 * pass that breaks it.
+	 */
+	public void setVerifyPasses(boolean verifyPasses) {
+		this.verifyPasses = verifyPasses;
+	}
+	
+	/**
+	 * Prints the time each optimization pass took, and how many nodes it
+	 * removed and rewrote, to System.err.
+	 */
+	public void setPrintPassStats(boolean printPassStats) {
+		this.printPassStats = printPassStats;
+	}
+	
+	public void processFileAndExecute() throws SplatException {
+		
+		Lexer lexer = new Lexer(progFile);
+		SourceBuffer source = lexer.getSource();
+		
+		try {
+			if (streaming && !dumpEffects) {
+				processAndStream(lexer);
+			} else {
+				process(lexer);
+			}
+		} catch (SplatException ex) {
+			// The AST only keeps source offsets, so errors found after
+			// parsing get their line and column here
+			ex.locate(new LineIndex(source));
+			throw ex;
+		}
+	}
+	
+	private void process(Lexer lexer) throws SplatException {
+		
+		boolean flat = flatExecution || dropPositions;
+		
+		// A program that was analyzed before goes straight to step 4
+		String cacheKey = null;
+		if (cache != null) {
+			cacheKey = cache.key(lexer.getSource());
+			ProgramAST cached = cache.load(cacheKey);
+			if (cached != null) {
+				if (dumpEffects) {
+					new CallGraph(cached).dump(System.out);
+				} else {
+					optimize(cached);
+					execute(cached, flat, !dropPositions);
+				}
+				return;
+			}
+		}
+		
+		// Steps 1 and 2.  Tokenize and parse -- the parser pulls tokens from
+		// the lexer as it goes, so the full token list is never built, unless
+		// it's being lexed or parsed in parallel
+		ProgramAST progAST;
+		if (parallelParsing) {
+			TokenBuffer tokens = parallelLexing
+					? new ParallelLexer(lexer.getSource()).tokenizeToBuffer()
+					: lexer.tokenizeToBuffer();
+			progAST = new ParallelParser(tokens).parse();
+		} else {
+			TokenStream tokens = parallelLexing
+					? new ParallelLexer(lexer.getSource()).stream()
+					: lexer.stream();
+			Parser parser = new Parser(tokens);
+			progAST = parser.parse();
+		}
+		
+		SemanticAnalyzer analyzer = analyze(progAST, null);
+		if (cache != null) {
+			cache.store(cacheKey, progAST);
+		}
+		
+		if (dumpEffects) {
+			analyzer.getCallGraph().dump(System.out);
+			return;
+		}
+		optimize(progAST);
+		execute(progAST, flat, !dropPositions);
+	}
+
+	/*
+	 * All four steps for the declarations up front, and then for each
+	 * statement of the program body in turn
+	 */
+	private void processAndStream(Lexer lexer) throws SplatException {
+		
+		TokenStream tokens = parallelLexing
+				? new ParallelLexer(lexer.getSource()).stream()
+				: lexer.stream();
+		StreamingParser parser = new StreamingParser(tokens);
+		ProgramAST progAST = parser.parseDecls();
+		
+		SemanticAnalyzer analyzer = new SemanticAnalyzer(progAST);
+		analyzer.analyzeDecls();
+		
+		Executor executor = new Executor(progAST);
+		executor.beginProgram();
+		
+		Statement stmt;
+		while ((stmt = parser.nextStmt()) != null) {
+			analyzer.analyzeStmt(stmt);
+			executor.runStmt(stmt);
+		}
+	}
+
+	/*
+	 * Steps 3 and 4, for a program that has already been parsed
+	 */
+	static void analyzeAndExecute(ProgramAST progAST, AnalysisCache analysisCache, boolean flat,
+			boolean keepPositions) throws SplatException {
+		analyze(progAST, analysisCache);
+		execute(progAST, flat, keepPositions);
+	}
+	
+	// Step 3.  Semantic Analysis
+	private static SemanticAnalyzer analyze(ProgramAST progAST, AnalysisCache analysisCache)
+			throws SplatException {
+		SemanticAnalyzer analyzer = new SemanticAnalyzer(progAST);
+		analyzer.setAnalysisCache(analysisCache);
+		analyzer.analyze();
+		return analyzer;
+	}
+	
+	// Between steps 3 and 4.  Optimization, after the program is cached so
+	// the cache holds it as written whatever the level
+	private void optimize(ProgramAST progAST) {
+		if (optLevel == 0) {
+			return;
+		}
+		PassManager passes = PassManager.forLevel(optLevel);
+		passes.setVerifying(verifyPasses);
+		passes.run(progAST);
+		if (printPassStats) {
+			passes.printStats(System.err);
+		}
+	}
+	
+	// Step 4.  Executor
+	private static void execute(ProgramAST progAST, boolean flat, boolean keepPositions)
+			throws SplatException {
+		if (flat) {
+			FlatAST flatAST = FlatASTBuilder.build(progAST, keepPositions);
+			progAST = null;
+			new FlatExecutor(flatAST).runProgram();
+		} else {
+			Executor executor = new Executor(progAST);
+			executor.runProgram();
+		}
+		
+		// THE END!
+	}
+
+	/**
+	 * Usage: Splat [--parallel-lex] [--parallel-parse] [--stream] [--flat] [--no-positions]
+	 *        [--cache=dir] [--cache-size=MB] [--watch] [--effects]
+	 *        [-O0|-O1|-O2] [--verify-passes] [--pass-stats] file.splat
+	 */
+	public static void main(String[] args) throws Exception {
+
+		File progFile = null;
+		boolean parallelLexing = false;
+		boolean parallelParsing = false;
+		boolean streaming = false;
+		boolean flatExecution = false;
+		boolean dropPositions = false;
+		File cacheDir = null;
+		long cacheSize = CompileCache.DEFAULT_MAX_BYTES;
+		boolean watch = false;
+		boolean dumpEffects = false;
+		int optLevel = 0;
+		boolean verifyPasses = false;
+		boolean printPassStats = false;
+
+		for (String arg : args) {
+			switch (arg) {
+				case "--parallel-lex":
+					parallelLexing = true;
+					break;
+				case "--parallel-parse":
+					parallelParsing = true;
+					break;
+				case "--stream":
+					streaming = true;
+					break;
+				case "--flat":
+					flatExecution = true;
+					break;
+				case "--no-positions":
+					dropPositions = true;
+					break;
+				case "--watch":
+					watch = true;
+					break;
+				case "--effects":
+					dumpEffects = true;
+					break;
+				case "--verify-passes":
+					verifyPasses = true;
+					break;
+				case "--pass-stats":
+					printPassStats = true;
+					break;
+				default:
+					if (arg.startsWith("--cache=")) {
+						cacheDir = new File(arg.substring("--cache=".length()));
+						break;
+					}
+					if (arg.startsWith("--cache-size=")) {
+						try {
+							cacheSize = Long.parseLong(arg.substring("--cache-size=".length())) << 20;
+						} catch (NumberFormatException ex) {
+							usage();
+							return;
+						}
+						break;
+					}
+					if (arg.matches("-O[0-9]")) {
+						optLevel = arg.charAt(2) - '0';
+						if (optLevel > PassManager.MAX_LEVEL) {
+							usage();
+							return;
+						}
+						break;
+					}
+					if (arg.startsWith("-") || progFile != null) {
+						usage();
+						return;
+					}
+					progFile = new File(arg);
+			}
+		}
+
+		if (progFile == null) {
+			usage();
+			return;
+		}
+
+		// Sources are UTF-8, so print in UTF-8 too rather than in whatever
+		// the platform default happens to be
+		System.setOut(new PrintStream(
+				new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 1 << 16),
+				true, "UTF-8"));
+
+		if (watch) {
+			new SplatWatcher(progFile).run();
+			return;
+		}
+
+		Splat splat = new Splat(progFile);
+		splat.setParallelLexing(parallelLexing);
+		splat.setParallelParsing(parallelParsing);
+		splat.setStreaming(streaming);
+		splat.setFlatExecution(flatExecution);
+		splat.setDropPositions(dropPositions);
+		splat.setDumpEffects(dumpEffects);
+		splat.setOptLevel(optLevel);
+		splat.setVerifyPasses(verifyPasses);
+		splat.setPrintPassStats(printPassStats);
+		if (cacheDir != null) {
+			splat.setCache(new CompileCache(cacheDir, cacheSize));
+		}
+		try {
+			splat.processFileAndExecute();
+		} catch (SplatException ex) {
+			System.out.println(ex);
+			System.out.flush();
+			System.exit(1);
+		}
+		System.out.flush();
+	}
+
+	private static void usage() {
+		System.err.println("Usage: java splat.Splat [--parallel-lex] [--parallel-parse] [--stream] [--flat] "
+				+ "[--no-positions] [--cache=dir] [--cache-size=MB] [--watch] [--effects] [-O0|-O1|-O2] "
+				+ "[--verify-passes] [--pass-stats] <file.splat>");
+		System.exit(2);
+	}
+
+}
@@ -1,9 +1,12 @@
 package splat;
 
+import splat.lexer.LineIndex;
+
 public abstract class SplatException extends Exception {
 
 	private int line;
 	private int column;
+	private int offset = -1; // source offset still to be turned into line and column
 	
 	public SplatException(String msg, int line, int column) {
 		super(msg);
@@ -11,6 +14,15 @@ public abstract class SplatException extends Exception {
 		this.column = column;
 	}
 	
+	/**
+	 * For an error at a source offset.  The line and column stay -1 until
+	 * locate() works them out, which the driver does before reporting.
+	 */
+	protected SplatException(String msg, int offset) {
+		this(msg, -1, -1);
+		this.offset = offset;
+	}
+	
 	public int getLine() {
 		return line;
 	}
@@ -19,6 +31,25 @@ public abstract class SplatException extends Exception {
 		return column;
 	}
 	
+	/**
+	 * Returns the source offset of an error that hasn't been located yet,
+	 * or -1.
+	 */
+	public int getOffset() {
+		return offset;
+	}
+	
+	/**
+	 * Fills in the line and column of an error reported at a source offset.
+	 */
+	public void locate(LineIndex lines) {
+		if (offset >= 0) {
+			line = lines.line(offset);
+			column = lines.column(offset);
+			offset = -1;
+		}
+	}
+	
 	public String toString() {
 		return super.getMessage() + " Error at line " 
 						+ line + ", column " + column;
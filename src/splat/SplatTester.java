@@ -1,6 +1,13 @@
 package splat;
 
 import java.io.*;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import splat.cache.CompileCache;
 
 public class  SplatTester {
 
@@ -11,6 +18,10 @@ public class  SplatTester {
 	// Path to where the directory of .splat test files are located
 	private final String testDirName = "./tests";
 
+	// Cache size for the --cache modes, small enough that running the whole
+	// corpus evicts entries along the way
+	private final long cacheSize = 1L << 20;
+
 	private File testDir;
 
 	private int totalTests;
@@ -21,8 +32,26 @@ public class  SplatTester {
 	private int[] resCodeCount;
 	private int[] falseThrows;
 
+	// How each test ended in the default mode, which every other execution
+	// mode has to match
+	private Map<File, String> defaultOutcomes = new HashMap<>();
+
+	private List<Mode> modes = new ArrayList<>();
+
+	// Holds the cache of the --cache modes, and copies of the tests
+	private File tempDir;
+
 	public static void main(String[] args) throws Exception {
 
+		// The parallel lexer, parser and analyzer fall back to their
+		// sequential paths on a common pool of one thread, which is what a
+		// machine with one or two cores gets.  Ask for more, unless told
+		// otherwise, so those paths are tested there too.  Only works before
+		// anything has used the common pool.
+		if (System.getProperty("java.util.concurrent.ForkJoinPool.common.parallelism") == null) {
+			System.setProperty("java.util.concurrent.ForkJoinPool.common.parallelism", "4");
+		}
+
 		SplatTester tester = new SplatTester();
 		tester.runTests();
 	}
@@ -32,6 +61,146 @@ public class  SplatTester {
 		successCount = new int[]{0, 0, 0, 0, 0};
 		resCodeCount = new int[]{0, 0, 0, 0, 0};
 		falseThrows = new int[]{0, 0, 0, 0};
+
+		// Runs the statements of the body as they are parsed.  Errors are
+		// found in file order, so a program that doesn't pass analysis can
+		// fail differently; only the ones that do are compared
+		modes.add(new Mode("--stream") {
+			boolean appliesTo(File testFile) {
+				return testFile.getName().endsWith("execution.splat");
+			}
+			void configure(Splat splat) {
+				splat.setStreaming(true);
+			}
+		});
+
+		// Packs the program into a FlatAST and runs that instead
+		modes.add(new Mode("--flat") {
+			void configure(Splat splat) {
+				splat.setFlatExecution(true);
+			}
+		});
+
+		// Three runs in a row sharing one cache: one that fills it, one
+		// that hits the whole program, and one on a copy with every line
+		// moved down, which misses the program and has to report its
+		// errors at their new places
+		modes.add(new Mode("--cache (cold)") {
+			void configure(Splat splat) {
+				splat.setCache(new CompileCache(new File(tempDir, "cache"), cacheSize));
+			}
+		});
+		modes.add(new Mode("--cache (warm)") {
+			void configure(Splat splat) {
+				splat.setCache(new CompileCache(new File(tempDir, "cache"), cacheSize));
+			}
+		});
+		modes.add(new Mode("--cache (moved)") {
+			File source(File testFile) throws IOException {
+				File moved = new File(tempDir, testFile.getName());
+				byte[] bytes = Files.readAllBytes(testFile.toPath());
+				try (OutputStream out = new FileOutputStream(moved)) {
+					out.write("\n\n\n".getBytes("UTF-8"));
+					out.write(bytes);
+				}
+				return moved;
+			}
+			void configure(Splat splat) {
+				splat.setCache(new CompileCache(new File(tempDir, "cache"), cacheSize));
+			}
+		});
+
+		// Lexed in chunks on the common pool.  Only sources of at least
+		// ParallelLexer.MIN_CHUNK_SIZE are split
+		modes.add(new Mode("--parallel-lex") {
+			void configure(Splat splat) {
+				splat.setParallelLexing(true);
+			}
+		});
+
+		// Lexed up front, and the declarations parsed on the common pool.
+		// Only programs of at least ParallelParser.MIN_TOKENS tokens are
+		// split
+		modes.add(new Mode("--parallel-parse") {
+			void configure(Splat splat) {
+				splat.setParallelParsing(true);
+			}
+		});
+
+		// Optimized, with the program analyzed again after every pass
+		modes.add(new Mode("-O1") {
+			void configure(Splat splat) {
+				splat.setOptLevel(1);
+				splat.setVerifyPasses(true);
+			}
+		});
+		modes.add(new Mode("-O2") {
+			void configure(Splat splat) {
+				splat.setOptLevel(2);
+				splat.setVerifyPasses(true);
+			}
+		});
+
+		// Dumps the call graph of the programs that come with a .effects
+		// file, which holds the dump expected
+		modes.add(new Mode("--effects") {
+			boolean appliesTo(File testFile) {
+				return expectedEffectsFile(testFile).exists();
+			}
+			File expected(File testFile) {
+				return expectedEffectsFile(testFile);
+			}
+			void configure(Splat splat) {
+				splat.setDumpEffects(true);
+			}
+		});
+
+		// Optimizes the programs the --cache modes stored, as read back,
+		// so the analyzer runs on ASTs that came out of the cache
+		modes.add(new Mode("--cache -O2") {
+			void configure(Splat splat) {
+				splat.setCache(new CompileCache(new File(tempDir, "cache"), cacheSize));
+				splat.setOptLevel(2);
+				splat.setVerifyPasses(true);
+			}
+		});
+	}
+
+	/*
+	 * Another way of running a program, which has to give the same output,
+	 * or the same error at the same position, as the default one, unless
+	 * the mode expects an output of its own
+	 */
+	private static abstract class Mode {
+		final String name;
+		int run = 0;
+		int agreed = 0;
+
+		Mode(String name) {
+			this.name = name;
+		}
+
+		boolean appliesTo(File testFile) {
+			return true;
+		}
+
+		/*
+		 * Returns the file to run in this mode, when it isn't the test file
+		 * itself.  Its outcome in the default mode is the one to match.
+		 */
+		File source(File testFile) throws IOException {
+			return testFile;
+		}
+
+		/*
+		 * Returns the file holding the output expected in this mode, or
+		 * null if it is the outcome of the default mode.
+		 */
+		File expected(File testFile) {
+			return null;
+		}
+
+		abstract void configure(Splat splat) throws IOException;
 	}
 
 	public void runTests() throws Exception {
@@ -72,6 +241,20 @@ public class  SplatTester {
 			runTest(testFile);
 		}
 
+		// Then run them again in every other execution mode
+		tempDir = Files.createTempDirectory("splat-tests").toFile();
+		try {
+			for (File testFile : testFiles) {
+				for (Mode mode : modes) {
+					if (mode.appliesTo(testFile)) {
+						runInMode(testFile, mode);
+					}
+				}
+			}
+		} finally {
+			delete(tempDir);
+		}
+
 		// Count up the total passes and get the percentage
 		int totalSuccesses = 0;
 		for (int i = 0; i < 5; i++) {
@@ -98,6 +281,12 @@ public class  SplatTester {
 		System.out.println("  Execution Exception: " + scoreString(3));
 		System.out.println("    false throws: " + falseThrows[3]);
 		System.out.println("  Execution Success:   " + scoreString(4));
+		System.out.println("Execution modes (same outcome as the default mode, or as expected)");
+		for (Mode mode : modes) {
+			double percent = 100.0 * mode.agreed / mode.run;
+			System.out.println("  " + String.format("%-20s", mode.name + ":") + mode.agreed + " / "
+					+ mode.run + " (" + String.format("%.1f", percent) + " %)");
+		}
 	}
 
 	private String scoreString(int resCode) {
@@ -154,12 +343,17 @@ public class  SplatTester {
 		// Used to show exception messages in verbase mode
 		String execptMsg = "";
 
-		// Redirect the program output to a file, instead of the console window
+		// Redirect the program output to a file, instead of the console window.
+		// Sources are UTF-8, and so are the .out files, whatever the platform
+		// default happens to be
 		PrintStream originalOut = new PrintStream(System.out);
 		File progOutput = new File(testDir, "temp-out.txt");
-		PrintStream outs = new PrintStream(progOutput);
+		PrintStream outs = new PrintStream(new FileOutputStream(progOutput), false, "UTF-8");
 		System.setOut(outs);
 
+		// Used to check the error message, for the cases that come with one
+		String errorMsg = null;
+
 		try {
 			// Run the analyzer on the program AST
 			splat.processFileAndExecute();
@@ -171,6 +365,7 @@ public class  SplatTester {
 
 			int ind = ex.getClass().getName().lastIndexOf('.');
 			execptMsg = " >>> " + ex.getClass().getName().substring(ind + 1) + ": " + ex.toString();
+			errorMsg = ex.toString();
 
 			// Get the error code from the exception thrown
 			actualResultCode = getActualResultCode(ex);
@@ -190,11 +385,20 @@ public class  SplatTester {
 			System.setOut(originalOut);
 		}
 
+		defaultOutcomes.put(testFile, outcome(progOutput, execptMsg));
+
 		// For the phase in which an exception is expected to be thrown, we check that
 		// it has been thrown in that exact phase
 		if (expectedResultCode < 4) {
 
-			if (expectedResultCode == actualResultCode) {
+			// A .out file next to a failing case holds the exact error message
+			// expected, position included
+			File expectedError = expectedOutputFile(testFile);
+
+			if (expectedResultCode == actualResultCode && expectedError.exists()
+					&& !errorMatchesExpected(errorMsg, expectedError)) {
+				System.out.println("failed (error message does not match expected results)");
+			} else if (expectedResultCode == actualResultCode) {
 				System.out.println("passed (proper SplatException thrown during Phase "+ (expectedResultCode+1) + ")");
 				successCount[expectedResultCode]++;
 			} else {
@@ -224,9 +428,7 @@ public class  SplatTester {
 		if (expectedResultCode == 4 && actualResultCode == 4) {
 
 			// Get the .txt file with the expected output
-			String testFilePath = testFile.getAbsolutePath();
-			String exFilename = testFilePath.substring(0, testFilePath.length() - 5) + "out";
-			File expectedOutput = new File(exFilename);
+			File expectedOutput = expectedOutputFile(testFile);
 
 			// Check if the output was as expected
 			if (outputMatchesExpected(progOutput, expectedOutput)) {
@@ -246,6 +448,110 @@ public class  SplatTester {
 		// printOutput(progOutput);
 	}
 
+	private void runInMode(File testFile, Mode mode) throws Exception {
+
+		mode.run++;
+
+		File source = mode.source(testFile);
+		File expectedFile = mode.expected(testFile);
+		String expected;
+		if (expectedFile != null) {
+			expected = outcome(expectedFile, "");
+		} else if (source == testFile) {
+			expected = defaultOutcomes.get(testFile);
+		} else {
+			expected = runAndGetOutcome(new Splat(source));
+		}
+
+		Splat splat = new Splat(source);
+		mode.configure(splat);
+		String actual = runAndGetOutcome(splat);
+
+		if (actual.equals(expected)) {
+			mode.agreed++;
+		} else {
+			String against = expectedFile != null ? expectedFile.getName() : "the default mode";
+			System.out.println("Mode " + mode.name + ": " + testFile.getName()
+					+ "...failed (outcome differs from " + against + ")");
+			if (verbose) {
+				System.out.println("  " + against + ":");
+				System.out.println(expected);
+				System.out.println("  " + mode.name + ":");
+				System.out.println(actual);
+			}
+		}
+	}
+
+	/*
+	 * Runs the program and returns what it printed, followed by the
+	 * exception it ended with, if any
+	 */
+	private String runAndGetOutcome(Splat splat) throws IOException {
+
+		PrintStream originalOut = new PrintStream(System.out);
+		File progOutput = new File(testDir, "temp-out.txt");
+		PrintStream outs = new PrintStream(new FileOutputStream(progOutput), false, "UTF-8");
+		System.setOut(outs);
+
+		String execptMsg = "";
+		try {
+			splat.processFileAndExecute();
+		} catch (Exception ex) {
+			int ind = ex.getClass().getName().lastIndexOf('.');
+			execptMsg = " >>> " + ex.getClass().getName().substring(ind + 1) + ": " + ex.toString();
+		} finally {
+			outs.close();
+			System.setOut(originalOut);
+		}
+
+		return outcome(progOutput, execptMsg);
+	}
+
+	private String outcome(File progOutput, String execptMsg) throws IOException {
+
+		StringBuilder sb = new StringBuilder();
+		BufferedReader reader = new BufferedReader(
+				new InputStreamReader(new FileInputStream(progOutput), "UTF-8"));
+		int ch = reader.read();
+		while (ch != -1) {
+			sb.append((char)ch);
+			ch = reader.read();
+		}
+		reader.close();
+
+		return sb.append(execptMsg).toString();
+	}
+
+	private void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+
+	private File expectedOutputFile(File testFile) {
+		String testFilePath = testFile.getAbsolutePath();
+		return new File(testFilePath.substring(0, testFilePath.length() - 5) + "out");
+	}
+
+	private File expectedEffectsFile(File testFile) {
+		String testFilePath = testFile.getAbsolutePath();
+		return new File(testFilePath.substring(0, testFilePath.length() - 5) + "effects");
+	}
+
+	private boolean errorMatchesExpected(String errorMsg, File expected) throws IOException {
+
+		BufferedReader readerEx = new BufferedReader(
+				new InputStreamReader(new FileInputStream(expected), "UTF-8"));
+		String line = readerEx.readLine();
+		readerEx.close();
+
+		return errorMsg.equals(line);
+	}
+
 	private boolean outputMatchesExpected(File output, File expected) throws IOException {
 
 		if (!expected.exists()) {
@@ -253,8 +559,10 @@ public class  SplatTester {
 			return false;
 		}
 
-		BufferedReader readerOut = new BufferedReader(new FileReader(output));
-		BufferedReader readerEx = new BufferedReader(new FileReader(expected));
+		BufferedReader readerOut = new BufferedReader(
+				new InputStreamReader(new FileInputStream(output), "UTF-8"));
+		BufferedReader readerEx = new BufferedReader(
+				new InputStreamReader(new FileInputStream(expected), "UTF-8"));
 
 		boolean result = true;
 
@@ -292,7 +600,8 @@ public class  SplatTester {
 
 	private void printOutput(File file) throws IOException {
 
-		BufferedReader reader = new BufferedReader(new FileReader(file));
+		BufferedReader reader = new BufferedReader(
+				new InputStreamReader(new FileInputStream(file), "UTF-8"));
 
 		int ch = reader.read();
 
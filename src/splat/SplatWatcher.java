@@ -0,0 +1,107 @@
+package splat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import splat.cache.AnalysisCache;
+import splat.lang.SymbolTable;
+import splat.lexer.LineIndex;
+import splat.lexer.SourceBuffer;
+import splat.parser.IncrementalParser;
+import splat.parser.elements.ProgramAST;
+
+/**
+ * Runs a program again every time its file changes.  The file is polled
+ * rather than watched, and each new version goes through an
+ * IncrementalParser, so only the declarations an edit touched are lexed and
+ * parsed again, and only the functions whose analysis could have changed
+ * are analyzed again.
+ *
+ * Every label typed along the way stays in the SymbolTable, so once it has
+ * grown well past what the program itself uses, the table is cleared and
+ * the next version is parsed from scratch.
+ */
+public class SplatWatcher {
+
+	private static final long POLL_INTERVAL_MS = 200;
+
+	/**
+	 * The SymbolTable is cleared once it holds more labels than this, and
+	 * more than twice as many as right after it was last cleared.
+	 */
+	static final int MAX_SYMBOLS = 1 << 16;
+
+	private File progFile;
+	private IncrementalParser parser = new IncrementalParser();
+	private AnalysisCache analysisCache = new AnalysisCache();
+	private int symbolsInUse = 0;
+
+	public SplatWatcher(File progFile) {
+		this.progFile = progFile;
+	}
+
+	public void run() throws InterruptedException {
+
+		long lastModified = -1;
+		long lastLength = -1;
+
+		while (true) {
+			long modified = progFile.lastModified();
+			long length = progFile.length();
+
+			if (modified != lastModified || length != lastLength) {
+				lastModified = modified;
+				lastLength = length;
+				runOnce();
+			}
+
+			Thread.sleep(POLL_INTERVAL_MS);
+		}
+	}
+
+	/*
+	 * Parses and runs the current version of the file.  The file is read into
+	 * the heap, never mapped, since the previous version's tokens still point
+	 * into their own copy of the source.
+	 */
+	private void runOnce() {
+
+		SourceBuffer source;
+		try {
+			source = SourceBuffer.wrap(Files.readAllBytes(progFile.toPath()));
+		} catch (IOException ex) {
+			System.err.println("[watch] can't read " + progFile + ": " + ex.getMessage());
+			return;
+		}
+
+		boolean cleared = false;
+		if (SymbolTable.size() > Math.max(MAX_SYMBOLS, 2 * symbolsInUse)) {
+			// The old tokens and nodes hold ids that are about to be reused.
+			// The AnalysisCache only keys entries by label text and keeps
+			// nodes by identity, so it can stay.
+			SymbolTable.clear();
+			parser = new IncrementalParser();
+			cleared = true;
+		}
+
+		long start = System.nanoTime();
+		try {
+			ProgramAST progAST = parser.parse(source);
+			if (cleared) {
+				symbolsInUse = SymbolTable.size();
+			}
+			long parsed = System.nanoTime();
+			System.err.println("[watch] parsed in " + (parsed - start) / 1000 + " us, reused "
+					+ parser.getReusedDecls() + " of " + progAST.getDecls().size() + " declarations");
+
+			Splat.analyzeAndExecute(progAST, analysisCache, false, true);
+		} catch (SplatException ex) {
+			ex.locate(new LineIndex(source));
+			System.out.println(ex);
+		} finally {
+			analysisCache.endRun();
+		}
+		System.out.flush();
+	}
+}
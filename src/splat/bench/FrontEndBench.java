@@ -0,0 +1,374 @@
+package splat.bench;
+
+import java.io.File;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import splat.SplatException;
+import splat.lexer.Lexer;
+import splat.lexer.SourceBuffer;
+import splat.lexer.TokenBuffer;
+import splat.parser.Parser;
+import splat.parser.elements.BinaryOpExpression;
+import splat.parser.elements.Declaration;
+import splat.parser.elements.Expression;
+import splat.parser.elements.FunctionDecl;
+import splat.parser.elements.IfElseStatement;
+import splat.parser.elements.LabelArgsExpression;
+import splat.parser.elements.LabelArgsStatement;
+import splat.parser.elements.LabelAssignmentStatement;
+import splat.parser.elements.PrintStatement;
+import splat.parser.elements.ProgramAST;
+import splat.parser.elements.ReturnStatement;
+import splat.parser.elements.Statement;
+import splat.parser.elements.UnaryOpExpression;
+import splat.parser.elements.WhileLoopStatement;
+import splat.semanticanalyzer.SemanticAnalyzer;
+
+/**
+ * Measures the throughput of each front end phase on its own: lexing a
+ * source to tokens, parsing already lexed tokens, and analyzing an already
+ * parsed program.  Inputs are the programs under tests/ plus synthetic ones
+ * from ProgramGenerator in every shape and size asked for.
+ *
+ * Each case runs for a number of warmup iterations that are thrown away,
+ * then for a number of measured iterations of a fixed length.  Reported are
+ * the mean and spread of the measured ones, in programs, tokens and AST
+ * nodes per second, along with the bytes allocated per program and the GC
+ * activity, so regressions in speed or in garbage both show up as numbers.
+ *
+ * Usage: FrontEndBench [--phase=lex,parse,analyze] [--shape=WIDE,NESTED,...]
+ *        [--size=1000,10000] [--corpus=dir] [--no-corpus] [--warmup=5]
+ *        [--iterations=10] [--time=ms]
+ */
+public class FrontEndBench {
+
+    enum Phase { LEX, PARSE, ANALYZE }
+
+    private interface Op {
+        Object run() throws SplatException;
+    }
+
+    /*
+     * A case ready to be measured: the op does one pass of the phase over
+     * all of its programs.
+     */
+    private static final class Case {
+        final String name;
+        final Phase phase;
+        final long tokens;
+        final long nodes;
+        final int programs;
+        final Op op;
+
+        Case(String name, Phase phase, long tokens, long nodes, int programs, Op op) {
+            this.name = name;
+            this.phase = phase;
+            this.tokens = tokens;
+            this.nodes = nodes;
+            this.programs = programs;
+            this.op = op;
+        }
+    }
+
+    // Results end up here so the JIT can't drop the work that made them
+    static volatile Object sink;
+
+    private int warmup = 5;
+    private int iterations = 10;
+    private long iterationNanos = 1_000_000_000L;
+
+    public static void main(String[] args) throws Exception {
+        List<Phase> phases = new ArrayList<>(Arrays.asList(Phase.values()));
+        List<ProgramGenerator.Shape> shapes = new ArrayList<>(Arrays.asList(ProgramGenerator.Shape.values()));
+        List<Integer> sizes = new ArrayList<>(Arrays.asList(1000, 10000));
+        File corpus = new File("tests");
+        FrontEndBench bench = new FrontEndBench();
+
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            String name = eq < 0 ? arg : arg.substring(0, eq);
+            String value = eq < 0 ? "" : arg.substring(eq + 1);
+            switch (name) {
+                case "--phase":
+                    phases.clear();
+                    for (String phase : value.split(",")) {
+                        phases.add(Phase.valueOf(phase.toUpperCase(Locale.ROOT)));
+                    }
+                    break;
+                case "--shape":
+                    shapes.clear();
+                    for (String shape : value.split(",")) {
+                        shapes.add(ProgramGenerator.Shape.valueOf(shape.toUpperCase(Locale.ROOT)));
+                    }
+                    break;
+                case "--size":
+                    sizes.clear();
+                    for (String size : value.split(",")) {
+                        sizes.add(Integer.parseInt(size));
+                    }
+                    break;
+                case "--corpus":
+                    corpus = new File(value);
+                    break;
+                case "--no-corpus":
+                    corpus = null;
+                    break;
+                case "--warmup":
+                    bench.warmup = Integer.parseInt(value);
+                    break;
+                case "--iterations":
+                    bench.iterations = Integer.parseInt(value);
+                    break;
+                case "--time":
+                    bench.iterationNanos = Long.parseLong(value) * 1_000_000L;
+                    break;
+                default:
+                    System.err.println("Unknown option: " + arg);
+                    System.exit(2);
+            }
+        }
+
+        List<String> names = new ArrayList<>();
+        List<List<SourceBuffer>> inputs = new ArrayList<>();
+        if (corpus != null) {
+            names.add("corpus:" + corpus.getName());
+            inputs.add(loadCorpus(corpus));
+        }
+        for (ProgramGenerator.Shape shape : shapes) {
+            for (int size : sizes) {
+                byte[] source = ProgramGenerator.generate(shape, size).getBytes(StandardCharsets.UTF_8);
+                names.add(shape + ":" + size);
+                inputs.add(Arrays.asList(SourceBuffer.wrap(source)));
+            }
+        }
+
+        System.out.println(String.format(Locale.ROOT, "%-8s %-22s %12s %8s %14s %14s %12s %10s %9s",
+                "phase", "input", "programs/s", "+-%", "tokens/s", "nodes/s", "alloc B/op", "alloc MB/s", "gc ms/s"));
+        for (Phase phase : phases) {
+            for (int i = 0; i < inputs.size(); i++) {
+                Case c = prepare(names.get(i), phase, inputs.get(i));
+                if (c.programs == 0) {
+                    System.out.println(phase + " " + names.get(i) + ": no program gets through this phase");
+                    continue;
+                }
+                bench.measure(c);
+            }
+        }
+    }
+
+    private static List<SourceBuffer> loadCorpus(File dir) throws Exception {
+        File[] files = dir.listFiles((d, name) -> name.endsWith(".splat"));
+        if (files == null) {
+            throw new IllegalArgumentException("Not a directory: " + dir);
+        }
+        Arrays.sort(files);
+
+        List<SourceBuffer> sources = new ArrayList<>();
+        for (File file : files) {
+            sources.add(SourceBuffer.load(file));
+        }
+        return sources;
+    }
+
+    /*
+     * Runs the phases before the measured one up front, and keeps only the
+     * programs that get through the measured one without an error, so every
+     * pass of the op does the same work.
+     */
+    private static Case prepare(String name, Phase phase, List<SourceBuffer> sources) {
+        final List<SourceBuffer> lexable = new ArrayList<>();
+        final List<TokenBuffer> lexed = new ArrayList<>();
+        final List<ProgramAST> parsed = new ArrayList<>();
+        long tokens = 0;
+        long nodes = 0;
+
+        for (SourceBuffer source : sources) {
+            TokenBuffer tokenBuffer;
+            ProgramAST progAST = null;
+            try {
+                tokenBuffer = new Lexer(source).tokenizeToBuffer();
+                if (phase != Phase.LEX) {
+                    progAST = new Parser(tokenBuffer.stream(0)).parse();
+                    if (phase == Phase.ANALYZE) {
+                        new SemanticAnalyzer(progAST).analyze();
+                    }
+                }
+            } catch (SplatException ex) {
+                continue;
+            }
+
+            tokens += tokenBuffer.size();
+            lexable.add(source);
+            lexed.add(tokenBuffer);
+            if (progAST != null) {
+                nodes += countNodes(progAST);
+                parsed.add(progAST);
+            }
+        }
+
+        Op op;
+        switch (phase) {
+            case LEX:
+                op = () -> {
+                    Object last = null;
+                    for (SourceBuffer source : lexable) {
+                        last = new Lexer(source).tokenize();
+                    }
+                    return last;
+                };
+                break;
+            case PARSE:
+                op = () -> {
+                    Object last = null;
+                    for (TokenBuffer tokenBuffer : lexed) {
+                        last = new Parser(tokenBuffer.stream(0)).parse();
+                    }
+                    return last;
+                };
+                break;
+            default:
+                op = () -> {
+                    Object last = null;
+                    for (ProgramAST progAST : parsed) {
+                        SemanticAnalyzer analyzer = new SemanticAnalyzer(progAST);
+                        analyzer.analyze();
+                        last = analyzer;
+                    }
+                    return last;
+                };
+                break;
+        }
+        return new Case(name, phase, tokens, nodes, lexable.size(), op);
+    }
+
+    private void measure(Case c) throws SplatException {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+
+        for (int i = 0; i < warmup; i++) {
+            runFor(c.op);
+        }
+
+        double[] passesPerSec = new double[iterations];
+        long totalPasses = 0;
+        long totalNanos = 0;
+        long allocated = threads.getThreadAllocatedBytes(thread);
+        long gcMillis = gcMillis();
+        for (int i = 0; i < iterations; i++) {
+            long start = System.nanoTime();
+            long passes = runFor(c.op);
+            long elapsed = System.nanoTime() - start;
+            passesPerSec[i] = passes * 1e9 / elapsed;
+            totalPasses += passes;
+            totalNanos += elapsed;
+        }
+        allocated = threads.getThreadAllocatedBytes(thread) - allocated;
+        gcMillis = gcMillis() - gcMillis;
+
+        double mean = totalPasses * 1e9 / totalNanos;
+        double spread = 0;
+        for (double p : passesPerSec) {
+            spread += (p - mean) * (p - mean);
+        }
+        spread = iterations > 1 ? Math.sqrt(spread / (iterations - 1)) / mean * 100 : 0;
+        double seconds = totalNanos / 1e9;
+
+        System.out.println(String.format(Locale.ROOT, "%-8s %-22s %12.1f %8.1f %14.0f %14.0f %12d %10.1f %9.1f",
+                c.phase.toString().toLowerCase(Locale.ROOT), c.name,
+                mean * c.programs, spread,
+                mean * c.tokens, c.phase == Phase.LEX ? 0 : mean * c.nodes,
+                allocated / (totalPasses * c.programs),
+                allocated / seconds / (1 << 20),
+                gcMillis / seconds));
+    }
+
+    /*
+     * Runs passes of the op for one iteration's time, and returns how many
+     * were run.
+     */
+    private long runFor(Op op) throws SplatException {
+        long end = System.nanoTime() + iterationNanos;
+        long passes = 0;
+        do {
+            sink = op.run();
+            passes++;
+        } while (System.nanoTime() < end);
+        return passes;
+    }
+
+    private static long gcMillis() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, gc.getCollectionTime());
+        }
+        return total;
+    }
+
+    static long countNodes(ProgramAST progAST) {
+        long nodes = 1;
+        for (Declaration decl : progAST.getDecls()) {
+            nodes++;
+            if (decl instanceof FunctionDecl) {
+                FunctionDecl funcDecl = (FunctionDecl) decl;
+                nodes += funcDecl.getParams().size() + funcDecl.getLocalVarDecls().size();
+                nodes += countStmts(funcDecl.getStmts());
+            }
+        }
+        return nodes + countStmts(progAST.getStmts());
+    }
+
+    private static long countStmts(List<Statement> stmts) {
+        long nodes = 0;
+        if (stmts == null) {
+            return nodes;
+        }
+
+        for (Statement stmt : stmts) {
+            nodes++;
+            if (stmt instanceof LabelAssignmentStatement) {
+                nodes += countExpr(((LabelAssignmentStatement) stmt).getExpr());
+            } else if (stmt instanceof WhileLoopStatement) {
+                WhileLoopStatement loop = (WhileLoopStatement) stmt;
+                nodes += countExpr(loop.getExpr()) + countStmts(loop.getStmts());
+            } else if (stmt instanceof IfElseStatement) {
+                IfElseStatement ifElse = (IfElseStatement) stmt;
+                nodes += countExpr(ifElse.getBinExpr());
+                nodes += countStmts(ifElse.getStmts()) + countStmts(ifElse.getElseStmts());
+            } else if (stmt instanceof PrintStatement) {
+                nodes += countExpr(((PrintStatement) stmt).getExpr());
+            } else if (stmt instanceof ReturnStatement) {
+                nodes += countExpr(((ReturnStatement) stmt).getExpr());
+            } else if (stmt instanceof LabelArgsStatement) {
+                for (Expression arg : ((LabelArgsStatement) stmt).getArgs()) {
+                    nodes += countExpr(arg);
+                }
+            }
+        }
+        return nodes;
+    }
+
+    private static long countExpr(Expression expr) {
+        if (expr == null) {
+            return 0;
+        } else if (expr instanceof UnaryOpExpression) {
+            return 1 + countExpr(((UnaryOpExpression) expr).getRightExpr());
+        } else if (expr instanceof BinaryOpExpression) {
+            BinaryOpExpression binary = (BinaryOpExpression) expr;
+            return 1 + countExpr(binary.getLeftExpr()) + countExpr(binary.getRightExpr());
+        } else if (expr instanceof LabelArgsExpression) {
+            long nodes = 1;
+            for (Expression arg : ((LabelArgsExpression) expr).getArgs()) {
+                nodes += countExpr(arg);
+            }
+            return nodes;
+        }
+        return 1;
+    }
+}
@@ -0,0 +1,200 @@
+package splat.bench;
+
+/**
+ * Writes synthetic SPLAT programs that pass semantic analysis, in a few
+ * shapes that stress different parts of the front end.  The size is roughly
+ * the number of statements; the same shape and size always give the same
+ * source.
+ */
+public final class ProgramGenerator {
+
+    public enum Shape {
+        /** A flat program body of statements with wide, shallow expressions */
+        WIDE,
+        /** Blocks and expressions nested NESTING_DEPTH levels deep */
+        NESTED,
+        /** Many small functions, each called once from the program body */
+        MANY_FUNCTIONS,
+        /** A single function with a long body */
+        LONG_BODY
+    }
+
+    // Deep enough to stress the parser, shallow enough for the recursive
+    // analyzer to stay within a default thread stack
+    static final int NESTING_DEPTH = 48;
+
+    private final StringBuilder sb = new StringBuilder();
+
+    private ProgramGenerator() {
+    }
+
+    public static String generate(Shape shape, int size) {
+        ProgramGenerator gen = new ProgramGenerator();
+        switch (shape) {
+            case WIDE:
+                gen.wide(size);
+                break;
+            case NESTED:
+                gen.nested(size);
+                break;
+            case MANY_FUNCTIONS:
+                gen.manyFunctions(size);
+                break;
+            case LONG_BODY:
+                gen.longBody(size);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown shape: " + shape);
+        }
+        return gen.sb.toString();
+    }
+
+    private void wide(int size) {
+        sb.append("program\n");
+        sb.append("  x : Integer;\n");
+        sb.append("  y : Integer;\n");
+        sb.append("  ok : Boolean;\n");
+        sb.append("begin\n");
+        for (int i = 0; i < size; i++) {
+            switch (i % 4) {
+                case 0:
+                    sb.append("  x := ");
+                    sum(i, 0, 16);
+                    sb.append(";\n");
+                    break;
+                case 1:
+                    sb.append("  ok := ((x > ").append(i).append(") and ((y < x) or (not ok)));\n");
+                    break;
+                case 2:
+                    sb.append("  y := ((x % 1000) - (y / 3));\n");
+                    break;
+                default:
+                    sb.append("  print \"s").append(i).append("\";\n");
+                    break;
+            }
+        }
+        sb.append("end;\n");
+    }
+
+    /*
+     * A balanced sum of the given number of terms, alternating between
+     * variables and literals
+     */
+    private void sum(int seed, int from, int count) {
+        if (count == 1) {
+            if ((seed + from) % 2 == 0) {
+                sb.append(from % 3 == 0 ? "y" : "x");
+            } else {
+                sb.append(seed + from);
+            }
+            return;
+        }
+        sb.append('(');
+        sum(seed, from, count / 2);
+        sb.append(" + ");
+        sum(seed, from + count / 2, count - count / 2);
+        sb.append(')');
+    }
+
+    private void nested(int size) {
+        sb.append("program\n");
+        sb.append("  x : Integer;\n");
+        sb.append("  ok : Boolean;\n");
+        sb.append("begin\n");
+
+        // Each chunk opens NESTING_DEPTH blocks with a statement in each,
+        // and one deep expression at the bottom
+        for (int done = 0; done < size; done += NESTING_DEPTH + 1) {
+            for (int d = 0; d < NESTING_DEPTH; d++) {
+                indent(d);
+                if (d % 2 == 0) {
+                    sb.append("if (x < ").append(done + d).append(") then\n");
+                } else {
+                    sb.append("while ok do\n");
+                }
+                indent(d + 1);
+                sb.append("ok := (not ok);\n");
+            }
+
+            indent(NESTING_DEPTH);
+            sb.append("x := ");
+            for (int d = 0; d < NESTING_DEPTH; d++) {
+                sb.append("(").append(d).append(d % 2 == 0 ? " + " : " * ");
+            }
+            sb.append('x');
+            for (int d = 0; d < NESTING_DEPTH; d++) {
+                sb.append(')');
+            }
+            sb.append(";\n");
+
+            for (int d = NESTING_DEPTH - 1; d >= 0; d--) {
+                indent(d);
+                sb.append(d % 2 == 0 ? "end if;\n" : "end while;\n");
+            }
+        }
+        sb.append("end;\n");
+    }
+
+    private void indent(int depth) {
+        for (int i = 0; i <= depth; i++) {
+            sb.append("  ");
+        }
+    }
+
+    private void manyFunctions(int size) {
+        sb.append("program\n");
+        int numFuncs = Math.max(1, size / 5);
+        for (int f = 0; f < numFuncs; f++) {
+            sb.append("  f").append(f).append("(a : Integer, b : Boolean) : Integer is\n");
+            sb.append("    t : Integer;\n");
+            sb.append("  begin\n");
+            sb.append("    t := (a + ").append(f).append(");\n");
+            sb.append("    if b then\n");
+            sb.append("      print \"f").append(f).append("\";\n");
+            sb.append("    end if;\n");
+            sb.append("    while (t > 10) do\n");
+            sb.append("      t := (t - 7);\n");
+            sb.append("    end while;\n");
+            sb.append("    return t;\n");
+            sb.append("  end;\n");
+        }
+        sb.append("  x : Integer;\n");
+        sb.append("begin\n");
+        for (int f = 0; f < numFuncs; f++) {
+            sb.append("  x := f").append(f).append("(x, false);\n");
+        }
+        sb.append("end;\n");
+    }
+
+    private void longBody(int size) {
+        sb.append("program\n");
+        sb.append("  run(n : Integer) : void is\n");
+        sb.append("    i : Integer;\n");
+        sb.append("    s : String;\n");
+        sb.append("    ok : Boolean;\n");
+        sb.append("  begin\n");
+        for (int i = 0; i < size; i++) {
+            switch (i % 5) {
+                case 0:
+                    sb.append("    i := ((i + n) % ").append(i + 7).append(");\n");
+                    break;
+                case 1:
+                    sb.append("    ok := ((i >= ").append(i).append(") or (s == \"v\"));\n");
+                    break;
+                case 2:
+                    sb.append("    if ok then s := \"v").append(i).append("\"; else print i; end if;\n");
+                    break;
+                case 3:
+                    sb.append("    print s;\n");
+                    break;
+                default:
+                    sb.append("    print_line;\n");
+                    break;
+            }
+        }
+        sb.append("  end;\n");
+        sb.append("begin\n");
+        sb.append("  run(1);\n");
+        sb.append("end;\n");
+    }
+}
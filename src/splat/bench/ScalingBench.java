@@ -0,0 +1,452 @@
+package splat.bench;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import splat.SplatException;
+import splat.executor.Executor;
+import splat.lexer.Lexer;
+import splat.lexer.SourceBuffer;
+import splat.lexer.TokenBuffer;
+import splat.parser.Parser;
+import splat.parser.elements.ProgramAST;
+import splat.semanticanalyzer.SemanticAnalyzer;
+
+/**
+ * Times every phase Splat.processFileAndExecute goes through on generated
+ * programs of growing size, fits how each phase's time grows with the
+ * number of lines, and fails if any of them grows faster than n log n.
+ * Quadratic behaviour that stays hidden on small programs shows up here as
+ * an exponent close to 2.
+ *
+ * The programs grow along one axis at a time: the number of functions, the
+ * number of locals in a function, the length of the program body, and the
+ * nesting depth of blocks.  Each time is the median of at least --repeat
+ * runs after a warmup, with more runs for a phase until they add up to
+ * 50 ms, so that the timer's resolution and the odd GC or JIT hiccup don't
+ * bend the fit at the small sizes.  A phase that would take more than --max-seconds at the next size,
+ * going by the growth so far, is skipped from there on, and fitted on the
+ * sizes it did run for.
+ *
+ * Usage: ScalingBench [--axis=FUNCTIONS,...] [--lines=1000,10000,...]
+ *        [--repeat=5] [--tolerance=0.15] [--max-seconds=60]
+ *
+ * Exits with status 1 if a phase grew too fast.  Needs a big heap for the
+ * million line programs, e.g. -Xmx3g; the program runs on a thread with a
+ * deep stack, since deeply nested blocks are analyzed and run recursively.
+ */
+public class ScalingBench {
+
+    enum Axis { FUNCTIONS, LOCALS, BODY, NESTING }
+
+    enum Phase { LEX, PARSE, ANALYZE, EXECUTE }
+
+    // A phase is run until its runs add up to this much, at most MAX_RUNS times
+    private static final double MIN_MEASURED_SECONDS = 0.05;
+    private static final int MAX_RUNS = 1000;
+
+    private static final PrintStream DISCARD = new PrintStream(new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    });
+
+    private List<Axis> axes = new ArrayList<>(Arrays.asList(Axis.values()));
+    private int[] lineCounts = { 1000, 10000, 100000, 1000000 };
+    private int repeat = 5;
+    private double tolerance = 0.15;
+    private double maxSeconds = 60;
+
+    // Results end up here so the JIT can't drop the work that made them
+    static volatile Object sink;
+
+    public static void main(String[] args) throws Exception {
+        final ScalingBench bench = new ScalingBench();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            String name = eq < 0 ? arg : arg.substring(0, eq);
+            String value = eq < 0 ? "" : arg.substring(eq + 1);
+            switch (name) {
+                case "--axis":
+                    bench.axes.clear();
+                    for (String axis : value.split(",")) {
+                        bench.axes.add(Axis.valueOf(axis.toUpperCase(Locale.ROOT)));
+                    }
+                    break;
+                case "--lines":
+                    String[] counts = value.split(",");
+                    bench.lineCounts = new int[counts.length];
+                    for (int i = 0; i < counts.length; i++) {
+                        bench.lineCounts[i] = Integer.parseInt(counts[i]);
+                    }
+                    Arrays.sort(bench.lineCounts);
+                    break;
+                case "--repeat":
+                    bench.repeat = Integer.parseInt(value);
+                    break;
+                case "--tolerance":
+                    bench.tolerance = Double.parseDouble(value);
+                    break;
+                case "--max-seconds":
+                    bench.maxSeconds = Double.parseDouble(value);
+                    break;
+                default:
+                    System.err.println("Unknown option: " + arg);
+                    System.exit(2);
+            }
+        }
+
+        final boolean[] passed = new boolean[1];
+        final Throwable[] failure = new Throwable[1];
+        Thread runner = new Thread(null, () -> {
+            try {
+                passed[0] = bench.run();
+            } catch (Throwable t) {
+                failure[0] = t;
+            }
+        }, "scaling-bench", 1L << 31);
+        runner.start();
+        runner.join();
+
+        if (failure[0] != null) {
+            failure[0].printStackTrace();
+            System.exit(2);
+        }
+        System.exit(passed[0] ? 0 : 1);
+    }
+
+    /*
+     * Measures every axis, prints a table per axis, and returns true iff no
+     * phase grew faster than allowed.
+     */
+    private boolean run() throws SplatException {
+        warmUp();
+
+        boolean passed = true;
+        for (Axis axis : axes) {
+            int sizes = lineCounts.length;
+            int[] lines = new int[sizes];
+            double[][] seconds = new double[Phase.values().length][sizes];
+            for (double[] row : seconds) {
+                Arrays.fill(row, Double.NaN);
+            }
+
+            for (int i = 0; i < sizes; i++) {
+                String source = generate(axis, lineCounts[i]);
+                lines[i] = countLines(source);
+                measure(SourceBuffer.wrap(source.getBytes(StandardCharsets.UTF_8)), lines, seconds, i);
+            }
+
+            passed &= report(axis, lines, seconds);
+        }
+        return passed;
+    }
+
+    private void warmUp() throws SplatException {
+        for (Axis axis : axes) {
+            SourceBuffer source = SourceBuffer.wrap(generate(axis, 10000).getBytes(StandardCharsets.UTF_8));
+            for (int i = 0; i < 5; i++) {
+                runPhases(source, -1);
+            }
+        }
+    }
+
+    /*
+     * Times each phase at size i, as the median of the runs.  Skips a phase,
+     * and the phases after it, once its predicted time is over maxSeconds.
+     */
+    private void measure(SourceBuffer source, int[] lines, double[][] seconds, int i) throws SplatException {
+        int lastPhase = Phase.values().length - 1;
+        for (Phase phase : Phase.values()) {
+            if (predictSeconds(lines, seconds[phase.ordinal()], i) > maxSeconds) {
+                lastPhase = phase.ordinal() - 1;
+                break;
+            }
+        }
+        if (lastPhase < 0) {
+            return;
+        }
+
+        List<double[]> runs = new ArrayList<>();
+        double[] measured = new double[lastPhase + 1];
+        while (runs.size() < MAX_RUNS) {
+            double[] times = runPhases(source, lastPhase);
+            runs.add(times);
+            // One run of a phase this slow is accurate enough
+            if (times[lastPhase] > 2 || sum(times) > 5) {
+                break;
+            }
+            for (int p = 0; p <= lastPhase; p++) {
+                measured[p] += times[p];
+            }
+            if (runs.size() >= repeat && min(measured) >= MIN_MEASURED_SECONDS) {
+                break;
+            }
+        }
+
+        double[] phaseTimes = new double[runs.size()];
+        for (int p = 0; p <= lastPhase; p++) {
+            for (int r = 0; r < runs.size(); r++) {
+                phaseTimes[r] = runs.get(r)[p];
+            }
+            seconds[p][i] = median(phaseTimes);
+        }
+    }
+
+    /*
+     * Runs the phases up to lastPhase (all of them if negative), and returns
+     * the times of this run.
+     */
+    private double[] runPhases(SourceBuffer source, int lastPhase) throws SplatException {
+        if (lastPhase < 0) {
+            lastPhase = Phase.values().length - 1;
+        }
+        double[] times = new double[lastPhase + 1];
+
+        System.gc();
+        long start = System.nanoTime();
+        TokenBuffer tokens = new Lexer(source).tokenizeToBuffer();
+        times[Phase.LEX.ordinal()] = (System.nanoTime() - start) / 1e9;
+
+        if (lastPhase >= Phase.PARSE.ordinal()) {
+            System.gc();
+            start = System.nanoTime();
+            ProgramAST progAST = new Parser(tokens.stream(0)).parse();
+            times[Phase.PARSE.ordinal()] = (System.nanoTime() - start) / 1e9;
+            tokens = null;
+
+            if (lastPhase >= Phase.ANALYZE.ordinal()) {
+                System.gc();
+                start = System.nanoTime();
+                new SemanticAnalyzer(progAST).analyze();
+                times[Phase.ANALYZE.ordinal()] = (System.nanoTime() - start) / 1e9;
+            }
+
+            if (lastPhase >= Phase.EXECUTE.ordinal()) {
+                System.gc();
+                PrintStream out = System.out;
+                System.setOut(DISCARD);
+                try {
+                    start = System.nanoTime();
+                    new Executor(progAST).runProgram();
+                    times[Phase.EXECUTE.ordinal()] = (System.nanoTime() - start) / 1e9;
+                } finally {
+                    System.setOut(out);
+                }
+            }
+            sink = progAST;
+        } else {
+            sink = tokens;
+        }
+        return times;
+    }
+
+    /*
+     * Extrapolates the time at size i from the two sizes before it, growing
+     * at least linearly.  Returns 0 if there aren't two to go by, and
+     * infinity if the phase was skipped at the size before.
+     */
+    private static double predictSeconds(int[] lines, double[] seconds, int i) {
+        if (i > 0 && Double.isNaN(seconds[i - 1])) {
+            return Double.POSITIVE_INFINITY;
+        }
+        if (i < 2) {
+            return 0;
+        }
+        double slope = Math.log(seconds[i - 1] / seconds[i - 2]) / Math.log((double) lines[i - 1] / lines[i - 2]);
+        return seconds[i - 1] * Math.pow((double) lines[i] / lines[i - 1], Math.max(slope, 1));
+    }
+
+    private boolean report(Axis axis, int[] lines, double[][] seconds) {
+        StringBuilder header = new StringBuilder(String.format(Locale.ROOT, "%-10s %-8s", "axis", "phase"));
+        for (int n : lines) {
+            header.append(String.format(Locale.ROOT, " %12s", n + " lines"));
+        }
+        header.append(String.format(Locale.ROOT, " %9s %7s", "exponent", "limit"));
+        System.out.println(header);
+
+        boolean passed = true;
+        for (Phase phase : Phase.values()) {
+            double[] times = seconds[phase.ordinal()];
+            StringBuilder row = new StringBuilder(String.format(Locale.ROOT, "%-10s %-8s",
+                    axis.toString().toLowerCase(Locale.ROOT), phase.toString().toLowerCase(Locale.ROOT)));
+            for (double t : times) {
+                row.append(Double.isNaN(t)
+                        ? String.format(Locale.ROOT, " %12s", "skipped")
+                        : String.format(Locale.ROOT, " %11.4fs", t));
+            }
+
+            // Fit log(time) = a + b log(lines) over the sizes measured
+            int first = -1;
+            int last = -1;
+            double sx = 0, sy = 0, sxx = 0, sxy = 0;
+            int points = 0;
+            for (int i = 0; i < lines.length; i++) {
+                if (Double.isNaN(times[i])) {
+                    continue;
+                }
+                double x = Math.log(lines[i]);
+                double y = Math.log(Math.max(times[i], 1e-9));
+                sx += x;
+                sy += y;
+                sxx += x * x;
+                sxy += x * y;
+                points++;
+                if (first < 0) {
+                    first = i;
+                }
+                last = i;
+            }
+
+            if (points < 2) {
+                row.append(String.format(Locale.ROOT, " %9s %7s", "-", "-"));
+            } else {
+                double exponent = (points * sxy - sx * sy) / (points * sxx - sx * sx);
+                double limit = nLogNExponent(lines[first], lines[last]) + tolerance;
+                boolean ok = exponent <= limit;
+                row.append(String.format(Locale.ROOT, " %9.2f %7.2f %s", exponent, limit, ok ? "ok" : "FAIL"));
+                passed &= ok;
+            }
+            System.out.println(row);
+        }
+        System.out.println();
+        return passed;
+    }
+
+    /*
+     * The exponent n log n grows with between n0 and n1 lines, which is a
+     * little over 1.
+     */
+    private static double nLogNExponent(int n0, int n1) {
+        return 1 + Math.log(Math.log(n1) / Math.log(n0)) / Math.log((double) n1 / n0);
+    }
+
+    private static double sum(double[] values) {
+        double total = 0;
+        for (double v : values) {
+            total += v;
+        }
+        return total;
+    }
+
+    private static double min(double[] values) {
+        double least = Double.MAX_VALUE;
+        for (double v : values) {
+            least = Math.min(least, v);
+        }
+        return least;
+    }
+
+    private static double median(double[] values) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        int mid = sorted.length / 2;
+        return sorted.length % 2 == 1 ? sorted[mid] : (sorted[mid - 1] + sorted[mid]) / 2;
+    }
+
+    private static int countLines(String source) {
+        int lines = 0;
+        for (int i = 0; i < source.length(); i++) {
+            if (source.charAt(i) == '\n') {
+                lines++;
+            }
+        }
+        return lines;
+    }
+
+    /*
+     * A program of about the given number of lines, growing along the axis.
+     * Every statement runs a bounded number of times, so running it takes
+     * time linear in its size too.
+     */
+    static String generate(Axis axis, int lines) {
+        StringBuilder sb = new StringBuilder(lines * 24);
+        sb.append("program\n");
+        switch (axis) {
+            case FUNCTIONS: {
+                // 8 lines a function, each called once from the body
+                int funcs = Math.max(1, lines / 9);
+                for (int f = 0; f < funcs; f++) {
+                    sb.append("  f").append(f).append("(a : Integer) : Integer is\n");
+                    sb.append("    t : Integer;\n");
+                    sb.append("  begin\n");
+                    sb.append("    t := (a + ").append(f).append(");\n");
+                    sb.append("    if (t > 1000) then\n");
+                    sb.append("      t := (t % 1000);\n");
+                    sb.append("    end if;\n");
+                    sb.append("    return t;\n");
+                    sb.append("  end;\n");
+                }
+                sb.append("  x : Integer;\n");
+                sb.append("begin\n");
+                for (int f = 0; f < funcs; f++) {
+                    sb.append("  x := f").append(f).append("(x);\n");
+                }
+                break;
+            }
+            case LOCALS: {
+                // One function with half the lines declaring locals and
+                // half assigning them
+                int locals = Math.max(1, lines / 2);
+                sb.append("  run(n : Integer) : void is\n");
+                for (int v = 0; v < locals; v++) {
+                    sb.append("    v").append(v).append(" : Integer;\n");
+                }
+                sb.append("  begin\n");
+                for (int v = 0; v < locals; v++) {
+                    sb.append("    v").append(v).append(" := (n + v").append(v > 0 ? v - 1 : 0).append(");\n");
+                }
+                sb.append("  end;\n");
+                sb.append("begin\n");
+                sb.append("  run(1);\n");
+                break;
+            }
+            case BODY: {
+                sb.append("  x : Integer;\n");
+                sb.append("  ok : Boolean;\n");
+                sb.append("begin\n");
+                for (int i = 0; i < lines; i++) {
+                    switch (i % 3) {
+                        case 0:
+                            sb.append("  x := ((x + ").append(i).append(") % 1000);\n");
+                            break;
+                        case 1:
+                            sb.append("  ok := (x > 500);\n");
+                            break;
+                        default:
+                            sb.append("  print x;\n");
+                            break;
+                    }
+                }
+                break;
+            }
+            case NESTING: {
+                // Every level is an opening, a statement and a closing line
+                int depth = Math.max(1, lines / 3);
+                sb.append("  x : Integer;\n");
+                sb.append("begin\n");
+                for (int d = 0; d < depth; d++) {
+                    sb.append("if (x < ").append(d + 1).append(") then\n");
+                    sb.append("x := (x + 1);\n");
+                }
+                for (int d = 0; d < depth; d++) {
+                    sb.append("end if;\n");
+                }
+                break;
+            }
+            default:
+                throw new IllegalArgumentException("Unknown axis: " + axis);
+        }
+        sb.append("end;\n");
+        return sb.toString();
+    }
+}
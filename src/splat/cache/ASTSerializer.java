@@ -0,0 +1,543 @@
+package splat.cache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import splat.lang.SymbolTable;
+import splat.lexer.Token;
+import splat.lexer.TokenKind;
+import splat.parser.ParseException;
+import splat.parser.elements.BinaryOpExpression;
+import splat.parser.elements.Declaration;
+import splat.parser.elements.Expression;
+import splat.parser.elements.FuncParamDecl;
+import splat.parser.elements.FunctionDecl;
+import splat.parser.elements.IfElseStatement;
+import splat.parser.elements.LabelArgsExpression;
+import splat.parser.elements.LabelArgsStatement;
+import splat.parser.elements.LabelAssignmentStatement;
+import splat.parser.elements.LabelExpression;
+import splat.parser.elements.Literal;
+import splat.parser.elements.PrintLineStatement;
+import splat.parser.elements.PrintStatement;
+import splat.parser.elements.ProgramAST;
+import splat.parser.elements.ReturnStatement;
+import splat.parser.elements.Statement;
+import splat.parser.elements.Type;
+import splat.parser.elements.UnaryOpExpression;
+import splat.parser.elements.VariableDecl;
+import splat.parser.elements.WhileLoopStatement;
+
+/**
+ * Writes a ProgramAST as compact binary and reads it back.  Every label,
+ * literal and operator goes into a string table once and is referred to by
+ * index; node tags, types and list sizes are single bytes or varints, and
+ * source offsets are stored as the zigzag varint difference from the
+ * previous offset, which is mostly a byte or two.
+ *
+ * Labels are interned again when the program is read, so symbol ids don't
+ * have to match the JVM that wrote it.  Everything semantic analysis looks
+ * at is kept, so a program that was read back can be analyzed again as well
+ * as run; --verify-passes does so after every optimizer pass.  Variable
+ * slots are not kept, since the executor binds those itself.
+ */
+public final class ASTSerializer {
+
+    // Bump whenever the layout below changes
+    static final int FORMAT_VERSION = 1;
+
+    private static final int DECL_VAR = 0;
+    private static final int DECL_FUNC = 1;
+
+    private static final int STMT_ASSIGN = 0;
+    private static final int STMT_WHILE = 1;
+    private static final int STMT_IF = 2;
+    private static final int STMT_IF_ELSE = 3;
+    private static final int STMT_PRINT = 4;
+    private static final int STMT_PRINT_LINE = 5;
+    private static final int STMT_RETURN = 6;
+    private static final int STMT_RETURN_VALUE = 7;
+    private static final int STMT_CALL = 8;
+
+    private static final int EXPR_LITERAL = 0;
+    private static final int EXPR_LABEL = 1;
+    private static final int EXPR_UNARY = 2;
+    private static final int EXPR_BINARY = 3;
+    private static final int EXPR_CALL = 4;
+
+    private static final Type[] TYPES = Type.values();
+
+    private ASTSerializer() {
+    }
+
+    public static void write(ProgramAST progAST, DataOutputStream out) throws IOException {
+        Writer writer = new Writer();
+        writer.program(progAST);
+        writer.writeTo(out);
+    }
+
+    /**
+     * Writes a single function in the same layout, with its source offsets
+     * taken relative to the function's own.  The same function text gives
+     * the same bytes wherever it sits in the file, which makes them a
+     * fingerprint of the function.  Can't be read back.
+     */
+    public static void writeFunction(FunctionDecl funcDecl, DataOutputStream out) throws IOException {
+        Writer writer = new Writer();
+        writer.lastOffset = funcDecl.getOffset();
+        writer.funcDecl(funcDecl);
+        writer.writeTo(out);
+    }
+
+    /**
+     * Reads a program written by write, from a stream whose available() is
+     * the number of bytes left, such as a ByteArrayInputStream.  Throws an
+     * IOException if the data is truncated or doesn't hold a valid program.
+     */
+    public static ProgramAST read(DataInputStream in) throws IOException {
+        int version = in.readInt();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported AST format version: " + version);
+        }
+
+        Reader reader = new Reader(in);
+        int numStrings = reader.count();
+        reader.strings = new String[numStrings];
+        reader.symbols = new int[numStrings];
+        for (int i = 0; i < numStrings; i++) {
+            byte[] utf8 = new byte[reader.count()];
+            in.readFully(utf8);
+            reader.strings[i] = new String(utf8, StandardCharsets.UTF_8);
+            reader.symbols[i] = SymbolTable.NO_SYMBOL;
+        }
+
+        try {
+            return reader.program();
+        } catch (ParseException | RuntimeException ex) {
+            throw new IOException("Malformed AST data", ex);
+        }
+    }
+
+    private static final class Writer {
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream body = new DataOutputStream(bytes);
+        final List<String> strings = new ArrayList<>();
+        final Map<String, Integer> stringIndices = new HashMap<>();
+        int lastOffset = 0;
+
+        void program(ProgramAST progAST) throws IOException {
+            offset(progAST.getOffset());
+
+            varInt(progAST.getDecls().size());
+            for (Declaration decl : progAST.getDecls()) {
+                if (decl instanceof FunctionDecl) {
+                    body.writeByte(DECL_FUNC);
+                    funcDecl((FunctionDecl) decl);
+                } else {
+                    VariableDecl varDecl = (VariableDecl) decl;
+                    body.writeByte(DECL_VAR);
+                    label(varDecl);
+                    body.writeByte(varDecl.getType().ordinal());
+                }
+            }
+
+            stmts(progAST.getStmts());
+        }
+
+        void funcDecl(FunctionDecl funcDecl) throws IOException {
+            label(funcDecl);
+            varInt(funcDecl.getParams().size());
+            for (FuncParamDecl param : funcDecl.getParams()) {
+                label(param);
+                body.writeByte(param.getType().ordinal());
+            }
+            body.writeByte(funcDecl.getReturnType().ordinal());
+            varInt(funcDecl.getLocalVarDecls().size());
+            for (VariableDecl varDecl : funcDecl.getLocalVarDecls()) {
+                label(varDecl);
+                body.writeByte(varDecl.getType().ordinal());
+            }
+            stmts(funcDecl.getStmts());
+        }
+
+        void label(Declaration decl) throws IOException {
+            offset(decl.getOffset());
+            string(decl.getLabel());
+        }
+
+        void stmts(List<Statement> stmts) throws IOException {
+            varInt(stmts.size());
+            for (Statement stmt : stmts) {
+                stmt(stmt);
+            }
+        }
+
+        void stmt(Statement stmt) throws IOException {
+            if (stmt instanceof LabelAssignmentStatement) {
+                LabelAssignmentStatement assign = (LabelAssignmentStatement) stmt;
+                body.writeByte(STMT_ASSIGN);
+                offset(stmt.getOffset());
+                string(assign.getLabel());
+                expr(assign.getExpr());
+
+            } else if (stmt instanceof WhileLoopStatement) {
+                WhileLoopStatement loop = (WhileLoopStatement) stmt;
+                body.writeByte(STMT_WHILE);
+                offset(stmt.getOffset());
+                expr(loop.getExpr());
+                stmts(loop.getStmts());
+
+            } else if (stmt instanceof IfElseStatement) {
+                IfElseStatement ifElse = (IfElseStatement) stmt;
+                body.writeByte(ifElse.getElseStmts() != null ? STMT_IF_ELSE : STMT_IF);
+                offset(stmt.getOffset());
+                expr(ifElse.getBinExpr());
+                stmts(ifElse.getStmts());
+                if (ifElse.getElseStmts() != null) {
+                    stmts(ifElse.getElseStmts());
+                }
+
+            } else if (stmt instanceof PrintStatement) {
+                body.writeByte(STMT_PRINT);
+                offset(stmt.getOffset());
+                expr(((PrintStatement) stmt).getExpr());
+
+            } else if (stmt instanceof PrintLineStatement) {
+                body.writeByte(STMT_PRINT_LINE);
+                offset(stmt.getOffset());
+
+            } else if (stmt instanceof ReturnStatement) {
+                Expression expr = ((ReturnStatement) stmt).getExpr();
+                body.writeByte(expr != null ? STMT_RETURN_VALUE : STMT_RETURN);
+                offset(stmt.getOffset());
+                if (expr != null) {
+                    expr(expr);
+                }
+
+            } else if (stmt instanceof LabelArgsStatement) {
+                LabelArgsStatement call = (LabelArgsStatement) stmt;
+                body.writeByte(STMT_CALL);
+                offset(stmt.getOffset());
+                string(call.getLabel());
+                exprs(call.getArgs());
+
+            } else {
+                throw new IllegalArgumentException("Unknown statement: " + stmt.getClass().getSimpleName());
+            }
+        }
+
+        void exprs(List<Expression> exprs) throws IOException {
+            varInt(exprs.size());
+            for (Expression expr : exprs) {
+                expr(expr);
+            }
+        }
+
+        void expr(Expression expr) throws IOException {
+            if (expr instanceof Literal) {
+                body.writeByte(EXPR_LITERAL);
+                offset(expr.getOffset());
+                string(((Literal) expr).getValue());
+
+            } else if (expr instanceof LabelExpression) {
+                body.writeByte(EXPR_LABEL);
+                offset(expr.getOffset());
+                string(((LabelExpression) expr).getValue());
+
+            } else if (expr instanceof UnaryOpExpression) {
+                UnaryOpExpression unary = (UnaryOpExpression) expr;
+                body.writeByte(EXPR_UNARY);
+                offset(expr.getOffset());
+                string(unary.getOperator());
+                expr(unary.getRightExpr());
+
+            } else if (expr instanceof BinaryOpExpression) {
+                BinaryOpExpression binary = (BinaryOpExpression) expr;
+                body.writeByte(EXPR_BINARY);
+                offset(expr.getOffset());
+                string(binary.getOperator());
+                expr(binary.getLeftExpr());
+                expr(binary.getRightExpr());
+
+            } else if (expr instanceof LabelArgsExpression) {
+                LabelArgsExpression call = (LabelArgsExpression) expr;
+                body.writeByte(EXPR_CALL);
+                offset(expr.getOffset());
+                string(call.getLabel());
+                exprs(call.getArgs());
+
+            } else {
+                throw new IllegalArgumentException("Unknown expression: " + expr.getClass().getSimpleName());
+            }
+        }
+
+        void string(String str) throws IOException {
+            Integer index = stringIndices.get(str);
+            if (index == null) {
+                index = strings.size();
+                strings.add(str);
+                stringIndices.put(str, index);
+            }
+            varInt(index);
+        }
+
+        void offset(int offset) throws IOException {
+            int delta = offset - lastOffset;
+            varInt((delta << 1) ^ (delta >> 31));
+            lastOffset = offset;
+        }
+
+        void varInt(int value) throws IOException {
+            writeVarInt(body, value);
+        }
+
+        void writeTo(DataOutputStream out) throws IOException {
+            out.writeInt(FORMAT_VERSION);
+            writeVarInt(out, strings.size());
+            for (String str : strings) {
+                byte[] utf8 = str.getBytes(StandardCharsets.UTF_8);
+                writeVarInt(out, utf8.length);
+                out.write(utf8);
+            }
+            bytes.writeTo(out);
+        }
+    }
+
+    private static final class Reader {
+
+        final DataInputStream in;
+        String[] strings;
+        int[] symbols; // interned on first use
+        int lastOffset = 0;
+
+        // Label of the function whose body is being read, or null
+        String funcLabel;
+        int funcSymbol = SymbolTable.NO_SYMBOL;
+
+        Reader(DataInputStream in) {
+            this.in = in;
+        }
+
+        ProgramAST program() throws IOException, ParseException {
+            Token startTok = token(TokenKind.KEYWORD, "program", offset());
+
+            int numDecls = count();
+            List<Declaration> decls = new ArrayList<Declaration>(numDecls);
+            for (int d = 0; d < numDecls; d++) {
+                int tag = in.readUnsignedByte();
+                if (tag == DECL_VAR) {
+                    Token labelTok = labelToken();
+                    decls.add(new VariableDecl(labelTok, labelTok.getValue(), type()));
+                } else if (tag == DECL_FUNC) {
+                    decls.add(funcDecl());
+                } else {
+                    throw new IOException("Unknown declaration tag: " + tag);
+                }
+            }
+
+            List<Statement> stmts = stmts();
+            return new ProgramAST(decls, stmts, startTok);
+        }
+
+        FunctionDecl funcDecl() throws IOException, ParseException {
+            Token labelTok = labelToken();
+
+            int numParams = count();
+            List<FuncParamDecl> params = new ArrayList<FuncParamDecl>(numParams);
+            for (int i = 0; i < numParams; i++) {
+                Token paramTok = labelToken();
+                params.add(new FuncParamDecl(paramTok, paramTok.getValue(), type()));
+            }
+            Type returnType = type();
+
+            int numVars = count();
+            List<VariableDecl> varDecls = new ArrayList<VariableDecl>(numVars);
+            for (int i = 0; i < numVars; i++) {
+                Token varTok = labelToken();
+                varDecls.add(new VariableDecl(varTok, varTok.getValue(), type()));
+            }
+
+            // Like the parser, tag every statement in the body with the
+            // function it belongs to
+            funcLabel = labelTok.getValue();
+            funcSymbol = labelTok.getSymbol();
+            List<Statement> stmts = stmts();
+            funcLabel = null;
+            funcSymbol = SymbolTable.NO_SYMBOL;
+
+            return new FunctionDecl(labelTok, labelTok.getValue(), params, returnType, varDecls, stmts);
+        }
+
+        List<Statement> stmts() throws IOException, ParseException {
+            int numStmts = count();
+            List<Statement> stmts = new ArrayList<Statement>(numStmts);
+            for (int i = 0; i < numStmts; i++) {
+                Statement stmt = stmt();
+                if (funcLabel != null) {
+                    stmt.setFuncLabel(funcLabel, funcSymbol);
+                }
+                stmts.add(stmt);
+            }
+            return stmts;
+        }
+
+        Statement stmt() throws IOException, ParseException {
+            int tag = in.readUnsignedByte();
+            int offset = offset();
+            switch (tag) {
+                case STMT_ASSIGN: {
+                    Token labelTok = labelToken(offset);
+                    return new LabelAssignmentStatement(labelTok, labelTok.getValue(), expr());
+                }
+                case STMT_WHILE: {
+                    Token tok = token(TokenKind.KEYWORD, "while", offset);
+                    Expression expr = expr();
+                    return new WhileLoopStatement(tok, expr, stmts());
+                }
+                case STMT_IF:
+                case STMT_IF_ELSE: {
+                    Token tok = token(TokenKind.KEYWORD, "if", offset);
+                    Expression expr = expr();
+                    List<Statement> stmts = stmts();
+                    List<Statement> elseStmts = tag == STMT_IF_ELSE ? stmts() : null;
+                    return new IfElseStatement(tok, expr, stmts, elseStmts);
+                }
+                case STMT_PRINT:
+                    return new PrintStatement(token(TokenKind.KEYWORD, "print", offset), expr());
+                case STMT_PRINT_LINE:
+                    return new PrintLineStatement(token(TokenKind.KEYWORD, "print_line", offset));
+                case STMT_RETURN:
+                    return new ReturnStatement(token(TokenKind.KEYWORD, "return", offset), null);
+                case STMT_RETURN_VALUE:
+                    return new ReturnStatement(token(TokenKind.KEYWORD, "return", offset), expr());
+                case STMT_CALL: {
+                    Token labelTok = labelToken(offset);
+                    return new LabelArgsStatement(labelTok, labelTok.getValue(), exprs());
+                }
+                default:
+                    throw new IOException("Unknown statement tag: " + tag);
+            }
+        }
+
+        List<Expression> exprs() throws IOException, ParseException {
+            int numExprs = count();
+            List<Expression> exprs = new ArrayList<Expression>(numExprs);
+            for (int i = 0; i < numExprs; i++) {
+                exprs.add(expr());
+            }
+            return exprs;
+        }
+
+        Expression expr() throws IOException, ParseException {
+            int tag = in.readUnsignedByte();
+            int offset = offset();
+            switch (tag) {
+                case EXPR_LITERAL: {
+                    String value = string();
+                    return new Literal(token(TokenKind.classify(value), value, offset));
+                }
+                case EXPR_LABEL:
+                    return new LabelExpression(labelToken(offset));
+                case EXPR_UNARY: {
+                    String operator = string();
+                    Token tok = token(TokenKind.OPERATOR, operator, offset);
+                    return new UnaryOpExpression(tok, expr(), operator);
+                }
+                case EXPR_BINARY: {
+                    String operator = string();
+                    Token tok = token(TokenKind.OPERATOR, operator, offset);
+                    Expression left = expr();
+                    return new BinaryOpExpression(tok, left, expr(), operator);
+                }
+                case EXPR_CALL: {
+                    Token labelTok = labelToken(offset);
+                    return new LabelArgsExpression(labelTok, labelTok.getValue(), exprs());
+                }
+                default:
+                    throw new IOException("Unknown expression tag: " + tag);
+            }
+        }
+
+        Token labelToken() throws IOException {
+            return labelToken(offset());
+        }
+
+        Token labelToken(int offset) throws IOException {
+            int index = stringIndex();
+            if (symbols[index] == SymbolTable.NO_SYMBOL) {
+                symbols[index] = SymbolTable.intern(strings[index]);
+            }
+            return new Token(TokenKind.IDENTIFIER, strings[index], symbols[index], offset, -1, -1);
+        }
+
+        Token token(TokenKind kind, String value, int offset) {
+            return new Token(kind, value, SymbolTable.NO_SYMBOL, offset, -1, -1);
+        }
+
+        Type type() throws IOException {
+            int ordinal = in.readUnsignedByte();
+            if (ordinal >= TYPES.length) {
+                throw new IOException("Unknown type: " + ordinal);
+            }
+            return TYPES[ordinal];
+        }
+
+        String string() throws IOException {
+            return strings[stringIndex()];
+        }
+
+        int stringIndex() throws IOException {
+            int index = readVarInt(in);
+            if (index >= strings.length) {
+                throw new IOException("String index out of range: " + index);
+            }
+            return index;
+        }
+
+        int offset() throws IOException {
+            int zigzag = readVarInt(in);
+            lastOffset += (zigzag >>> 1) ^ -(zigzag & 1);
+            return lastOffset;
+        }
+
+        /*
+         * Reads a list or string size.  Every item takes at least a byte, so
+         * a corrupt size can't make us allocate more than the data left.
+         */
+        int count() throws IOException {
+            int count = readVarInt(in);
+            if (count < 0 || count > in.available()) {
+                throw new IOException("Size out of range: " + count);
+            }
+            return count;
+        }
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+}
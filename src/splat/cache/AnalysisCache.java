@@ -0,0 +1,358 @@
+package splat.cache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import splat.lang.SymbolMap;
+import splat.parser.elements.BinaryOpExpression;
+import splat.parser.elements.Expression;
+import splat.parser.elements.FuncParamDecl;
+import splat.parser.elements.FunctionDecl;
+import splat.parser.elements.IfElseStatement;
+import splat.parser.elements.LabelArgsExpression;
+import splat.parser.elements.LabelArgsStatement;
+import splat.parser.elements.LabelAssignmentStatement;
+import splat.parser.elements.PrintStatement;
+import splat.parser.elements.ReturnStatement;
+import splat.parser.elements.Statement;
+import splat.parser.elements.UnaryOpExpression;
+import splat.parser.elements.VariableDecl;
+import splat.parser.elements.WhileLoopStatement;
+
+/**
+ * The outcome of semantic analysis for each function, so a function whose
+ * result can't have changed isn't checked again.
+ *
+ * A function's analysis only depends on its own text and on the signatures
+ * of the functions it names: the ones it calls, and any whose label its
+ * parameters and local variables would clash with.  The key is the SHA-256
+ * of the function as written by ASTSerializer.writeFunction, with offsets
+ * relative to the function, followed by those signatures, or the fact that
+ * there is no such function.  A failure is stored as its message and its
+ * offset within the function, so it is reported at the right place even if
+ * the function has moved.
+ *
+ * Lookups are thread safe.  The cache is only kept in memory, for as long
+ * as the object lives, which suits watch mode.  Entries not used since the
+ * previous endRun() are kept up to maxEntries, and dropped after that.
+ */
+public class AnalysisCache {
+
+    /**
+     * Part of every key.  Bump it whenever the analyzer could give a
+     * different outcome for the same function.
+     */
+    public static final String VERSION = CompileCache.VERSION + "/analysis-1";
+
+    public static final int DEFAULT_MAX_ENTRIES = 1 << 18;
+
+    /**
+     * Functions with less source than this are quicker to analyze than to
+     * look up, so the analyzer doesn't cache them.
+     */
+    public static final int MIN_FUNCTION_BYTES = 512;
+
+    private final int maxEntries;
+
+    // Entries looked up or added since the last run, and the ones before
+    private Map<Key, Result> used = new ConcurrentHashMap<>();
+    private Map<Key, Result> older = Collections.emptyMap();
+
+    // Fingerprints of the function nodes seen since the last run, and the
+    // ones before.  IncrementalParser keeps the nodes of unchanged
+    // functions, so in watch mode most of them are only fingerprinted once.
+    private Map<FunctionDecl, Fingerprint> fingerprints = new ConcurrentHashMap<>();
+    private Map<FunctionDecl, Fingerprint> olderFingerprints = Collections.emptyMap();
+
+    public AnalysisCache() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    public AnalysisCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Stored outcome of analyzing one function: passed, or failed with a
+     * message at an offset relative to the start of the function.
+     */
+    public static final class Result {
+
+        public static final Result PASSED = new Result(null, 0);
+
+        private final String message;
+        private final int offset;
+
+        public Result(String message, int offset) {
+            this.message = message;
+            this.offset = offset;
+        }
+
+        public boolean passed() {
+            return message == null;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        public int getOffset() {
+            return offset;
+        }
+    }
+
+    public static final class Key {
+
+        private final byte[] hash;
+
+        private Key(byte[] hash) {
+            this.hash = hash;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Key && Arrays.equals(hash, ((Key) other).hash);
+        }
+
+        @Override
+        public int hashCode() {
+            return (hash[0] & 0xFF) | (hash[1] & 0xFF) << 8 | (hash[2] & 0xFF) << 16 | hash[3] << 24;
+        }
+    }
+
+    /*
+     * The part of a key that only depends on the function itself: the hash
+     * of its text, and the labels it names, by symbol.  Also remembers the
+     * last key worked out from it, and the functions the labels named then.
+     */
+    private static final class Fingerprint {
+        final byte[] text;
+        final SymbolMap<String> names;
+        volatile LastKey last;
+
+        Fingerprint(byte[] text, SymbolMap<String> names) {
+            this.text = text;
+            this.names = names;
+        }
+    }
+
+    private static final class LastKey {
+        final FunctionDecl[] named;
+        final Key key;
+
+        LastKey(FunctionDecl[] named, Key key) {
+            this.named = named;
+            this.key = key;
+        }
+    }
+
+    /**
+     * Returns the key of the function in a program with the given functions.
+     */
+    public Key key(FunctionDecl funcDecl, SymbolMap<FunctionDecl> funcMap) {
+        Fingerprint fingerprint = fingerprints.get(funcDecl);
+        if (fingerprint == null) {
+            fingerprint = olderFingerprints.get(funcDecl);
+            if (fingerprint == null) {
+                fingerprint = fingerprint(funcDecl);
+            }
+            fingerprints.put(funcDecl, fingerprint);
+        }
+
+        // Nodes don't change once parsed, so if every label names the same
+        // node as last time, the key is the same too.  This is the common
+        // case in watch mode, and much cheaper than hashing.
+        SymbolMap<String> names = fingerprint.names;
+        FunctionDecl[] named = new FunctionDecl[names.size()];
+        for (int i = 0; i < named.length; i++) {
+            named[i] = funcMap.get(names.keyAt(i));
+        }
+        LastKey last = fingerprint.last;
+        if (last != null && Arrays.equals(last.named, named)) {
+            return last.key;
+        }
+
+        Key key = key(fingerprint, named);
+        fingerprint.last = new LastKey(named, key);
+        return key;
+    }
+
+    private static Key key(Fingerprint fingerprint, FunctionDecl[] named) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.write(VERSION.getBytes(StandardCharsets.UTF_8));
+            out.write(fingerprint.text);
+
+            SymbolMap<String> names = fingerprint.names;
+            for (int i = 0; i < named.length; i++) {
+                writeLabel(names.valueAt(i), out);
+                signature(named[i], out);
+            }
+
+            return new Key(sha256().digest(bytes.toByteArray()));
+        } catch (IOException ex) {
+            // Can't happen writing to memory
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Returns what the function with the key came to last time, or null if
+     * it hasn't been analyzed yet.
+     */
+    public Result get(Key key) {
+        Result result = used.get(key);
+        if (result == null) {
+            result = older.get(key);
+            if (result != null) {
+                used.put(key, result);
+            }
+        }
+        return result;
+    }
+
+    public void put(Key key, Result result) {
+        used.put(key, result);
+    }
+
+    /**
+     * Starts a new round of keeping track of which entries are used, and
+     * drops the unused ones past maxEntries.  Call it between analyses, not
+     * during one.
+     */
+    public synchronized void endRun() {
+        // Sized for a run like this one, which is what watch mode does next
+        Map<Key, Result> current = used;
+        used = new ConcurrentHashMap<>(current.size());
+
+        Map<Key, Result> kept = new HashMap<>(current);
+        for (Map.Entry<Key, Result> entry : older.entrySet()) {
+            if (kept.size() >= maxEntries) {
+                break;
+            }
+            kept.putIfAbsent(entry.getKey(), entry.getValue());
+        }
+        older = kept;
+
+        olderFingerprints = fingerprints;
+        fingerprints = new ConcurrentHashMap<>(olderFingerprints.size());
+    }
+
+    private static Fingerprint fingerprint(FunctionDecl funcDecl) {
+        MessageDigest digest = sha256();
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+            ASTSerializer.writeFunction(funcDecl, new DataOutputStream(bytes));
+            digest.update(bytes.toByteArray());
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+
+        // A parameter or local variable can't reuse the label of a function,
+        // so those labels count as well as the calls
+        SymbolMap<String> names = new SymbolMap<>();
+        for (FuncParamDecl param : funcDecl.getParams()) {
+            names.put(param.getSymbol(), param.getLabel());
+        }
+        for (VariableDecl varDecl : funcDecl.getLocalVarDecls()) {
+            names.put(varDecl.getSymbol(), varDecl.getLabel());
+        }
+        calls(funcDecl.getStmts(), names);
+
+        return new Fingerprint(digest.digest(), names);
+    }
+
+    /*
+     * Writes what the analyzer could need to know about the function with
+     * a given label: whether there is one, its parameters, which show up in
+     * error messages, and its return type.
+     */
+    private static void signature(FunctionDecl funcDecl, DataOutputStream out) throws IOException {
+        if (funcDecl == null) {
+            out.writeByte(0);
+            return;
+        }
+        out.writeByte(1);
+        out.writeInt(funcDecl.getParams().size());
+        for (FuncParamDecl param : funcDecl.getParams()) {
+            writeLabel(param.getLabel(), out);
+            out.writeByte(param.getType().ordinal());
+        }
+        out.writeByte(funcDecl.getReturnType().ordinal());
+    }
+
+    /*
+     * Labels can be of any length, which writeUTF can't take, so they are
+     * written as their UTF-8 bytes after the count of them.
+     */
+    private static void writeLabel(String label, DataOutputStream out) throws IOException {
+        byte[] utf8 = label.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(utf8.length);
+        out.write(utf8);
+    }
+
+    private static void calls(List<Statement> stmts, SymbolMap<String> names) {
+        if (stmts == null) {
+            return;
+        }
+        for (Statement stmt : stmts) {
+            if (stmt instanceof LabelAssignmentStatement) {
+                calls(((LabelAssignmentStatement) stmt).getExpr(), names);
+            } else if (stmt instanceof WhileLoopStatement) {
+                WhileLoopStatement loop = (WhileLoopStatement) stmt;
+                calls(loop.getExpr(), names);
+                calls(loop.getStmts(), names);
+            } else if (stmt instanceof IfElseStatement) {
+                IfElseStatement ifElse = (IfElseStatement) stmt;
+                calls(ifElse.getBinExpr(), names);
+                calls(ifElse.getStmts(), names);
+                calls(ifElse.getElseStmts(), names);
+            } else if (stmt instanceof PrintStatement) {
+                calls(((PrintStatement) stmt).getExpr(), names);
+            } else if (stmt instanceof ReturnStatement) {
+                calls(((ReturnStatement) stmt).getExpr(), names);
+            } else if (stmt instanceof LabelArgsStatement) {
+                LabelArgsStatement call = (LabelArgsStatement) stmt;
+                names.put(call.getSymbol(), call.getLabel());
+                for (Expression arg : call.getArgs()) {
+                    calls(arg, names);
+                }
+            }
+        }
+    }
+
+    private static void calls(Expression expr, SymbolMap<String> names) {
+        if (expr instanceof UnaryOpExpression) {
+            calls(((UnaryOpExpression) expr).getRightExpr(), names);
+        } else if (expr instanceof BinaryOpExpression) {
+            BinaryOpExpression binary = (BinaryOpExpression) expr;
+            calls(binary.getLeftExpr(), names);
+            calls(binary.getRightExpr(), names);
+        } else if (expr instanceof LabelArgsExpression) {
+            LabelArgsExpression call = (LabelArgsExpression) expr;
+            names.put(call.getSymbol(), call.getLabel());
+            for (Expression arg : call.getArgs()) {
+                calls(arg, names);
+            }
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 is not available", ex);
+        }
+    }
+}
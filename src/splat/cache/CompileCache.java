@@ -0,0 +1,216 @@
+package splat.cache;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import splat.lexer.SourceBuffer;
+import splat.parser.elements.ProgramAST;
+
+/**
+ * A directory of analyzed programs, so running the same source again can
+ * skip lexing, parsing and semantic analysis.  Each entry is one file named
+ * after the SHA-256 of the interpreter version and the source bytes, and
+ * holds the program as written by ASTSerializer.
+ *
+ * Several JVMs can share a directory.  An entry is written to a temporary
+ * file and renamed into place, so readers only ever see complete entries;
+ * two writers of the same key write the same bytes, so it doesn't matter
+ * which rename wins.  An entry that can't be read for any reason counts as
+ * a miss.  Once the entries take more than maxBytes, the least recently used
+ * ones are deleted; a hit marks an entry as used by touching it.
+ */
+public class CompileCache {
+
+    /**
+     * Part of every key.  Bump it whenever a change to the front end could
+     * give a different AST for the same source, so old entries stop
+     * matching.
+     */
+    public static final String VERSION = "splat-1/ast-" + ASTSerializer.FORMAT_VERSION;
+
+    public static final long DEFAULT_MAX_BYTES = 256L << 20;
+
+    private static final String SUFFIX = ".ast";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    // Temporary files this old were left behind by a writer that died
+    private static final long STALE_TEMP_MILLIS = 60 * 60 * 1000;
+
+    private final File dir;
+    private final long maxBytes;
+
+    public CompileCache(File dir) {
+        this(dir, DEFAULT_MAX_BYTES);
+    }
+
+    public CompileCache(File dir, long maxBytes) {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the key of a source file: the hex SHA-256 of VERSION and the
+     * source bytes.
+     */
+    public String key(SourceBuffer source) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 is not available", ex);
+        }
+
+        digest.update(VERSION.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        source.digest(digest);
+
+        StringBuilder hex = new StringBuilder(64);
+        for (byte b : digest.digest()) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16));
+            hex.append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Returns the program stored under the key, or null if there is none or
+     * it can't be read.
+     */
+    public ProgramAST load(String key) {
+        File entry = entry(key);
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(entry.toPath());
+        } catch (IOException ex) {
+            // not cached, or evicted under our feet
+            return null;
+        }
+
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+            if (!in.readUTF().equals(key)) {
+                throw new IOException("Cache entry was stored under another key");
+            }
+            ProgramAST progAST = ASTSerializer.read(in);
+            if (in.available() != 0) {
+                throw new IOException("Trailing bytes after the program");
+            }
+
+            entry.setLastModified(System.currentTimeMillis());
+            return progAST;
+
+        } catch (IOException ex) {
+            // A file we wrote can only be corrupt if the disk or someone
+            // else mangled it.  Drop it so it gets written again.
+            entry.delete();
+            return null;
+        }
+    }
+
+    /**
+     * Stores an analyzed program under the key, then evicts entries if the
+     * cache has grown too big.  Returns false, leaving the cache as it was,
+     * if the entry couldn't be written.
+     */
+    public boolean store(String key, ProgramAST progAST) {
+        Path temp = null;
+        try {
+            Files.createDirectories(dir.toPath());
+            temp = Files.createTempFile(dir.toPath(), key, TEMP_SUFFIX);
+
+            try (OutputStream file = Files.newOutputStream(temp);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 1 << 16))) {
+                out.writeUTF(key);
+                ASTSerializer.write(progAST, out);
+            }
+
+            Path target = entry(key).toPath();
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            temp = null;
+
+        } catch (IOException | IllegalArgumentException ex) {
+            return false;
+        } finally {
+            if (temp != null) {
+                temp.toFile().delete();
+            }
+        }
+
+        evict();
+        return true;
+    }
+
+    /*
+     * Deletes the least recently used entries until the rest fit in
+     * maxBytes.  Other JVMs may be adding and deleting entries at the same
+     * time, so files can vanish between listing and deleting them.
+     */
+    private void evict() {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        List<File> entries = new ArrayList<>();
+        long total = 0;
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(SUFFIX)) {
+                entries.add(file);
+                total += file.length();
+            } else if (name.endsWith(TEMP_SUFFIX) && now - file.lastModified() > STALE_TEMP_MILLIS) {
+                file.delete();
+            }
+        }
+        if (total <= maxBytes) {
+            return;
+        }
+
+        long[] lastUsed = new long[entries.size()];
+        Integer[] order = new Integer[entries.size()];
+        for (int i = 0; i < order.length; i++) {
+            lastUsed[i] = entries.get(i).lastModified();
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingLong(i -> lastUsed[i]));
+
+        for (int i : order) {
+            if (total <= maxBytes) {
+                break;
+            }
+            File entry = entries.get(i);
+            long size = entry.length();
+            try {
+                Files.deleteIfExists(entry.toPath());
+            } catch (IOException ex) {
+                continue;
+            }
+            total -= size;
+        }
+    }
+
+    private File entry(String key) {
+        return new File(dir, key + SUFFIX);
+    }
+}
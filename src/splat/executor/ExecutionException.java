@@ -6,7 +6,14 @@ import splat.parser.elements.ASTElement;
 public class ExecutionException extends SplatException {
 
 	public ExecutionException(String msg, ASTElement elem) {
-		super(msg, elem.getLine(), elem.getColumn());
+		super(msg, elem.getOffset());
+	}
+	
+	/**
+	 * For an error at a source offset, or -1 if the position isn't known.
+	 */
+	public ExecutionException(String msg, int offset) {
+		super(msg, offset);
 	}
 	
 	public ExecutionException(String msg, int line, int column) {
@@ -1,116 +1,118 @@
-package splat.executor;
-
-import java.util.Map;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Stack;
-
-import splat.parser.elements.FunctionDecl;
-import splat.parser.elements.FuncParamDecl;
-import splat.parser.elements.VariableDecl;
-import splat.parser.elements.ProgramAST;
-import splat.parser.elements.Statement;
-import splat.parser.elements.Declaration;
-import splat.parser.elements.Type;
-
-public class Executor {
-
-	private ProgramAST progAST;
-	
-	private Map<String, FunctionDecl> funcMap;
-	private Map<String, Value> progVarMap;
-    private Stack<ScopeEnvironment> callStack;
-	
-	public Executor(ProgramAST progAST) {
-		this.progAST = progAST;
-	}
-
-	public void runProgram() throws ExecutionException {
-
-		// This sets the maps that will be needed for executing function 
-		// calls and storing the values of the program variables
-		setMaps();
-        this.callStack = new Stack<>();
-		
-		try {
-			
-			// Go through and execute each of the statements
-			for (Statement stmt : progAST.getStmts()) {
-				stmt.execute(funcMap, progVarMap, callStack);
-			}
-			
-		// We should never have to catch this exception here, since the
-		// main program body cannot have returns
-		} catch (ReturnFromCall ex) {
-			System.out.println("Internal error!!! The main program body "
-					+ "cannot have a return statement -- this should have "
-					+ "been caught during semantic analysis!");
-
-            // FOR DEBUGGING ONLY!!! REMOVE IT IF YOU DON'T NEED IT!!!
-            ex.printStackTrace();
-			
-			throw new ExecutionException("Internal error -- fix your "
-					+ "semantic analyzer!", -1, -1);
-		}
-	}
-	
-	private void setMaps() throws ExecutionException
-    {
-        this.funcMap = new HashMap<String, FunctionDecl>();
-        this.progVarMap = new HashMap<String, Value>();
-
-		for (Declaration decl : progAST.getDecls()) 
-        {
-			String label = decl.getLabel().toString();
-			
-			if (decl instanceof FunctionDecl) {
-				FunctionDecl funcDecl = (FunctionDecl)decl;
-				funcMap.put(label, funcDecl);
-				
-			} else if (decl instanceof VariableDecl) {
-				VariableDecl varDecl = (VariableDecl)decl;
-                Value varVal = returnZeroValueOf(varDecl);
-				progVarMap.put(label, varVal);
-			}
-		}
-	}
-
-    public static final Value returnZeroValueOf(VariableDecl varDecl) throws ExecutionException
-    {
-        Type varType = varDecl.getType();
-        switch (varType)
-        {
-            case BOOLEAN:
-                return new BoolValue(false);
-            case STRING:
-                return new StringValue("");
-            case INTEGER:
-                return new IntegerValue(0);
-            default:
-                throw new ExecutionException(
-                    "Unknown type detected during execution: " + varType + 
-                    "WTF did your semantic analyzer do???", varDecl
-                );
-        }
-    }
-
-    public static final void removeFuncArgsAndLocalVarsFrom(
-        Map<String, Value> varAndParamMap, FunctionDecl funcDecl
-    ) {
-        if (funcDecl == null) { return; }
-
-        List<FuncParamDecl> params = funcDecl.getParams();
-        if (params == null) { return; }
-        for (FuncParamDecl param : params) 
-        {
-            varAndParamMap.remove(param.getLabel());
-        }
-
-        List<VariableDecl> localVars = funcDecl.getLocalVarDecls();
-        if (localVars == null) { return; }
-        for (VariableDecl localVar : localVars)
-        {
-            varAndParamMap.remove(localVar.getLabel());
-        }
-    }
-}
+package splat.executor;
+
+import java.util.Stack;
+
+import splat.lang.SymbolMap;
+import splat.parser.elements.FunctionDecl;
+import splat.parser.elements.VariableDecl;
+import splat.parser.elements.ProgramAST;
+import splat.parser.elements.Statement;
+import splat.parser.elements.Declaration;
+import splat.parser.elements.Type;
+import splat.semanticanalyzer.SlotResolver;
+
+public class Executor {
+
+	private ProgramAST progAST;
+	
+	private SymbolMap<FunctionDecl> funcMap;
+	private SymbolMap<Value> progVarMap;
+    private Stack<ScopeEnvironment> callStack;
+	private SlotResolver slotResolver;
+	
+	public Executor(ProgramAST progAST) {
+		this.progAST = progAST;
+	}
+
+	public void runProgram() throws ExecutionException {
+
+		beginProgram();
+		
+		// Go through and execute each of the statements
+		for (Statement stmt : progAST.getStmts()) {
+			runStmt(stmt);
+		}
+	}
+
+	/**
+	 * Sets up the program variables and functions, so that statements of
+	 * the program body can be passed to runStmt one by one.
+	 */
+	public void beginProgram() throws ExecutionException {
+
+		// This sets the maps that will be needed for executing function 
+		// calls and storing the values of the program variables
+		setMaps();
+        this.callStack = new Stack<>();
+
+		// Variables are read and written by slot, so every function body is
+		// bound to its frame layout before anything runs
+		this.slotResolver = new SlotResolver(progAST);
+	}
+
+	/**
+	 * Executes a statement of the program body.
+	 */
+	public void runStmt(Statement stmt) throws ExecutionException {
+		
+		slotResolver.resolveStmt(stmt);
+
+		try {
+			
+			stmt.execute(funcMap, progVarMap, callStack);
+			
+		// We should never have to catch this exception here, since the
+		// main program body cannot have returns
+		} catch (ReturnFromCall ex) {
+			System.out.println("Internal error!!! The main program body "
+					+ "cannot have a return statement -- this should have "
+					+ "been caught during semantic analysis!");
+
+            // FOR DEBUGGING ONLY!!! REMOVE IT IF YOU DON'T NEED IT!!!
+            ex.printStackTrace();
+			
+			throw new ExecutionException("Internal error -- fix your "
+					+ "semantic analyzer!", -1, -1);
+		}
+	}
+	
+	private void setMaps() throws ExecutionException
+    {
+        this.funcMap = new SymbolMap<FunctionDecl>();
+        this.progVarMap = new SymbolMap<Value>();
+
+		for (Declaration decl : progAST.getDecls()) 
+        {
+			int symbol = decl.getSymbol();
+			
+			if (decl instanceof FunctionDecl) {
+				FunctionDecl funcDecl = (FunctionDecl)decl;
+				funcMap.put(symbol, funcDecl);
+				
+			} else if (decl instanceof VariableDecl) {
+				VariableDecl varDecl = (VariableDecl)decl;
+                Value varVal = returnZeroValueOf(varDecl);
+				progVarMap.put(symbol, varVal);
+			}
+		}
+	}
+
+    public static final Value returnZeroValueOf(VariableDecl varDecl) throws ExecutionException
+    {
+        Type varType = varDecl.getType();
+        switch (varType)
+        {
+            case BOOLEAN:
+                return new BoolValue(false);
+            case STRING:
+                return new StringValue("");
+            case INTEGER:
+                return new IntegerValue(0);
+            default:
+                throw new ExecutionException(
+                    "Unknown type detected during execution: " + varType + 
+                    "WTF did your semantic analyzer do???", varDecl
+                );
+        }
+    }
+}
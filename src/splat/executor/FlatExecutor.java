@@ -0,0 +1,303 @@
+package splat.executor;
+
+import splat.parser.elements.Type;
+import splat.parser.flat.FlatAST;
+
+/**
+ * Runs a FlatAST.  Behaves like Executor on the ProgramAST it was built from
+ * -- same output, same ExecutionExceptions at the same positions -- but
+ * walks int arrays instead of objects, keeps variables in slot arrays
+ * instead of maps, and finishes a function on a return statement without
+ * throwing an exception.
+ */
+public class FlatExecutor {
+
+    private static final BoolValue TRUE = new BoolValue(true);
+    private static final BoolValue FALSE = new BoolValue(false);
+
+    private final FlatAST ast;
+
+    private Value[] globals;
+
+    // Set by a return statement, for the call it returns from
+    private Value returnVal;
+
+    public FlatExecutor(FlatAST ast) {
+        this.ast = ast;
+    }
+
+    public void runProgram() throws ExecutionException {
+        this.globals = zeroValues(ast.globalTypes(), 0);
+
+        int body = ast.body();
+        for (int i = 0, n = ast.listSize(body); i < n; i++) {
+            execute(ast.listItem(body, i), null);
+        }
+    }
+
+    /*
+     * Executes the statements of a list until one of them returns.  Returns
+     * true iff a return statement ran.
+     */
+    private boolean executeList(int list, Value[] frame) throws ExecutionException {
+        for (int i = 0, n = ast.listSize(list); i < n; i++) {
+            if (execute(ast.listItem(list, i), frame)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean execute(int stmt, Value[] frame) throws ExecutionException {
+        switch (ast.kind(stmt)) {
+            case FlatAST.ASSIGN_LOCAL:
+                frame[ast.first(stmt)] = evaluate(ast.second(stmt), frame);
+                return false;
+
+            case FlatAST.ASSIGN_GLOBAL:
+                globals[ast.first(stmt)] = evaluate(ast.second(stmt), frame);
+                return false;
+
+            case FlatAST.WHILE:
+                while (condition(ast.first(stmt), frame)) {
+                    if (executeList(ast.second(stmt), frame)) {
+                        return true;
+                    }
+                }
+                return false;
+
+            case FlatAST.IF:
+                if (condition(ast.first(stmt), frame)) {
+                    return executeList(ast.second(stmt), frame);
+                }
+                return executeList(ast.third(stmt), frame);
+
+            case FlatAST.PRINT:
+                print(ast.first(stmt), frame);
+                return false;
+
+            case FlatAST.PRINT_LINE:
+                System.out.println();
+                return false;
+
+            case FlatAST.RETURN:
+                executeReturn(stmt, frame);
+                return true;
+
+            case FlatAST.CALL_STMT:
+                callStmt(stmt, frame);
+                return false;
+
+            default:
+                throw new ExecutionException("Unknown statement kind: " + ast.kind(stmt),
+                        ast.offset(stmt));
+        }
+    }
+
+    // Analysis made sure conditions are Boolean, as the tree-walking
+    // executor trusts too
+    private boolean condition(int expr, Value[] frame) throws ExecutionException {
+        return ((BoolValue) evaluate(expr, frame)).getValue();
+    }
+
+    private void print(int expr, Value[] frame) throws ExecutionException {
+        Value val = evaluate(expr, frame);
+        Type valType = val.getType();
+        if (valType == Type.STRING) {
+            // String values keep the quotation marks of their literal
+            String strVal = ((StringValue) val).getValue();
+            System.out.print(strVal.substring(1, strVal.length() - 1));
+        } else if (valType == Type.INTEGER) {
+            System.out.print(((IntegerValue) val).getValue());
+        } else if (valType == Type.BOOLEAN) {
+            System.out.print(((BoolValue) val).getValue());
+        } else {
+            throw new ExecutionException(
+                "Uknown type was detected during execution: " + valType.toString() +
+                ". Man, go fix your semantic analyzer!",
+                ast.offset(expr));
+        }
+    }
+
+    private void executeReturn(int stmt, Value[] frame) throws ExecutionException {
+        // Analysis made sure the value, if any, has the function's type
+        Value val = null;
+        if (ast.first(stmt) >= 0) {
+            val = evaluate(ast.first(stmt), frame);
+        }
+
+        this.returnVal = val;
+    }
+
+    private void callStmt(int stmt, Value[] frame) throws ExecutionException {
+        int func = ast.first(stmt);
+        if (ast.funcReturnType(func) != Type.VOID) {
+            throw new ExecutionException(
+                "Functions of function call statements must have a declared return type of 'void'!",
+                ast.offset(stmt));
+        }
+
+        Value[] calleeFrame = newFrame(func, ast.second(stmt), frame);
+        int body = ast.funcBody(func);
+        for (int i = 0, n = ast.listSize(body); i < n; i++) {
+            int bodyStmt = ast.listItem(body, i);
+            if (execute(bodyStmt, calleeFrame)) {
+                if (returnVal != null) {
+                    throw new ExecutionException(
+                        "Returning a value from a function with return type of 'void'!" +
+                        "Probably your semantic analyzer missed it. Ehh... Go fix it!",
+                        ast.offset(bodyStmt));
+                }
+                return;
+            }
+        }
+    }
+
+    private Value callExpr(int expr, Value[] frame) throws ExecutionException {
+        int func = ast.first(expr);
+        Value[] calleeFrame = newFrame(func, ast.second(expr), frame);
+
+        if (executeList(ast.funcBody(func), calleeFrame)) {
+            Value val = returnVal;
+            returnVal = null;
+            return val;
+        }
+
+        Type funcReturnType = ast.funcReturnType(func);
+        if (funcReturnType == Type.VOID) {
+            return null;
+        }
+
+        throw new ExecutionException(
+            "Nothing is returned from a function call with return type '" + funcReturnType.toString() +
+            "'! Ehh...",
+            ast.offset(expr));
+    }
+
+    /*
+     * Makes the frame for a call: local variables start at their zero value,
+     * and the arguments are evaluated in the caller's frame.
+     */
+    private Value[] newFrame(int func, int args, Value[] callerFrame) throws ExecutionException {
+        int numParams = ast.funcParamCount(func);
+        Value[] frame = zeroValues(ast.funcFrameTypes(func), numParams);
+        for (int i = 0; i < numParams; i++) {
+            frame[i] = evaluate(ast.listItem(args, i), callerFrame);
+        }
+        return frame;
+    }
+
+    private Value[] zeroValues(int types, int from) throws ExecutionException {
+        Value[] values = new Value[ast.listSize(types)];
+        for (int i = from; i < values.length; i++) {
+            Type type = FlatAST.type(ast.listItem(types, i));
+            switch (type) {
+                case BOOLEAN:
+                    values[i] = FALSE;
+                    break;
+                case STRING:
+                    values[i] = new StringValue("");
+                    break;
+                case INTEGER:
+                    values[i] = new IntegerValue(0);
+                    break;
+                default:
+                    throw new ExecutionException(
+                        "Unknown type detected during execution: " + type +
+                        "WTF did your semantic analyzer do???", -1);
+            }
+        }
+        return values;
+    }
+
+    private Value evaluate(int expr, Value[] frame) throws ExecutionException {
+        int kind = ast.kind(expr);
+        switch (kind) {
+            case FlatAST.LITERAL:
+                return ast.constant(ast.first(expr));
+
+            case FlatAST.LOCAL:
+                return frame[ast.first(expr)];
+
+            case FlatAST.GLOBAL:
+                return globals[ast.first(expr)];
+
+            case FlatAST.NOT:
+                return bool(!((BoolValue) evaluate(ast.first(expr), frame)).getValue());
+
+            case FlatAST.NEG:
+                return new IntegerValue(-((IntegerValue) evaluate(ast.first(expr), frame)).getValue());
+
+            case FlatAST.CALL:
+                return callExpr(expr, frame);
+
+            default:
+                break;
+        }
+
+        // Binary operators evaluate both sides, left first, and never short
+        // circuit
+        Value leftVal = evaluate(ast.first(expr), frame);
+        Value rightVal = evaluate(ast.second(expr), frame);
+
+        switch (kind) {
+            case FlatAST.AND:
+                return bool(((BoolValue) leftVal).getValue() & ((BoolValue) rightVal).getValue());
+            case FlatAST.OR:
+                return bool(((BoolValue) leftVal).getValue() | ((BoolValue) rightVal).getValue());
+            case FlatAST.EQ:
+                return bool(equal(expr, leftVal, rightVal));
+            default:
+                break;
+        }
+
+        int left = ((IntegerValue) leftVal).getValue();
+        int right = ((IntegerValue) rightVal).getValue();
+
+        switch (kind) {
+            case FlatAST.ADD:
+                return new IntegerValue(left + right);
+            case FlatAST.SUB:
+                return new IntegerValue(left - right);
+            case FlatAST.MUL:
+                return new IntegerValue(left * right);
+            case FlatAST.DIV:
+                if (right == 0) {
+                    throw new ExecutionException("Can't divide by zero", ast.offset(expr));
+                }
+                return new IntegerValue(left / right);
+            case FlatAST.MOD:
+                return new IntegerValue(left % right);
+            case FlatAST.LT:
+                return bool(left < right);
+            case FlatAST.GT:
+                return bool(left > right);
+            case FlatAST.LE:
+                return bool(left <= right);
+            case FlatAST.GE:
+                return bool(left >= right);
+            default:
+                throw new ExecutionException("Unknown expression kind: " + kind,
+                        ast.offset(expr));
+        }
+    }
+
+    private boolean equal(int expr, Value left, Value right) throws ExecutionException {
+        if (left instanceof StringValue) {
+            return ((StringValue) left).getValue().equals(((StringValue) right).getValue());
+        } else if (left instanceof IntegerValue) {
+            return ((IntegerValue) left).getValue() == ((IntegerValue) right).getValue();
+        } else if (left instanceof BoolValue) {
+            return ((BoolValue) left).getValue() == ((BoolValue) right).getValue();
+        }
+
+        throw new ExecutionException(
+            "Left expression of the comparison operation is evaluated to unknown type: " +
+            left.getType().toString(),
+            ast.offset(expr));
+    }
+
+    private static BoolValue bool(boolean value) {
+        return value ? TRUE : FALSE;
+    }
+}
@@ -1,15 +1,16 @@
 package splat.executor;
 
-import java.util.Map;
-import java.util.HashMap;
-
+/**
+ * The frame of a function call: the values of its parameters, followed by
+ * its local variables, indexed by the slots SlotResolver gave them.
+ */
 public class ScopeEnvironment {
-    private Map<String, Value> localVarAndParamMap;
+    private Value[] slots;
 
-    public ScopeEnvironment(Map<String, Value> localVarAndParamMap)
+    public ScopeEnvironment(Value[] slots)
     {
-        this.localVarAndParamMap = localVarAndParamMap;
+        this.slots = slots;
     }
 
-    public Map<String, Value> getLocalVarAndParamMap() { return this.localVarAndParamMap; }
+    public Value[] getSlots() { return this.slots; }
 }
@@ -49,7 +49,7 @@ public class Operations {
         if (!BINARY_OPERATORS.contains(binOp)) {
             throw new SemanticAnalysisException("Unknown binary operator: " + binOp, binExpr);
         }
-        if (binOp == "==") {
+        if (binOp.equals("==")) {
             Type.verifyComparable(LHSType, RHSType, binExpr);
             return Type.BOOLEAN;
         } else if (ORDER_OPERATORS.contains(binOp)) {
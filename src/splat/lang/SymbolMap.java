@@ -0,0 +1,162 @@
+package splat.lang;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A map from interned symbol ids (see SymbolTable) to values.  Keys are plain
+ * ints, so lookups neither box nor hash a label string.  Entries are kept in
+ * insertion order, which is also the order values() walks them in.
+ */
+public final class SymbolMap<V> {
+
+    private int[] keys;
+    private Object[] values;
+    private int size = 0;
+
+    // Open addressing table of (entry index + 1), 0 marks an empty slot
+    private int[] slots;
+
+    public SymbolMap() {
+        this(8);
+    }
+
+    public SymbolMap(int expectedSize) {
+        int capacity = Math.max(expectedSize, 4);
+        this.keys = new int[capacity];
+        this.values = new Object[capacity];
+        this.slots = new int[tableSizeFor(capacity)];
+    }
+
+    public SymbolMap(SymbolMap<? extends V> other) {
+        this.keys = Arrays.copyOf(other.keys, other.keys.length);
+        this.values = Arrays.copyOf(other.values, other.values.length);
+        this.slots = Arrays.copyOf(other.slots, other.slots.length);
+        this.size = other.size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(int symbol) {
+        int entry = find(symbol);
+        return entry < 0 ? null : (V) values[entry];
+    }
+
+    public boolean containsKey(int symbol) {
+        return find(symbol) >= 0;
+    }
+
+    /**
+     * Returns the position of the symbol's entry in insertion order, as
+     * used by keyAt and valueAt, or -1 if it has none.
+     */
+    public int indexOf(int symbol) {
+        return find(symbol);
+    }
+
+    /**
+     * Maps the symbol to the value, returning the value it replaced (if any).
+     */
+    @SuppressWarnings("unchecked")
+    public V put(int symbol, V value) {
+        int mask = slots.length - 1;
+        int slot = mix(symbol) & mask;
+        while (slots[slot] != 0) {
+            int entry = slots[slot] - 1;
+            if (keys[entry] == symbol) {
+                V old = (V) values[entry];
+                values[entry] = value;
+                return old;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+        }
+        keys[size] = symbol;
+        values[size] = value;
+        slots[slot] = ++size;
+
+        if (size * 2 > slots.length) {
+            rehash();
+        }
+        return null;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int keyAt(int i) {
+        return keys[i];
+    }
+
+    @SuppressWarnings("unchecked")
+    public V valueAt(int i) {
+        return (V) values[i];
+    }
+
+    /**
+     * Replaces the value of the i-th entry, keeping its symbol.
+     */
+    public void setValueAt(int i, V value) {
+        values[i] = value;
+    }
+
+    public Iterable<V> values() {
+        return () -> new Iterator<V>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < size;
+            }
+
+            @Override
+            public V next() {
+                if (next >= size) {
+                    throw new NoSuchElementException();
+                }
+                return valueAt(next++);
+            }
+        };
+    }
+
+    private int find(int symbol) {
+        int mask = slots.length - 1;
+        for (int slot = mix(symbol) & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+            int entry = slots[slot] - 1;
+            if (keys[entry] == symbol) {
+                return entry;
+            }
+        }
+        return -1;
+    }
+
+    private void rehash() {
+        slots = new int[slots.length * 2];
+        int mask = slots.length - 1;
+        for (int entry = 0; entry < size; entry++) {
+            int slot = mix(keys[entry]) & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = entry + 1;
+        }
+    }
+
+    private static int mix(int symbol) {
+        int h = symbol * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static int tableSizeFor(int capacity) {
+        int n = 8;
+        while (n < capacity * 2) {
+            n <<= 1;
+        }
+        return n;
+    }
+}
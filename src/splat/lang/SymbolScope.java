@@ -0,0 +1,82 @@
+package splat.lang;
+
+/**
+ * A scope of declarations keyed by interned symbol ids, chained to the scope
+ * it is nested in.  A lookup that misses here falls back to the enclosing
+ * scopes, so a local scope only ever holds its own few declarations instead
+ * of a copy of everything visible from it.
+ *
+ * A scope can be frozen once it is complete, after which it can no longer
+ * be declared into; a frozen global scope can be shared by any number of
+ * local scopes, on any number of threads.
+ */
+public final class SymbolScope<V> {
+
+    private final SymbolScope<? extends V> parent;
+    private final SymbolMap<V> symbols;
+    private boolean frozen = false;
+
+    /**
+     * Creates an outermost scope.
+     */
+    public SymbolScope() {
+        this(null, 8);
+    }
+
+    /**
+     * Creates a scope nested in parent, which is null for an outermost one.
+     */
+    public SymbolScope(SymbolScope<? extends V> parent, int expectedSize) {
+        this.parent = parent;
+        this.symbols = new SymbolMap<>(expectedSize);
+    }
+
+    /**
+     * Returns what the symbol is declared as in this scope or, failing that,
+     * in the closest enclosing scope that declares it; null if none does.
+     */
+    public V lookup(int symbol) {
+        for (SymbolScope<? extends V> scope = this; scope != null; scope = scope.parent) {
+            V value = scope.symbols.get(symbol);
+            if (value != null) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    public boolean declaresLocally(int symbol) {
+        return symbols.containsKey(symbol);
+    }
+
+    /**
+     * Declares the symbol in this scope, hiding whatever the enclosing scopes
+     * declare it as.  Returns the declaration it replaced in this scope, if
+     * any.
+     */
+    public V declare(int symbol, V value) {
+        if (frozen) {
+            throw new IllegalStateException("Can't declare into a frozen scope");
+        }
+        return symbols.put(symbol, value);
+    }
+
+    /**
+     * Makes the scope read-only, and returns it.
+     */
+    public SymbolScope<V> freeze() {
+        this.frozen = true;
+        return this;
+    }
+
+    public SymbolScope<? extends V> getParent() {
+        return parent;
+    }
+
+    /**
+     * Returns the number of declarations in this scope itself.
+     */
+    public int size() {
+        return symbols.size();
+    }
+}
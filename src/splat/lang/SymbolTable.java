@@ -0,0 +1,189 @@
+package splat.lang;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import splat.lexer.SourceBuffer;
+
+/**
+ * The global table of interned labels.  Every identifier is given a dense int
+ * id the first time it is lexed, and the parser, semantic analyzer and
+ * executor key their maps by that id instead of hashing the label string
+ * again at every lookup.  Ids are stable until clear() is called.
+ *
+ * Nothing is ever removed on its own, so the table grows with every distinct
+ * label seen.  A single run only sees the labels of one program, but a
+ * long-lived session such as SplatWatcher has to clear() it now and then.
+ *
+ * Labels are hashed over their UTF-8 bytes, which for ASCII labels gives the
+ * same value as String.hashCode().
+ */
+public final class SymbolTable {
+
+    public static final int NO_SYMBOL = -1;
+
+    private static String[] names = new String[256];
+    private static byte[][] utf8 = new byte[256][]; // only kept for non-ASCII names
+    private static int[] hashes = new int[256];
+    private static int count = 0;
+
+    // Open addressing table of (id + 1), 0 marks an empty slot
+    private static int[] slots = new int[512];
+
+    private SymbolTable() {
+    }
+
+    /**
+     * Returns the id of the label held in source[start, start + length),
+     * assigning a new one if it hasn't been seen before.  Nothing is allocated
+     * when the label is already interned.
+     */
+    public static int intern(SourceBuffer source, int start, int length) {
+        int hash = 0;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + source.byteAt(start + i);
+        }
+        return intern(source, start, length, hash);
+    }
+
+    /**
+     * Same as intern(source, start, length), for a caller that has already
+     * hashed the bytes as hash = 31 * hash + b.
+     */
+    public static synchronized int intern(SourceBuffer source, int start, int length, int hash) {
+
+        int mask = slots.length - 1;
+        for (int slot = mix(hash) & mask; ; slot = (slot + 1) & mask) {
+            int entry = slots[slot];
+            if (entry == 0) {
+                String name = source.text(start, start + length);
+                return add(name, isAscii(name) ? null : source.bytes(start, start + length), hash, slot);
+            }
+
+            int id = entry - 1;
+            if (hashes[id] == hash && sameText(id, source, start, length)) {
+                return id;
+            }
+        }
+    }
+
+    /**
+     * Returns the id of the given label, assigning a new one if needed.
+     */
+    public static synchronized int intern(String name) {
+        byte[] bytes = isAscii(name) ? null : name.getBytes(StandardCharsets.UTF_8);
+        int hash = bytes == null ? name.hashCode() : hash(bytes);
+
+        int mask = slots.length - 1;
+        for (int slot = mix(hash) & mask; ; slot = (slot + 1) & mask) {
+            int entry = slots[slot];
+            if (entry == 0) {
+                return add(name, bytes, hash, slot);
+            }
+
+            int id = entry - 1;
+            if (hashes[id] == hash && names[id].equals(name)) {
+                return id;
+            }
+        }
+    }
+
+    public static synchronized String name(int id) {
+        return names[id];
+    }
+
+    public static synchronized int size() {
+        return count;
+    }
+
+    /**
+     * Forgets every label.  Ids handed out before no longer mean anything,
+     * so only call this when nothing still holds one: no tokens, AST nodes
+     * or SymbolMaps from before.
+     */
+    public static synchronized void clear() {
+        names = new String[256];
+        utf8 = new byte[256][];
+        hashes = new int[256];
+        count = 0;
+        slots = new int[512];
+    }
+
+    private static int add(String name, byte[] bytes, int hash, int slot) {
+        if (count == names.length) {
+            names = Arrays.copyOf(names, count * 2);
+            utf8 = Arrays.copyOf(utf8, count * 2);
+            hashes = Arrays.copyOf(hashes, count * 2);
+        }
+
+        int id = count++;
+        names[id] = name;
+        utf8[id] = bytes;
+        hashes[id] = hash;
+        slots[slot] = id + 1;
+
+        if (count * 2 > slots.length) {
+            rehash();
+        }
+        return id;
+    }
+
+    private static void rehash() {
+        slots = new int[slots.length * 2];
+        int mask = slots.length - 1;
+        for (int id = 0; id < count; id++) {
+            int slot = mix(hashes[id]) & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = id + 1;
+        }
+    }
+
+    private static int mix(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean sameText(int id, SourceBuffer source, int start, int length) {
+        byte[] bytes = utf8[id];
+        if (bytes != null) {
+            if (bytes.length != length) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if ((bytes[i] & 0xFF) != source.byteAt(start + i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        String name = names[id];
+        if (name.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (name.charAt(i) != source.byteAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isAscii(String name) {
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int hash(byte[] bytes) {
+        int hash = 0;
+        for (byte b : bytes) {
+            hash = 31 * hash + (b & 0xFF);
+        }
+        return hash;
+    }
+}
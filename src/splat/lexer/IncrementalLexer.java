@@ -0,0 +1,105 @@
+package splat.lexer;
+
+/**
+ * Re-lexes an edited source by reusing the tokens of the previous version.
+ *
+ * The edit is found by comparing the two sources from both ends.  Since no
+ * token spans a newline, only the lines from the start of the first changed
+ * line to the end of the last one have to be lexed again.  Tokens before them
+ * are kept as they are, and tokens after them only have their offsets and
+ * lines moved.
+ */
+public final class IncrementalLexer {
+
+    private IncrementalLexer() {
+    }
+
+    /**
+     * Lexes newSource, given the tokens of oldSource.  The result is the same
+     * as lexing newSource from scratch, including any LexException, as long
+     * as oldTokens hold the complete, successful lexing of oldSource.
+     */
+    public static TokenEdit relex(SourceBuffer oldSource, TokenBuffer oldTokens, SourceBuffer newSource)
+            throws LexException
+    {
+        int prefix = oldSource.mismatch(newSource);
+        if (prefix < 0) {
+            int n = oldTokens.size();
+            return new TokenEdit(oldTokens, n, n, n, 0, 0);
+        }
+
+        int oldLength = oldSource.length();
+        int newLength = newSource.length();
+        int shift = newLength - oldLength;
+
+        int limit = Math.min(oldLength, newLength) - prefix;
+        int suffix = 0;
+        while (suffix < limit
+                && oldSource.byteAt(oldLength - 1 - suffix) == newSource.byteAt(newLength - 1 - suffix)) {
+            suffix++;
+        }
+
+        // Widen the edit to whole lines. The newline ending it is in the
+        // common suffix, so it ends a line in the old source too.
+        int from = prefix;
+        while (from > 0 && newSource.byteAt(from - 1) != '\n') {
+            from--;
+        }
+        int to = newLength - suffix;
+        while (to < newLength && newSource.byteAt(to) != '\n') {
+            to++;
+        }
+        if (to < newLength) {
+            to++;
+        }
+        int oldTo = to - shift;
+
+        int firstToken = oldTokens.firstAtOrAfter(from);
+        int oldEndToken = oldTokens.firstAtOrAfter(oldTo);
+        int lineBase = countLinesBefore(oldSource, oldTokens, firstToken, from);
+
+        Lexer lexer = new Lexer(newSource, from, to, true);
+        TokenBuffer fresh = new TokenBuffer(newSource, (to - from) / 4);
+        try {
+            while (lexer.lexInto(fresh)) {
+                // keep going until the edited lines are exhausted
+            }
+        } catch (LexException ex) {
+            throw new LexException(ex.getMessage(), ex.getLine() + lineBase, ex.getColumn());
+        }
+        int lineShift = (lexer.getLine() - 1) - countNewlines(oldSource, from, oldTo);
+
+        int tail = oldTokens.size() - oldEndToken;
+        TokenBuffer tokens = new TokenBuffer(newSource, firstToken + fresh.size() + tail);
+        tokens.append(oldTokens, 0, firstToken, 0, 0);
+        tokens.append(fresh, 0, fresh.size(), 0, lineBase);
+        tokens.append(oldTokens, oldEndToken, oldTokens.size(), shift, lineShift);
+
+        return new TokenEdit(tokens, firstToken, oldEndToken, firstToken + fresh.size(), shift, lineShift);
+    }
+
+    /*
+     * Returns the number of newlines before the offset, which starts a line.
+     * A token's line already counts every newline up to its end, so only the
+     * gap after the last token before the offset has to be scanned.
+     */
+    private static int countLinesBefore(SourceBuffer source, TokenBuffer tokens, int nextToken, int offset) {
+        if (nextToken == 0) {
+            return countNewlines(source, 0, offset);
+        }
+
+        int last = nextToken - 1;
+        int end = tokens.start(last) + tokens.length(last);
+        return (tokens.line(last) - 1) + countNewlines(source, end + 1, offset);
+    }
+
+    private static int countNewlines(SourceBuffer source, int start, int end) {
+        int count = 0;
+        for (int i = start; i < end; i++) {
+            if (source.byteAt(i) == '\n') {
+                count++;
+            }
+        }
+        return count;
+    }
+}
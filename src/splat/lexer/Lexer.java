@@ -1,167 +1,419 @@
-package splat.lexer;
-
-import java.io.File;
-import java.io.BufferedInputStream;
-import java.io.FileInputStream;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.FileNotFoundException;
-import java.util.List;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Set;
-import java.util.HashSet;
-import java.lang.StringBuilder;
-
-public class Lexer {
-    private final InputStream iStream;
-
-    private int line = 1;
-    private int column = 0;
-    private int currByte = -1;
-    private boolean eof = false;
-
-    private static final Set<String> KEYWORDS = new HashSet<>(Arrays.asList(
-        "program", "begin", "end", "if", "then", "else", "while", "do", "print", "print_line",
-        "return", "Integer", "Boolean", "String", "true", "false", "is", "void"
-    ));
-
-	public Lexer(File progFile) {
-        try {
-            this.iStream = new BufferedInputStream(new FileInputStream(progFile));
-        } catch (FileNotFoundException fnfe) {
-            throw new RuntimeException(fnfe);
-        }
-	}
-
-    public List<Token> tokenize() throws LexException {
-        List<Token> tokens = new ArrayList<>();
-
-        try {
-            advance();
-
-            while (!eof) {
-                skipWhitespace();
-
-                if (eof) break;
-
-                char ch = (char) currByte;
-
-                if (Character.isLetter(ch) || ch == '_') {
-                    tokens.add(readIdentifierOrKeyword());
-                } else if (Character.isDigit(ch)) {
-                    tokens.add(readNumber());
-                } else if (ch == '"') {
-                    tokens.add(readString());
-                } else {
-                    tokens.add(readSymbol());
-                }
-            }
-
-            iStream.close();
-            return tokens;
-
-        } catch (IOException e) {
-            throw new LexException("I/O error while reading input: " + e.getMessage(), line, column);
-        }
-    }
-
-    private void advance() throws IOException {
-        currByte = iStream.read();
-        if (currByte == -1) {
-            eof = true;
-        } else {
-            if (currByte == '\n') {
-                line++;
-                column = 0;
-            } else {
-                column++;
-            }
-        }
-    }
-
-    private void skipWhitespace() throws IOException {
-        while (!eof && Character.isWhitespace((char) currByte)) {
-            advance();
-        }
-    }
-
-    private Token readIdentifierOrKeyword() throws IOException {
-        StringBuilder sb = new StringBuilder();
-        int startCol = column;
-
-        while (!eof && (Character.isLetterOrDigit((char) currByte) || currByte == '_')) {
-            sb.append((char) currByte);
-            advance();
-        }
-
-        String value = sb.toString();
-        return new Token(value, line, startCol);
-    }
-
-    private Token readNumber() throws IOException, LexException {
-        StringBuilder sb = new StringBuilder();
-        int startCol = column;
-
-        while (!eof && Character.isDigit((char) currByte)) {
-            sb.append((char) currByte);
-            advance();
-        }
-
-        return new Token(sb.toString(), line, startCol);
-    }
-
-    private Token readString() throws IOException, LexException {
-        StringBuilder sb = new StringBuilder();
-        int startCol = column;
-
-        advance(); // skip opening quote
-
-        while (!eof && currByte != '"') {
-            char ch = (char) currByte;
-            if (ch == '\\' || ch == '\n' || ch == '\r') {
-                throw new LexException("Invalid character in string literal", line, column);
-            }
-            sb.append(ch);
-            advance();
-        }
-
-        if (eof) {
-            throw new LexException("Unterminated string literal", line, startCol);
-        }
-
-        advance(); // skip closing quote
-        return new Token("\"" + sb.toString() + "\"", line, startCol);
-    }
-
-    private Token readSymbol() throws IOException, LexException {
-        int startCol = column;
-        char ch = (char) currByte;
-        String value = String.valueOf(ch);
-
-        switch (ch) {
-            case ':':
-                advance();
-                if (currByte == '=') { advance(); return new Token(":=", line, startCol); }
-                return new Token(":", line, startCol);
-            case '>':
-                advance();
-                if (currByte == '=') { advance(); return new Token(">=", line, startCol); }
-                return new Token(">", line, startCol);
-            case '<':
-                advance();
-                if (currByte == '=') { advance(); return new Token("<=", line, startCol); }
-                return new Token("<", line, startCol);
-            case '=':
-                advance();
-                if (currByte == '=') { advance(); return new Token("==", line, startCol); }
-                throw new LexException("Unexpected '=' (did you mean '=='?)", line, startCol);
-            case '+': case '-': case '*': case '/': case '%':
-            case '(': case ')': case ',': case ';':
-                advance();
-                return new Token(value, line, startCol);
-            default:
-                throw new LexException("Unexpected character: '" + ch + "'", line, column);
-        }
-    }
-}
+package splat.lexer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.FileNotFoundException;
+import java.util.List;
+import java.util.ArrayList;
+
+import splat.lang.SymbolTable;
+
+/**
+ * Scans the whole program source out of a SourceBuffer. The current byte is
+ * always source[pos]; the column is derived from the offset of the newline that
+ * started the current line, so bytes inside a token are never touched twice.
+ *
+ * The source is UTF-8.  ASCII bytes are classified with a lookup table, and
+ * only a byte from 0x80 up is decoded into a code point to be classified.
+ * Columns count bytes, not characters.
+ */
+public class Lexer {
+
+    // Classes of the ASCII bytes, built from the same Character predicates
+    // the lexer has always used
+    private static final byte SPACE = 1;
+    private static final byte WORD_START = 2; // letters and '_'
+    private static final byte DIGIT = 4;
+    private static final byte[] ASCII_CLASS = new byte[0x80];
+
+    static {
+        for (int c = 0; c < 0x80; c++) {
+            byte cls = 0;
+            if (Character.isWhitespace(c)) { cls |= SPACE; }
+            if (Character.isLetter(c) || c == '_') { cls |= WORD_START; }
+            if (Character.isDigit(c)) { cls |= DIGIT; }
+            ASCII_CLASS[c] = cls;
+        }
+    }
+
+    private final File progFile;
+    private SourceBuffer source;
+
+    private boolean started = false;
+    private int pos = 0;
+    private int end = 0;
+    private int line = 1;
+    private int lineStart = -1; // offset of the '\n' that started the current line
+    private boolean internSymbols = true;
+    private int decodedLength; // byte length of the code point decodeAt() last read
+    private int wordHash; // hash of the bytes of the word readIdentifierOrKeyword() last read
+
+    // The token most recently scanned by scan()
+    private TokenKind tokKind;
+    private int tokStart;
+    private int tokEnd;
+    private int tokSymbol;
+    private int tokLine;
+    private int tokColumn;
+
+	public Lexer(File progFile) {
+        if (!progFile.isFile()) {
+            throw new RuntimeException(new FileNotFoundException(progFile.getPath()));
+        }
+        this.progFile = progFile;
+	}
+
+    public Lexer(SourceBuffer source) {
+        this.progFile = null;
+        this.source = source;
+    }
+
+    /*
+     * Lexes only source[start, end).  start must be 0 or just past a '\n', so
+     * the columns come out the same as for the whole file, while lines are
+     * counted from 1 at start.  Unless internSymbols is set, identifiers are
+     * left with NO_SYMBOL for the caller to intern.
+     */
+    Lexer(SourceBuffer source, int start, int end, boolean internSymbols) {
+        this.progFile = null;
+        this.source = source;
+        this.started = true;
+        this.end = end;
+        this.lineStart = start - 1;
+        this.internSymbols = internSymbols;
+        moveTo(start);
+    }
+
+    public List<Token> tokenize() throws LexException {
+        List<Token> tokens = new ArrayList<>();
+
+        Token tok = nextToken();
+        while (tok != null) {
+            tokens.add(tok);
+            tok = nextToken();
+        }
+
+        return tokens;
+    }
+
+    /**
+     * Lexes the whole input into a compact TokenBuffer instead of a list of
+     * Token objects.
+     */
+    public TokenBuffer tokenizeToBuffer() throws LexException {
+        // A rough guess of one token per 4 bytes saves most of the regrowing
+        TokenBuffer tokens = new TokenBuffer(getSource(), getSource().length() / 4);
+
+        while (lexInto(tokens)) {
+            // keep going until the input is exhausted
+        }
+
+        return tokens;
+    }
+
+    /**
+     * Returns a stream that lexes tokens only as the consumer asks for them.
+     */
+    public TokenStream stream() {
+        return new LexerTokenStream(this);
+    }
+
+    /**
+     * Scans and returns the next token, or null once the input is exhausted.
+     */
+    public Token nextToken() throws LexException {
+        if (!scan()) {
+            return null;
+        }
+        String text = TokenBuffer.text(source, tokKind, tokStart, tokEnd - tokStart);
+        return new Token(tokKind, text, tokSymbol, tokStart, tokLine, tokColumn);
+    }
+
+    /**
+     * Scans the next token and appends it to the buffer.  Returns false, without
+     * appending anything, once the input is exhausted.
+     */
+    public boolean lexInto(TokenBuffer tokens) throws LexException {
+        if (!scan()) {
+            return false;
+        }
+        tokens.add(tokKind, tokStart, tokEnd - tokStart, tokSymbol, tokLine, tokColumn);
+        return true;
+    }
+
+    /**
+     * Returns the buffer holding the program source, loading it if necessary.
+     */
+    public SourceBuffer getSource() throws LexException {
+        if (!started) {
+            start();
+        }
+        return source;
+    }
+
+    /*
+     * Returns the current line, which is one more than the number of
+     * newlines consumed so far.
+     */
+    int getLine() {
+        return line;
+    }
+
+    private void start() throws LexException {
+        try {
+            if (source == null) {
+                source = SourceBuffer.load(progFile);
+            }
+        } catch (IOException e) {
+            throw new LexException("I/O error while reading input: " + e.getMessage(), line, column());
+        }
+
+        started = true;
+        end = source.length();
+        moveTo(0);
+    }
+
+    /*
+     * Scans the next token into the tok* fields.  Returns false at the end of
+     * the input.
+     */
+    private boolean scan() throws LexException {
+        if (!started) {
+            start();
+        }
+
+        skipWhitespace();
+
+        if (pos >= end) {
+            return false;
+        }
+
+        int b = source.byteAt(pos);
+        int cls = b < 0x80 ? ASCII_CLASS[b] : (Character.isLetter(decodeAt(pos)) ? WORD_START : 0);
+
+        if ((cls & WORD_START) != 0) {
+            readIdentifierOrKeyword();
+        } else if ((cls & DIGIT) != 0) {
+            readNumber();
+        } else if (b == '"') {
+            readString();
+        } else {
+            readSymbol();
+        }
+        return true;
+    }
+
+    /*
+     * Records the token that was just scanned.  The line is read after the
+     * token has been consumed, as it always has been.  Identifiers are
+     * interned here, once, for the rest of the pipeline.
+     */
+    private void emit(TokenKind kind, int start, int startCol) {
+        tokKind = kind;
+        tokStart = start;
+        tokEnd = pos;
+        tokSymbol = kind == TokenKind.IDENTIFIER && internSymbols
+                ? SymbolTable.intern(source, start, pos - start, wordHash)
+                : SymbolTable.NO_SYMBOL;
+        tokLine = line;
+        tokColumn = startCol;
+    }
+
+    /*
+     * Makes the byte at newPos the current one. Only the byte we land on can be a
+     * newline, since every caller skips over non-newline bytes to get here.
+     */
+    private void moveTo(int newPos) {
+        pos = newPos;
+        if (pos < end && source.byteAt(pos) == '\n') {
+            line++;
+            lineStart = pos;
+        }
+    }
+
+    private void advance() {
+        moveTo(pos + 1);
+    }
+
+    private int column() {
+        if (pos >= end) {
+            return Math.max(end - 1 - lineStart, 0); // the column stays on the last byte at EOF
+        }
+        return pos - lineStart;
+    }
+
+    /*
+     * Skips whitespace without going through moveTo() for every byte.  The
+     * byte at pos has already been counted if it was a newline.
+     */
+    private void skipWhitespace() {
+        int p = pos;
+        while (p < end) {
+            int b = source.byteAt(p);
+            if (b == '\n' && p != pos) {
+                line++;
+                lineStart = p;
+            }
+
+            if (b < 0x80) {
+                if ((ASCII_CLASS[b] & SPACE) == 0) {
+                    break;
+                }
+                p++;
+            } else {
+                if (!Character.isWhitespace(decodeAt(p))) {
+                    break;
+                }
+                p += decodedLength;
+            }
+        }
+        pos = p;
+    }
+
+    /*
+     * Decodes the UTF-8 code point starting at p and sets decodedLength to
+     * its length.  A malformed or truncated sequence reads as a single
+     * U+FFFD byte.
+     */
+    private int decodeAt(int p) {
+        int b = source.byteAt(p);
+        int length;
+        int cp;
+        if (b >= 0xC2 && b <= 0xDF) {
+            length = 2;
+            cp = b & 0x1F;
+        } else if (b >= 0xE0 && b <= 0xEF) {
+            length = 3;
+            cp = b & 0x0F;
+        } else if (b >= 0xF0 && b <= 0xF4) {
+            length = 4;
+            cp = b & 0x07;
+        } else {
+            decodedLength = 1;
+            return b < 0x80 ? b : 0xFFFD;
+        }
+
+        if (p + length > end) {
+            decodedLength = 1;
+            return 0xFFFD;
+        }
+        for (int i = 1; i < length; i++) {
+            int cont = source.byteAt(p + i);
+            if ((cont & 0xC0) != 0x80) {
+                decodedLength = 1;
+                return 0xFFFD;
+            }
+            cp = (cp << 6) | (cont & 0x3F);
+        }
+
+        boolean overlong = (length == 3 && cp < 0x800) || (length == 4 && cp < 0x10000);
+        if (overlong || cp > 0x10FFFF || (cp >= 0xD800 && cp <= 0xDFFF)) {
+            decodedLength = 1;
+            return 0xFFFD;
+        }
+        decodedLength = length;
+        return cp;
+    }
+
+    /*
+     * Reads a word, hashing its bytes on the way for SymbolTable.intern().
+     */
+    private void readIdentifierOrKeyword() {
+        int start = pos;
+        int startCol = column();
+
+        int p = pos;
+        int hash = 0;
+        while (p < end) {
+            int b = source.byteAt(p);
+            if (b < 0x80) {
+                if ((ASCII_CLASS[b] & (WORD_START | DIGIT)) == 0) {
+                    break;
+                }
+                hash = 31 * hash + b;
+                p++;
+            } else {
+                if (!Character.isLetterOrDigit(decodeAt(p))) {
+                    break;
+                }
+                for (int last = p + decodedLength; p < last; p++) {
+                    hash = 31 * hash + source.byteAt(p);
+                }
+            }
+        }
+        moveTo(p);
+
+        wordHash = hash;
+        emit(TokenKind.ofWord(source, start, p - start), start, startCol);
+    }
+
+    private void readNumber() {
+        int start = pos;
+        int startCol = column();
+
+        int p = pos;
+        while (p < end && source.byteAt(p) < 0x80 && (ASCII_CLASS[source.byteAt(p)] & DIGIT) != 0) {
+            p++;
+        }
+        moveTo(p);
+
+        emit(TokenKind.INT_LITERAL, start, startCol);
+    }
+
+    private void readString() throws LexException {
+        int start = pos;
+        int startCol = column();
+
+        int p = pos + 1; // skip opening quote
+        while (p < end && source.byteAt(p) != '"') {
+            int b = source.byteAt(p);
+            if (b == '\\' || b == '\n' || b == '\r') {
+                moveTo(p);
+                throw new LexException("Invalid character in string literal", line, column());
+            }
+            p++;
+        }
+
+        if (p >= end) {
+            pos = end;
+            throw new LexException("Unterminated string literal", line, startCol);
+        }
+
+        moveTo(p + 1); // skip closing quote
+        emit(TokenKind.STRING_LITERAL, start, startCol);
+    }
+
+    private void readSymbol() throws LexException {
+        int start = pos;
+        int startCol = column();
+        char ch = (char) source.byteAt(pos);
+
+        switch (ch) {
+            case ':': case '>': case '<':
+                advance();
+                if (peekIs('=')) { advance(); }
+                break;
+            case '=':
+                advance();
+                if (!peekIs('=')) {
+                    throw new LexException("Unexpected '=' (did you mean '=='?)", line, startCol);
+                }
+                advance();
+                break;
+            case '+': case '-': case '*': case '/': case '%':
+            case '(': case ')': case ',': case ';':
+                advance();
+                break;
+            default:
+                int cp = ch < 0x80 ? ch : decodeAt(pos);
+                throw new LexException(
+                        "Unexpected character: '" + new String(Character.toChars(cp)) + "'", line, column());
+        }
+
+        emit(TokenKind.ofSymbol(ch), start, startCol);
+    }
+
+    private boolean peekIs(char expected) {
+        return pos < end && source.byteAt(pos) == expected;
+    }
+}
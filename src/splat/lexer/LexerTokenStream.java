@@ -0,0 +1,87 @@
+package splat.lexer;
+
+/**
+ * Pulls tokens out of a Lexer on demand.  Peeked tokens wait in a small
+ * TokenBuffer window that only grows to the largest lookahead the caller has
+ * used; a Token object is only built when the caller asks for one.
+ */
+class LexerTokenStream implements TokenStream {
+    private final Lexer lexer;
+
+    private TokenBuffer window;
+    private int head = 0;
+    private boolean exhausted = false;
+
+    LexerTokenStream(Lexer lexer) {
+        this.lexer = lexer;
+    }
+
+    /*
+     * Makes sure the window holds the token k positions ahead, if there is one.
+     */
+    private boolean fill(int k) throws LexException {
+        if (window == null) {
+            window = new TokenBuffer(lexer.getSource(), 4);
+        }
+
+        while (window.size() - head <= k) {
+            if (exhausted) {
+                return false;
+            }
+
+            if (head > 0 && window.size() == window.capacity()) {
+                window.discard(head);
+                head = 0;
+            }
+
+            if (!lexer.lexInto(window)) {
+                exhausted = true;
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public Token peek(int k) throws LexException {
+        return fill(k) ? window.toToken(head + k) : null;
+    }
+
+    @Override
+    public Token next() throws LexException {
+        Token tok = peek(0);
+        if (tok != null) {
+            advance();
+        }
+        return tok;
+    }
+
+    @Override
+    public boolean hasToken(int k) throws LexException {
+        return fill(k);
+    }
+
+    @Override
+    public TokenKind peekKind(int k) throws LexException {
+        return fill(k) ? window.kind(head + k) : null;
+    }
+
+    @Override
+    public boolean peekIs(int k, String expected) throws LexException {
+        return fill(k) && window.textEquals(head + k, expected);
+    }
+
+    @Override
+    public void advance() throws LexException {
+        if (!fill(0)) {
+            return;
+        }
+
+        head++;
+        if (head == window.size()) {
+            window.clear();
+            head = 0;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package splat.lexer;
+
+import java.util.Arrays;
+
+/**
+ * Turns the source offset of a token back into the line and column the
+ * Lexer gave it.  Lets the AST keep a single offset per node, and only work
+ * out lines and columns when an error is actually reported.
+ *
+ * The offsets of the newlines are collected the first time they are needed.
+ * The token itself is then lexed again from the start of its line, since its
+ * line also counts a newline right after it (see Lexer.emit).
+ */
+public final class LineIndex {
+
+    private final SourceBuffer source;
+    private int[] newlines; // offset of every '\n', in order
+
+    public LineIndex(SourceBuffer source) {
+        this.source = source;
+    }
+
+    public int line(int offset) {
+        int lineStart = lineStart(offset);
+        int linesBefore = newlinesBefore(offset);
+
+        TokenBuffer tok = lexTokenAt(lineStart, offset);
+        return tok != null ? linesBefore + tok.line(0) : linesBefore + 1;
+    }
+
+    public int column(int offset) {
+        return offset - (lineStart(offset) - 1);
+    }
+
+    /*
+     * Returns the offset where the line holding the offset starts.
+     */
+    private int lineStart(int offset) {
+        int before = newlinesBefore(offset);
+        return before == 0 ? 0 : newlines[before - 1] + 1;
+    }
+
+    private int newlinesBefore(int offset) {
+        if (newlines == null) {
+            newlines = findNewlines();
+        }
+
+        int i = Arrays.binarySearch(newlines, offset);
+        return i >= 0 ? i : -i - 1;
+    }
+
+    private int[] findNewlines() {
+        int[] found = new int[64];
+        int count = 0;
+        for (int i = 0, n = source.length(); i < n; i++) {
+            if (source.byteAt(i) == '\n') {
+                if (count == found.length) {
+                    found = Arrays.copyOf(found, count * 2);
+                }
+                found[count++] = i;
+            }
+        }
+        return Arrays.copyOf(found, count);
+    }
+
+    /*
+     * Lexes the line from lineStart up to the token at offset, and returns a
+     * buffer holding just that token, with its line counted from 1 at
+     * lineStart.  Returns null if no token starts at the offset.
+     */
+    private TokenBuffer lexTokenAt(int lineStart, int offset) {
+        Lexer lexer = new Lexer(source, lineStart, source.length(), false);
+        TokenBuffer tok = new TokenBuffer(source, 1);
+        try {
+            while (lexer.lexInto(tok)) {
+                if (tok.start(0) >= offset) {
+                    return tok.start(0) == offset ? tok : null;
+                }
+                tok.clear();
+            }
+        } catch (LexException ex) {
+            // the line only lexed as far as the token in the first place
+        }
+        return null;
+    }
+}
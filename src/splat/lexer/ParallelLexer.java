@@ -0,0 +1,179 @@
+package splat.lexer;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import splat.lang.SymbolTable;
+
+/**
+ * Lexes a large source on several cores.  The source is cut into chunks that
+ * each end just after a '\n'.  A string literal can never contain a newline,
+ * so no token crosses a cut, and every chunk can be lexed on its own by a
+ * Lexer that starts at the cut.  The chunk results are then stitched back
+ * together in order, shifting their lines by the newlines in the chunks
+ * before them.  Columns need no fixing, since each chunk starts a line.
+ *
+ * The tokens, their positions, their symbol ids and any LexException come out
+ * exactly as the sequential Lexer would produce them.
+ */
+public class ParallelLexer {
+
+    /** Sources shorter than this aren't worth splitting. */
+    public static final int MIN_CHUNK_SIZE = 1 << 16;
+
+    private final SourceBuffer source;
+    private final ForkJoinPool pool;
+    private final int minChunkSize;
+
+    public ParallelLexer(SourceBuffer source) {
+        this(source, ForkJoinPool.commonPool());
+    }
+
+    public ParallelLexer(SourceBuffer source, ForkJoinPool pool) {
+        this(source, pool, MIN_CHUNK_SIZE);
+    }
+
+    ParallelLexer(SourceBuffer source, ForkJoinPool pool, int minChunkSize) {
+        this.source = source;
+        this.pool = pool;
+        this.minChunkSize = Math.max(minChunkSize, 1);
+    }
+
+    public TokenBuffer tokenizeToBuffer() throws LexException {
+        int[] cuts = split();
+        if (cuts.length <= 2 || pool.getParallelism() <= 1) {
+            return new Lexer(source).tokenizeToBuffer();
+        }
+
+        Chunk[] chunks = new Chunk[cuts.length - 1];
+        for (int i = 0; i < chunks.length; i++) {
+            chunks[i] = new Chunk(cuts[i], cuts[i + 1]);
+        }
+        pool.invoke(new LexChunks(chunks, 0, chunks.length));
+
+        return stitch(chunks);
+    }
+
+    /**
+     * Lexes the whole source up front and returns a stream over the result.
+     */
+    public TokenStream stream() throws LexException {
+        return new TokenBufferStream(tokenizeToBuffer());
+    }
+
+    /*
+     * Returns the chunk boundaries, starting with 0 and ending with the source
+     * length.  Every other boundary is just past a '\n'.
+     */
+    private int[] split() {
+        int length = source.length();
+        int chunkSize = Math.max(minChunkSize, length / (pool.getParallelism() * 4));
+
+        int[] cuts = new int[length / chunkSize + 2];
+        int count = 0;
+        cuts[count++] = 0;
+
+        int cut = 0;
+        while (cut < length) {
+            int next = Math.min(cut + chunkSize, length);
+            while (next < length && source.byteAt(next - 1) != '\n') {
+                next++;
+            }
+            if (count == cuts.length) {
+                cuts = Arrays.copyOf(cuts, count * 2);
+            }
+            cuts[count++] = next;
+            cut = next;
+        }
+
+        return Arrays.copyOf(cuts, count);
+    }
+
+    /*
+     * Joins the chunk buffers in source order.  Identifiers are interned here,
+     * in the same order the sequential Lexer would meet them, so they get the
+     * same ids.  The first failed chunk decides the exception, just as the
+     * first bad token would stop the sequential Lexer.
+     */
+    private TokenBuffer stitch(Chunk[] chunks) throws LexException {
+        int total = 0;
+        for (Chunk chunk : chunks) {
+            total += chunk.tokens.size();
+        }
+
+        TokenBuffer tokens = new TokenBuffer(source, total);
+        int lineOffset = 0;
+
+        for (Chunk chunk : chunks) {
+            TokenBuffer part = chunk.tokens;
+            for (int i = 0; i < part.size(); i++) {
+                TokenKind kind = part.kind(i);
+                int symbol = kind == TokenKind.IDENTIFIER
+                        ? SymbolTable.intern(source, part.start(i), part.length(i))
+                        : SymbolTable.NO_SYMBOL;
+                tokens.add(kind, part.start(i), part.length(i), symbol,
+                        part.line(i) + lineOffset, part.column(i));
+            }
+
+            if (chunk.error != null) {
+                throw new LexException(chunk.error.getMessage(),
+                        chunk.error.getLine() + lineOffset, chunk.error.getColumn());
+            }
+            lineOffset += chunk.newlines;
+        }
+
+        return tokens;
+    }
+
+    private class Chunk {
+        final int start;
+        final int end;
+
+        TokenBuffer tokens;
+        int newlines;
+        LexException error;
+
+        Chunk(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        void lex() {
+            Lexer lexer = new Lexer(source, start, end, false);
+            tokens = new TokenBuffer(source, (end - start) / 4);
+            try {
+                while (lexer.lexInto(tokens)) {
+                    // keep going until the chunk is exhausted
+                }
+            } catch (LexException e) {
+                error = e;
+            }
+            newlines = lexer.getLine() - 1;
+        }
+    }
+
+    @SuppressWarnings("serial")
+    private static class LexChunks extends RecursiveAction {
+        private final Chunk[] chunks;
+        private final int from;
+        private final int to;
+
+        LexChunks(Chunk[] chunks, int from, int to) {
+            this.chunks = chunks;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                chunks[from].lex();
+                return;
+            }
+
+            int mid = (from + to) >>> 1;
+            invokeAll(new LexChunks(chunks, from, mid), new LexChunks(chunks, mid, to));
+        }
+    }
+}
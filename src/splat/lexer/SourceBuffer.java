@@ -0,0 +1,129 @@
+package splat.lexer;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+/**
+ * The whole program source held in a single buffer, so the lexer can scan it
+ * with plain index arithmetic instead of pulling one byte at a time from a stream.
+ *
+ * Small files are read into a heap byte[]; anything at or above MAP_THRESHOLD
+ * bytes is memory-mapped read-only, which avoids copying hundreds of MB through
+ * the Java heap.
+ */
+public final class SourceBuffer {
+
+    public static final long MAP_THRESHOLD = 1L << 20;
+
+    // Exactly one of these is set: array below MAP_THRESHOLD, mapped above it
+    private final byte[] array;
+    private final ByteBuffer mapped;
+    private final int length;
+
+    private SourceBuffer(byte[] array) {
+        this.array = array;
+        this.mapped = null;
+        this.length = array.length;
+    }
+
+    private SourceBuffer(ByteBuffer mapped) {
+        this.array = null;
+        this.mapped = mapped;
+        this.length = mapped.limit();
+    }
+
+    public static SourceBuffer load(File file) throws IOException {
+        if (!file.isFile()) {
+            throw new FileNotFoundException(file.getPath());
+        }
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Source file is too large: " + size + " bytes");
+            }
+
+            if (size >= MAP_THRESHOLD) {
+                return new SourceBuffer(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+            }
+
+            byte[] array = new byte[(int) size];
+            ByteBuffer heap = ByteBuffer.wrap(array);
+            while (heap.hasRemaining() && channel.read(heap) >= 0) {
+                // keep reading until the file is fully buffered
+            }
+            if (heap.hasRemaining()) {
+                // the file shrank while it was being read
+                array = Arrays.copyOf(array, heap.position());
+            }
+            return new SourceBuffer(array);
+        }
+    }
+
+    public static SourceBuffer wrap(byte[] source) {
+        return new SourceBuffer(source);
+    }
+
+    public int length() {
+        return this.length;
+    }
+
+    /**
+     * Returns the unsigned value of the byte at the given offset.
+     */
+    public int byteAt(int offset) {
+        return (this.array != null ? this.array[offset] : this.mapped.get(offset)) & 0xFF;
+    }
+
+    /**
+     * Feeds the whole source to the digest, without copying it out of a
+     * mapped file.
+     */
+    public void digest(MessageDigest digest) {
+        if (this.array != null) {
+            digest.update(this.array);
+        } else {
+            digest.update(this.mapped.duplicate());
+        }
+    }
+
+    /**
+     * Returns the length of the longest common prefix of the two buffers, or
+     * -1 if their contents are identical.
+     */
+    public int mismatch(SourceBuffer other) {
+        int common = Math.min(this.length, other.length);
+        for (int i = 0; i < common; i++) {
+            if (byteAt(i) != other.byteAt(i)) {
+                return i;
+            }
+        }
+        return this.length == other.length ? -1 : common;
+    }
+
+    /**
+     * Returns the bytes in [start, end) decoded as UTF-8.  Malformed input is
+     * replaced with U+FFFD rather than rejected.
+     */
+    public String text(int start, int end) {
+        return new String(bytes(start, end), StandardCharsets.UTF_8);
+    }
+
+    public byte[] bytes(int start, int end) {
+        if (this.array != null) {
+            return Arrays.copyOfRange(this.array, start, end);
+        }
+        byte[] out = new byte[end - start];
+        ByteBuffer slice = this.mapped.duplicate();
+        slice.position(start);
+        slice.get(out);
+        return out;
+    }
+}
@@ -1,38 +1,86 @@
-package splat.lexer;
-
-public class Token {
-    private String value;
-    private int line;
-    private int column;
-
-    public Token(String value, int line, int column)
-    {
-        this.value = value;
-        this.line = line;
-        this.column = column;
-    }
-
-    public String getValue()
-    {
-        return this.value;
-    }
-
-    public int getLine()
-    {
-        return this.line;
-    }
-
-    public int getColumn()
-    {
-        return this.column;
-    }
-
-    @Override
-    public String toString()
-    {
-        return "{value: " + this.value + 
-            ", line: " + this.line + 
-            ", column: " + this.column + 
-            "}";
-    }
-}
+package splat.lexer;
+
+import splat.lang.SymbolTable;
+
+public class Token {
+    private TokenKind kind;
+    private String value;
+    private int symbol;
+    private int offset;
+    private int line;
+    private int column;
+
+    public Token(String value, int line, int column)
+    {
+        this(TokenKind.classify(value), value, line, column);
+    }
+
+    public Token(TokenKind kind, String value, int line, int column)
+    {
+        this(kind, value,
+                kind == TokenKind.IDENTIFIER ? SymbolTable.intern(value) : SymbolTable.NO_SYMBOL,
+                line, column);
+    }
+
+    public Token(TokenKind kind, String value, int symbol, int line, int column)
+    {
+        this(kind, value, symbol, -1, line, column);
+    }
+
+    public Token(TokenKind kind, String value, int symbol, int offset, int line, int column)
+    {
+        this.kind = kind;
+        this.value = value;
+        this.symbol = symbol;
+        this.offset = offset;
+        this.line = line;
+        this.column = column;
+    }
+
+    public TokenKind getKind()
+    {
+        return this.kind;
+    }
+
+    public String getValue()
+    {
+        return this.value;
+    }
+
+    /**
+     * Returns the interned id of an identifier, or SymbolTable.NO_SYMBOL for
+     * any other kind of token.
+     */
+    public int getSymbol()
+    {
+        return this.symbol;
+    }
+
+    /**
+     * Returns the source offset of the token's first byte, or -1 if the
+     * token wasn't lexed from a source.
+     */
+    public int getOffset()
+    {
+        return this.offset;
+    }
+
+    public int getLine()
+    {
+        return this.line;
+    }
+
+    public int getColumn()
+    {
+        return this.column;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "{value: " + this.value + 
+            ", line: " + this.line + 
+            ", column: " + this.column + 
+            "}";
+    }
+}
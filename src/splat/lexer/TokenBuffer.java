@@ -0,0 +1,246 @@
+package splat.lexer;
+
+import java.util.Arrays;
+
+/**
+ * A compact, growable sequence of tokens stored as parallel primitive arrays
+ * rather than one Token object per token.  The TokenKind is kept as its
+ * ordinal in a byte, and identifiers also keep their interned symbol id.
+ * Token text is never copied: each
+ * entry is a (start, length) slice of the SourceBuffer, which only becomes a
+ * String when text(i) or toToken(i) is called.
+ */
+public final class TokenBuffer {
+
+    private final SourceBuffer source;
+
+    private byte[] kinds;
+    private int[] starts;
+    private int[] lengths;
+    private int[] symbols;
+    private int[] lines;
+    private int[] columns;
+    private int size = 0;
+
+    public TokenBuffer(SourceBuffer source) {
+        this(source, 16);
+    }
+
+    public TokenBuffer(SourceBuffer source, int capacity) {
+        this.source = source;
+        capacity = Math.max(capacity, 1);
+        this.kinds = new byte[capacity];
+        this.starts = new int[capacity];
+        this.lengths = new int[capacity];
+        this.symbols = new int[capacity];
+        this.lines = new int[capacity];
+        this.columns = new int[capacity];
+    }
+
+    public int add(TokenKind kind, int start, int length, int symbol, int line, int column) {
+        if (size == kinds.length) {
+            grow();
+        }
+
+        kinds[size] = (byte) kind.ordinal();
+        starts[size] = start;
+        lengths[size] = length;
+        symbols[size] = symbol;
+        lines[size] = line;
+        columns[size] = column;
+        return size++;
+    }
+
+    private void grow() {
+        int capacity = kinds.length * 2;
+        kinds = Arrays.copyOf(kinds, capacity);
+        starts = Arrays.copyOf(starts, capacity);
+        lengths = Arrays.copyOf(lengths, capacity);
+        symbols = Arrays.copyOf(symbols, capacity);
+        lines = Arrays.copyOf(lines, capacity);
+        columns = Arrays.copyOf(columns, capacity);
+    }
+
+    /**
+     * Appends tokens [from, to) of another buffer over a source with the same
+     * bytes, moving their offsets by startShift and their lines by lineShift.
+     */
+    public void append(TokenBuffer other, int from, int to, int startShift, int lineShift) {
+        int n = to - from;
+        while (kinds.length < size + n) {
+            grow();
+        }
+
+        System.arraycopy(other.kinds, from, kinds, size, n);
+        System.arraycopy(other.starts, from, starts, size, n);
+        System.arraycopy(other.lengths, from, lengths, size, n);
+        System.arraycopy(other.symbols, from, symbols, size, n);
+        System.arraycopy(other.lines, from, lines, size, n);
+        System.arraycopy(other.columns, from, columns, size, n);
+
+        if (startShift != 0 || lineShift != 0) {
+            for (int i = size; i < size + n; i++) {
+                starts[i] += startShift;
+                lines[i] += lineShift;
+            }
+        }
+        size += n;
+    }
+
+    /**
+     * Returns the index of the first token starting at or after the offset.
+     */
+    public int firstAtOrAfter(int offset) {
+        int lo = 0;
+        int hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (starts[mid] < offset) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Drops the first n tokens, shifting the rest down to index 0.
+     */
+    public void discard(int n) {
+        int rest = size - n;
+        System.arraycopy(kinds, n, kinds, 0, rest);
+        System.arraycopy(starts, n, starts, 0, rest);
+        System.arraycopy(lengths, n, lengths, 0, rest);
+        System.arraycopy(symbols, n, symbols, 0, rest);
+        System.arraycopy(lines, n, lines, 0, rest);
+        System.arraycopy(columns, n, columns, 0, rest);
+        size = rest;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return kinds.length;
+    }
+
+    public SourceBuffer getSource() {
+        return source;
+    }
+
+    public TokenKind kind(int i) {
+        return TokenKind.VALUES[kinds[i]];
+    }
+
+    public int start(int i) {
+        return starts[i];
+    }
+
+    public int length(int i) {
+        return lengths[i];
+    }
+
+    public int symbol(int i) {
+        return symbols[i];
+    }
+
+    public int line(int i) {
+        return lines[i];
+    }
+
+    public int column(int i) {
+        return columns[i];
+    }
+
+    /**
+     * Compares the text of token i to the expected string without building a
+     * String for the token.
+     */
+    public boolean textEquals(int i, String expected) {
+        int len = lengths[i];
+        if (len != expected.length()) {
+            return false;
+        }
+
+        int start = starts[i];
+        for (int j = 0; j < len; j++) {
+            if (source.byteAt(start + j) != expected.charAt(j)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public String text(int i) {
+        return text(source, kind(i), starts[i], lengths[i]);
+    }
+
+    public Token toToken(int i) {
+        return new Token(kind(i), text(i), symbols[i], starts[i], lines[i], columns[i]);
+    }
+
+    /**
+     * Returns a stream over the tokens from index start on.
+     */
+    public TokenBufferStream stream(int start) {
+        return new TokenBufferStream(this, start);
+    }
+
+    /*
+     * Keywords, operators and other symbols come from a small fixed set, so
+     * hand out the shared String literals for them instead of allocating a new
+     * String every time.
+     */
+    static String text(SourceBuffer source, TokenKind kind, int start, int length) {
+        String fixed = null;
+        switch (kind) {
+            case KEYWORD: case BOOL_LITERAL:
+                fixed = TokenKind.reservedWord(source, start, length);
+                break;
+            case OPERATOR: case PUNCTUATION:
+                fixed = symbolText(source.byteAt(start), length);
+                if (fixed == null) { // 'and', 'or' and 'not' are operators too
+                    fixed = TokenKind.reservedWord(source, start, length);
+                }
+                break;
+            default:
+                break;
+        }
+        return fixed != null ? fixed : source.text(start, start + length);
+    }
+
+    private static String symbolText(int first, int length) {
+        if (length == 2) {
+            switch (first) {
+                case ':': return ":=";
+                case '>': return ">=";
+                case '<': return "<=";
+                case '=': return "==";
+                default: return null;
+            }
+        } else if (length == 1) {
+            switch (first) {
+                case ':': return ":";
+                case '>': return ">";
+                case '<': return "<";
+                case '+': return "+";
+                case '-': return "-";
+                case '*': return "*";
+                case '/': return "/";
+                case '%': return "%";
+                case '(': return "(";
+                case ')': return ")";
+                case ',': return ",";
+                case ';': return ";";
+                default: return null;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,64 @@
+package splat.lexer;
+
+/**
+ * A TokenStream over a TokenBuffer that has already been fully lexed.
+ */
+public class TokenBufferStream implements TokenStream {
+    private final TokenBuffer tokens;
+    private int index;
+
+    public TokenBufferStream(TokenBuffer tokens) {
+        this(tokens, 0);
+    }
+
+    public TokenBufferStream(TokenBuffer tokens, int start) {
+        this.tokens = tokens;
+        this.index = start;
+    }
+
+    /**
+     * Returns the buffer index of the next token.
+     */
+    public int position() {
+        return index;
+    }
+
+    @Override
+    public Token peek(int k) {
+        int i = index + k;
+        return i < tokens.size() ? tokens.toToken(i) : null;
+    }
+
+    @Override
+    public Token next() {
+        Token tok = peek(0);
+        if (tok != null) {
+            index++;
+        }
+        return tok;
+    }
+
+    @Override
+    public boolean hasToken(int k) {
+        return index + k < tokens.size();
+    }
+
+    @Override
+    public TokenKind peekKind(int k) {
+        int i = index + k;
+        return i < tokens.size() ? tokens.kind(i) : null;
+    }
+
+    @Override
+    public boolean peekIs(int k, String expected) {
+        int i = index + k;
+        return i < tokens.size() && tokens.textEquals(i, expected);
+    }
+
+    @Override
+    public void advance() {
+        if (index < tokens.size()) {
+            index++;
+        }
+    }
+}
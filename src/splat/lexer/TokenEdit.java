@@ -0,0 +1,56 @@
+package splat.lexer;
+
+/**
+ * The tokens of an edited source, and where they differ from the tokens of
+ * the previous version.  Tokens before getFrom() are unchanged.  Old tokens
+ * from getOldEnd() on are the new tokens from getNewEnd() on, with their
+ * offsets moved by getOffsetShift() and their lines by getLineShift().
+ */
+public final class TokenEdit {
+    private final TokenBuffer tokens;
+    private final int from;
+    private final int oldEnd;
+    private final int newEnd;
+    private final int offsetShift;
+    private final int lineShift;
+
+    TokenEdit(TokenBuffer tokens, int from, int oldEnd, int newEnd, int offsetShift, int lineShift) {
+        this.tokens = tokens;
+        this.from = from;
+        this.oldEnd = oldEnd;
+        this.newEnd = newEnd;
+        this.offsetShift = offsetShift;
+        this.lineShift = lineShift;
+    }
+
+    public TokenBuffer getTokens() {
+        return tokens;
+    }
+
+    public int getFrom() {
+        return from;
+    }
+
+    public int getOldEnd() {
+        return oldEnd;
+    }
+
+    public int getNewEnd() {
+        return newEnd;
+    }
+
+    /**
+     * Returns how far the unchanged tokens after the edit moved in the buffer.
+     */
+    public int getTokenShift() {
+        return newEnd - oldEnd;
+    }
+
+    public int getOffsetShift() {
+        return offsetShift;
+    }
+
+    public int getLineShift() {
+        return lineShift;
+    }
+}
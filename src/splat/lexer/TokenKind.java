@@ -0,0 +1,152 @@
+package splat.lexer;
+
+/**
+ * What a token is, as decided by the lexer.  Reserved words are recognised
+ * with a switch on their length and first byte followed by a single
+ * comparison, so classifying a word never allocates.
+ */
+public enum TokenKind {
+    IDENTIFIER,
+    KEYWORD,
+    INT_LITERAL,
+    STRING_LITERAL,
+    BOOL_LITERAL,
+    OPERATOR,
+    PUNCTUATION;
+
+    static final TokenKind[] VALUES = values();
+
+    /**
+     * Returns the kind of a word (a run of letters, digits and underscores).
+     */
+    static TokenKind ofWord(SourceBuffer source, int start, int length) {
+        String reserved = reservedWord(source, start, length);
+        return reserved == null ? IDENTIFIER : ofReservedWord(reserved);
+    }
+
+    /**
+     * Classifies a complete token text.  Used for tokens that weren't built by
+     * the lexer.
+     */
+    public static TokenKind classify(String text) {
+        char first = text.charAt(0);
+        if (first == '"') {
+            return STRING_LITERAL;
+        } else if (Character.isDigit(first)) {
+            return INT_LITERAL;
+        } else if (Character.isLetter(first) || first == '_') {
+            for (String word : RESERVED_WORDS) {
+                if (word.equals(text)) {
+                    return ofReservedWord(word);
+                }
+            }
+            return IDENTIFIER;
+        } else {
+            return ofSymbol(first);
+        }
+    }
+
+    static TokenKind ofSymbol(int first) {
+        switch (first) {
+            case '(': case ')': case ',': case ';': case ':':
+                return PUNCTUATION;
+            default:
+                return OPERATOR;
+        }
+    }
+
+    /*
+     * Only ever called with a reserved word, so the first one or two chars are
+     * enough to tell them apart.
+     */
+    private static TokenKind ofReservedWord(String word) {
+        switch (word.charAt(0)) {
+            case 'f': // false
+                return BOOL_LITERAL;
+            case 't': // true, but not then
+                return word.charAt(1) == 'r' ? BOOL_LITERAL : KEYWORD;
+            case 'a': case 'o': case 'n': // and, or, not
+                return OPERATOR;
+            default:
+                return KEYWORD;
+        }
+    }
+
+    private static final String[] RESERVED_WORDS = {
+        "if", "do", "is", "or", "end", "and", "not", "then", "else", "true", "void",
+        "begin", "while", "print", "false", "return", "String", "program", "Integer",
+        "Boolean", "print_line"
+    };
+
+    /**
+     * Returns the shared String literal for the reserved word at
+     * source[start, start + length), or null if those bytes aren't one.
+     */
+    static String reservedWord(SourceBuffer source, int start, int length) {
+        String candidate;
+        int first = source.byteAt(start);
+
+        switch (length) {
+            case 2:
+                switch (first) {
+                    case 'i': candidate = source.byteAt(start + 1) == 'f' ? "if" : "is"; break;
+                    case 'd': candidate = "do"; break;
+                    case 'o': candidate = "or"; break;
+                    default: return null;
+                }
+                break;
+            case 3:
+                switch (first) {
+                    case 'e': candidate = "end"; break;
+                    case 'a': candidate = "and"; break;
+                    case 'n': candidate = "not"; break;
+                    default: return null;
+                }
+                break;
+            case 4:
+                switch (first) {
+                    case 't': candidate = source.byteAt(start + 1) == 'h' ? "then" : "true"; break;
+                    case 'e': candidate = "else"; break;
+                    case 'v': candidate = "void"; break;
+                    default: return null;
+                }
+                break;
+            case 5:
+                switch (first) {
+                    case 'b': candidate = "begin"; break;
+                    case 'w': candidate = "while"; break;
+                    case 'p': candidate = "print"; break;
+                    case 'f': candidate = "false"; break;
+                    default: return null;
+                }
+                break;
+            case 6:
+                switch (first) {
+                    case 'r': candidate = "return"; break;
+                    case 'S': candidate = "String"; break;
+                    default: return null;
+                }
+                break;
+            case 7:
+                switch (first) {
+                    case 'p': candidate = "program"; break;
+                    case 'I': candidate = "Integer"; break;
+                    case 'B': candidate = "Boolean"; break;
+                    default: return null;
+                }
+                break;
+            case 10:
+                candidate = "print_line";
+                break;
+            default:
+                return null;
+        }
+
+        for (int i = 1; i < length; i++) {
+            if (source.byteAt(start + i) != candidate.charAt(i)) {
+                return null;
+            }
+        }
+        return first == candidate.charAt(0) ? candidate : null;
+    }
+}
@@ -0,0 +1,54 @@
+package splat.lexer;
+
+import java.util.List;
+
+/**
+ * A TokenStream over a token list that has already been fully lexed.
+ */
+public class TokenListStream implements TokenStream {
+    private final List<Token> tokens;
+    private int index = 0;
+
+    public TokenListStream(List<Token> tokens) {
+        this.tokens = tokens;
+    }
+
+    @Override
+    public Token peek(int k) {
+        int i = index + k;
+        return i < tokens.size() ? tokens.get(i) : null;
+    }
+
+    @Override
+    public Token next() {
+        Token tok = peek(0);
+        if (tok != null) {
+            index++;
+        }
+        return tok;
+    }
+
+    @Override
+    public boolean hasToken(int k) {
+        return index + k < tokens.size();
+    }
+
+    @Override
+    public TokenKind peekKind(int k) {
+        Token tok = peek(k);
+        return tok != null ? tok.getKind() : null;
+    }
+
+    @Override
+    public boolean peekIs(int k, String expected) {
+        Token tok = peek(k);
+        return tok != null && tok.getValue().equals(expected);
+    }
+
+    @Override
+    public void advance() {
+        if (index < tokens.size()) {
+            index++;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package splat.lexer;
+
+/**
+ * A forward-only source of tokens. Implementations only have to buffer as many
+ * tokens as the deepest peek asks for, so a parser pulling from a lexer never
+ * needs the full token list in memory.
+ */
+public interface TokenStream {
+
+    /**
+     * Returns the token k positions after the next one (peek(0) is the next
+     * token) without consuming anything, or null if the input ends before it.
+     */
+    Token peek(int k) throws LexException;
+
+    /**
+     * Consumes and returns the next token, or null at the end of the input.
+     */
+    Token next() throws LexException;
+
+    /**
+     * Returns true iff there is a token k positions ahead.
+     */
+    boolean hasToken(int k) throws LexException;
+
+    /**
+     * Returns the kind of the token k positions ahead, or null if the input
+     * ends before it.
+     */
+    TokenKind peekKind(int k) throws LexException;
+
+    /**
+     * Returns true iff there is a token k positions ahead and its text equals
+     * the expected value.  Unlike peek(k), this doesn't have to build a Token.
+     */
+    boolean peekIs(int k, String expected) throws LexException;
+
+    /**
+     * Consumes the next token without building a Token for it.
+     */
+    void advance() throws LexException;
+}
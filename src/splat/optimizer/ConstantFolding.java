@@ -0,0 +1,213 @@
+package splat.optimizer;
+
+import java.util.List;
+
+import splat.executor.BoolValue;
+import splat.executor.IntegerValue;
+import splat.executor.StringValue;
+import splat.executor.Value;
+import splat.lang.SymbolMap;
+import splat.lang.SymbolTable;
+import splat.lexer.Token;
+import splat.lexer.TokenKind;
+import splat.parser.elements.BinaryOpExpression;
+import splat.parser.elements.Declaration;
+import splat.parser.elements.Expression;
+import splat.parser.elements.FunctionDecl;
+import splat.parser.elements.IfElseStatement;
+import splat.parser.elements.LabelArgsExpression;
+import splat.parser.elements.LabelArgsStatement;
+import splat.parser.elements.LabelAssignmentStatement;
+import splat.parser.elements.LabelExpression;
+import splat.parser.elements.Literal;
+import splat.parser.elements.PrintStatement;
+import splat.parser.elements.ProgramAST;
+import splat.parser.elements.ReturnStatement;
+import splat.parser.elements.Statement;
+import splat.parser.elements.UnaryOpExpression;
+import splat.parser.elements.WhileLoopStatement;
+
+/**
+ * Replaces operations on literals with the literal they evaluate to.  The
+ * operation itself does the evaluating, so the result is exactly what it
+ * would have been at run time.  An operation that fails, like a division
+ * by zero, is left as it is, to fail in the same place when it runs.
+ *
+ * ConstantPropagation extends this to variables known to hold a constant.
+ */
+public class ConstantFolding extends Pass {
+
+    @Override
+    public String getName() {
+        return "constant-fold";
+    }
+
+    @Override
+    public void run(ProgramAST progAST, PassStats stats) {
+        for (Declaration decl : progAST.getDecls()) {
+            if (decl instanceof FunctionDecl) {
+                FunctionDecl funcDecl = (FunctionDecl) decl;
+                stmtList(funcDecl.getStmts(), functionConstants(funcDecl), stats);
+            }
+        }
+        stmtList(progAST.getStmts(), programConstants(progAST), stats);
+    }
+
+    /**
+     * Returns the constants known at the start of the function body, or
+     * null to track none.
+     */
+    protected SymbolMap<Literal> functionConstants(FunctionDecl funcDecl) {
+        return null;
+    }
+
+    /**
+     * Returns the constants known at the start of the program body, or
+     * null to track none.
+     */
+    protected SymbolMap<Literal> programConstants(ProgramAST progAST) {
+        return null;
+    }
+
+    /**
+     * Folds the statements in order.  If constants is not null, it maps
+     * each variable assigned so far to the literal it holds, or to null if
+     * its value isn't known, and is kept up to date.
+     */
+    protected void stmtList(List<Statement> stmts, SymbolMap<Literal> constants, PassStats stats) {
+        if (stmts == null) {
+            return;
+        }
+        for (Statement stmt : stmts) {
+            stmt(stmt, constants, stats);
+        }
+    }
+
+    protected void stmt(Statement stmt, SymbolMap<Literal> constants, PassStats stats) {
+
+        if (stmt instanceof LabelAssignmentStatement) {
+            LabelAssignmentStatement assign = (LabelAssignmentStatement) stmt;
+            Expression expr = fold(assign.getExpr(), constants, stats);
+            assign.setExpr(expr);
+            if (constants != null) {
+                constants.put(assign.getSymbol(), expr instanceof Literal ? (Literal) expr : null);
+            }
+
+        } else if (stmt instanceof WhileLoopStatement) {
+            WhileLoopStatement loop = (WhileLoopStatement) stmt;
+            loop.setExpr(fold(loop.getExpr(), constants, stats));
+            stmtList(loop.getStmts(), constants, stats);
+
+        } else if (stmt instanceof IfElseStatement) {
+            IfElseStatement ifElse = (IfElseStatement) stmt;
+            ifElse.setBinExpr(fold(ifElse.getBinExpr(), constants, stats));
+            stmtList(ifElse.getStmts(), constants, stats);
+            stmtList(ifElse.getElseStmts(), constants, stats);
+
+        } else if (stmt instanceof PrintStatement) {
+            PrintStatement print = (PrintStatement) stmt;
+            print.setExpr(fold(print.getExpr(), constants, stats));
+
+        } else if (stmt instanceof ReturnStatement) {
+            ReturnStatement ret = (ReturnStatement) stmt;
+            if (ret.getExpr() != null) {
+                ret.setExpr(fold(ret.getExpr(), constants, stats));
+            }
+
+        } else if (stmt instanceof LabelArgsStatement) {
+            foldArgs(((LabelArgsStatement) stmt).getArgs(), constants, stats);
+        }
+    }
+
+    /*
+     * Returns what expr folds into, which may be expr itself with its
+     * operands folded
+     */
+    protected Expression fold(Expression expr, SymbolMap<Literal> constants, PassStats stats) {
+
+        if (expr instanceof LabelExpression) {
+            Literal constant = constants != null ? constants.get(((LabelExpression) expr).getSymbol()) : null;
+            if (constant != null) {
+                stats.rewritten(1);
+                return literal(constant.getValue(), constantOf(constant), expr);
+            }
+
+        } else if (expr instanceof UnaryOpExpression) {
+            UnaryOpExpression unary = (UnaryOpExpression) expr;
+            Expression operand = fold(unary.getRightExpr(), constants, stats);
+            unary.setRightExpr(operand);
+            if (operand instanceof Literal) {
+                return evaluate(unary, 1, stats);
+            }
+
+        } else if (expr instanceof BinaryOpExpression) {
+            BinaryOpExpression binary = (BinaryOpExpression) expr;
+            Expression left = fold(binary.getLeftExpr(), constants, stats);
+            Expression right = fold(binary.getRightExpr(), constants, stats);
+            binary.setLeftExpr(left);
+            binary.setRightExpr(right);
+            if (left instanceof Literal && right instanceof Literal) {
+                return evaluate(binary, 2, stats);
+            }
+
+        } else if (expr instanceof LabelArgsExpression) {
+            foldArgs(((LabelArgsExpression) expr).getArgs(), constants, stats);
+        }
+        return expr;
+    }
+
+    private void foldArgs(List<Expression> args, SymbolMap<Literal> constants, PassStats stats) {
+        for (int i = 0; i < args.size(); i++) {
+            args.set(i, fold(args.get(i), constants, stats));
+        }
+    }
+
+    /*
+     * Evaluates an operation whose operands are all literals, or returns it
+     * as it is if that fails
+     */
+    private static Expression evaluate(Expression op, int numOperands, PassStats stats) {
+        Value value;
+        try {
+            value = op.evaluate(null, null, null);
+        } catch (Exception ex) {
+            return op;
+        }
+
+        String text;
+        if (value instanceof IntegerValue) {
+            text = Integer.toString(((IntegerValue) value).getValue());
+        } else if (value instanceof BoolValue) {
+            text = Boolean.toString(((BoolValue) value).getValue());
+        } else {
+            text = ((StringValue) value).getValue();
+        }
+
+        stats.removed(numOperands);
+        stats.rewritten(1);
+        return literal(text, value, op);
+    }
+
+    private static Value constantOf(Literal literal) {
+        try {
+            return literal.evaluate(null, null, null);
+        } catch (Exception ex) {
+            throw new IllegalStateException("Literal that doesn't evaluate: " + literal.getValue(), ex);
+        }
+    }
+
+    /*
+     * A new literal standing in for the expression replaced, at its position
+     */
+    private static Literal literal(String text, Value value, Expression replaced) {
+        TokenKind kind;
+        if (value instanceof IntegerValue) {
+            kind = TokenKind.INT_LITERAL;
+        } else if (value instanceof BoolValue) {
+            kind = TokenKind.BOOL_LITERAL;
+        } else {
+            kind = TokenKind.STRING_LITERAL;
+        }
+        return new Literal(new Token(kind, text, SymbolTable.NO_SYMBOL, replaced.getOffset(), -1, -1), value);
+    }
+}
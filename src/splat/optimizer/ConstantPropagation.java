@@ -0,0 +1,141 @@
+package splat.optimizer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import splat.executor.BoolValue;
+import splat.executor.IntegerValue;
+import splat.lang.SymbolMap;
+import splat.lang.SymbolTable;
+import splat.lexer.Token;
+import splat.lexer.TokenKind;
+import splat.parser.elements.Declaration;
+import splat.parser.elements.FunctionDecl;
+import splat.parser.elements.IfElseStatement;
+import splat.parser.elements.LabelAssignmentStatement;
+import splat.parser.elements.Literal;
+import splat.parser.elements.ProgramAST;
+import splat.parser.elements.Statement;
+import splat.parser.elements.VariableDecl;
+import splat.parser.elements.WhileLoopStatement;
+
+/**
+ * Folds constants like ConstantFolding, and also replaces reads of
+ * variables that provably hold a constant at that point with the constant.
+ *
+ * Variables start out as their zero value, and a call can't change the
+ * caller's variables: a function only sees its own parameters and locals.
+ * So the only things that make a variable's value unknown are assigning
+ * it something that isn't constant, branches that assign it different
+ * values, and loops that assign it at all.  Strings start out empty
+ * rather than as a literal, so they're only known once assigned.
+ */
+public class ConstantPropagation extends ConstantFolding {
+
+    @Override
+    public String getName() {
+        return "constant-prop";
+    }
+
+    @Override
+    protected SymbolMap<Literal> functionConstants(FunctionDecl funcDecl) {
+        return zeroValues(funcDecl.getLocalVarDecls());
+    }
+
+    @Override
+    protected SymbolMap<Literal> programConstants(ProgramAST progAST) {
+        List<VariableDecl> globals = new ArrayList<>();
+        for (Declaration decl : progAST.getDecls()) {
+            if (decl instanceof VariableDecl) {
+                globals.add((VariableDecl) decl);
+            }
+        }
+        return zeroValues(globals);
+    }
+
+    private static SymbolMap<Literal> zeroValues(List<VariableDecl> varDecls) {
+        SymbolMap<Literal> constants = new SymbolMap<>(varDecls.size());
+        for (VariableDecl varDecl : varDecls) {
+            Literal zero = null;
+            switch (varDecl.getType()) {
+                case INTEGER:
+                    zero = new Literal(token(TokenKind.INT_LITERAL, "0", varDecl), new IntegerValue(0));
+                    break;
+                case BOOLEAN:
+                    zero = new Literal(token(TokenKind.BOOL_LITERAL, "false", varDecl), new BoolValue(false));
+                    break;
+                default:
+                    break;
+            }
+            constants.put(varDecl.getSymbol(), zero);
+        }
+        return constants;
+    }
+
+    private static Token token(TokenKind kind, String text, VariableDecl varDecl) {
+        return new Token(kind, text, SymbolTable.NO_SYMBOL, varDecl.getOffset(), -1, -1);
+    }
+
+    @Override
+    protected void stmt(Statement stmt, SymbolMap<Literal> constants, PassStats stats) {
+
+        if (stmt instanceof WhileLoopStatement) {
+            WhileLoopStatement loop = (WhileLoopStatement) stmt;
+
+            // Whatever the loop assigns is unknown from the first check of
+            // the condition on, and after the loop
+            forgetAssigned(loop.getStmts(), constants);
+            loop.setExpr(fold(loop.getExpr(), constants, stats));
+            stmtList(loop.getStmts(), new SymbolMap<>(constants), stats);
+
+        } else if (stmt instanceof IfElseStatement) {
+            IfElseStatement ifElse = (IfElseStatement) stmt;
+            ifElse.setBinExpr(fold(ifElse.getBinExpr(), constants, stats));
+
+            SymbolMap<Literal> thenConstants = new SymbolMap<>(constants);
+            SymbolMap<Literal> elseConstants = new SymbolMap<>(constants);
+            stmtList(ifElse.getStmts(), thenConstants, stats);
+            stmtList(ifElse.getElseStmts(), elseConstants, stats);
+            meet(thenConstants, elseConstants, constants);
+            meet(elseConstants, thenConstants, constants);
+
+        } else {
+            super.stmt(stmt, constants, stats);
+        }
+    }
+
+    /*
+     * Sets what each variable of from holds after the branches join: its
+     * constant if the other branch leaves the same one, unknown if not
+     */
+    private static void meet(SymbolMap<Literal> from, SymbolMap<Literal> other, SymbolMap<Literal> into) {
+        for (int i = 0; i < from.size(); i++) {
+            int symbol = from.keyAt(i);
+            Literal literal = from.valueAt(i);
+            Literal otherLiteral = other.get(symbol);
+            boolean same = literal != null && otherLiteral != null
+                    && literal.getType() == otherLiteral.getType()
+                    && literal.getValue().equals(otherLiteral.getValue());
+            into.put(symbol, same ? literal : null);
+        }
+    }
+
+    private static void forgetAssigned(List<Statement> stmts, SymbolMap<Literal> constants) {
+        if (stmts == null) {
+            return;
+        }
+        for (Statement stmt : stmts) {
+            if (stmt instanceof LabelAssignmentStatement) {
+                constants.put(((LabelAssignmentStatement) stmt).getSymbol(), null);
+
+            } else if (stmt instanceof WhileLoopStatement) {
+                forgetAssigned(((WhileLoopStatement) stmt).getStmts(), constants);
+
+            } else if (stmt instanceof IfElseStatement) {
+                IfElseStatement ifElse = (IfElseStatement) stmt;
+                forgetAssigned(ifElse.getStmts(), constants);
+                forgetAssigned(ifElse.getElseStmts(), constants);
+            }
+        }
+    }
+}
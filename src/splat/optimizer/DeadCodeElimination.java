@@ -0,0 +1,94 @@
+package splat.optimizer;
+
+import java.util.List;
+
+import splat.parser.elements.Declaration;
+import splat.parser.elements.FunctionDecl;
+import splat.parser.elements.IfElseStatement;
+import splat.parser.elements.ProgramAST;
+import splat.parser.elements.ReturnStatement;
+import splat.parser.elements.Statement;
+import splat.parser.elements.WhileLoopStatement;
+
+/**
+ * Removes statements that can never run: whatever follows a statement that
+ * always returns, loops whose condition is the literal false, and the
+ * branch an if-else with a literal condition doesn't take.  The branch it
+ * does take replaces the if-else.
+ */
+public class DeadCodeElimination extends Pass {
+
+    @Override
+    public String getName() {
+        return "dead-code";
+    }
+
+    @Override
+    public void run(ProgramAST progAST, PassStats stats) {
+        for (Declaration decl : progAST.getDecls()) {
+            if (decl instanceof FunctionDecl) {
+                stmtList(((FunctionDecl) decl).getStmts(), stats);
+            }
+        }
+        stmtList(progAST.getStmts(), stats);
+    }
+
+    /*
+     * Cleans up the statements in place, and returns whether running them
+     * always ends in a return
+     */
+    private boolean stmtList(List<Statement> stmts, PassStats stats) {
+        if (stmts == null) {
+            return false;
+        }
+
+        for (int i = 0; i < stmts.size(); i++) {
+            Statement stmt = stmts.get(i);
+            boolean returns = false;
+
+            if (stmt instanceof IfElseStatement) {
+                IfElseStatement ifElse = (IfElseStatement) stmt;
+                Boolean cond = booleanLiteral(ifElse.getBinExpr());
+                if (cond != null) {
+                    List<Statement> taken = cond ? ifElse.getStmts() : ifElse.getElseStmts();
+                    List<Statement> skipped = cond ? ifElse.getElseStmts() : ifElse.getStmts();
+                    stats.removed(1 + countNodes(ifElse.getBinExpr()) + countNodes(skipped));
+                    stats.rewritten(1);
+
+                    // The statements spliced in get looked at on the next
+                    // turn of the loop
+                    stmts.remove(i);
+                    if (taken != null) {
+                        stmts.addAll(i, taken);
+                    }
+                    i--;
+                    continue;
+                }
+                boolean thenReturns = stmtList(ifElse.getStmts(), stats);
+                boolean elseReturns = stmtList(ifElse.getElseStmts(), stats);
+                returns = thenReturns && elseReturns;
+
+            } else if (stmt instanceof WhileLoopStatement) {
+                WhileLoopStatement loop = (WhileLoopStatement) stmt;
+                if (Boolean.FALSE.equals(booleanLiteral(loop.getExpr()))) {
+                    stats.removed(countNodes(loop));
+                    stmts.remove(i);
+                    i--;
+                    continue;
+                }
+                stmtList(loop.getStmts(), stats);
+
+            } else if (stmt instanceof ReturnStatement) {
+                returns = true;
+            }
+
+            if (returns) {
+                List<Statement> unreachable = stmts.subList(i + 1, stmts.size());
+                stats.removed(countNodes(unreachable));
+                unreachable.clear();
+                return true;
+            }
+        }
+        return false;
+    }
+}
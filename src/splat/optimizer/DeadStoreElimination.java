@@ -0,0 +1,263 @@
+package splat.optimizer;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import splat.lang.SymbolMap;
+import splat.parser.elements.BinaryOpExpression;
+import splat.parser.elements.Declaration;
+import splat.parser.elements.Expression;
+import splat.parser.elements.FunctionDecl;
+import splat.parser.elements.IfElseStatement;
+import splat.parser.elements.LabelArgsExpression;
+import splat.parser.elements.LabelArgsStatement;
+import splat.parser.elements.LabelAssignmentStatement;
+import splat.parser.elements.LabelExpression;
+import splat.parser.elements.Literal;
+import splat.parser.elements.PrintStatement;
+import splat.parser.elements.ProgramAST;
+import splat.parser.elements.ReturnStatement;
+import splat.parser.elements.Statement;
+import splat.parser.elements.UnaryOpExpression;
+import splat.parser.elements.VariableDecl;
+import splat.parser.elements.WhileLoopStatement;
+
+/**
+ * Removes assignments to variables that are never read, and then the
+ * declarations of variables that are no longer used at all.  Only
+ * assignments whose value can't fail to evaluate go: no calls, and no
+ * division or modulo by anything but a non-zero literal, so an execution
+ * error still happens where it did.
+ *
+ * Function parameters are left alone, since calls still pass them.
+ */
+public class DeadStoreElimination extends Pass {
+
+    @Override
+    public String getName() {
+        return "dead-store";
+    }
+
+    @Override
+    public void run(ProgramAST progAST, PassStats stats) {
+        List<VariableDecl> globals = new ArrayList<>();
+        for (Declaration decl : progAST.getDecls()) {
+            if (decl instanceof FunctionDecl) {
+                FunctionDecl funcDecl = (FunctionDecl) decl;
+                removeDeadStores(funcDecl.getLocalVarDecls(), funcDecl.getStmts(), null, stats);
+            } else if (decl instanceof VariableDecl) {
+                globals.add((VariableDecl) decl);
+            }
+        }
+
+        // Function bodies can't see the program variables, but reads in
+        // them still count, to be on the safe side
+        List<Statement> funcStmts = new ArrayList<>();
+        for (Declaration decl : progAST.getDecls()) {
+            if (decl instanceof FunctionDecl) {
+                funcStmts.addAll(((FunctionDecl) decl).getStmts());
+            }
+        }
+        SymbolMap<Boolean> used = removeDeadStores(globals, progAST.getStmts(), funcStmts, stats);
+
+        for (Iterator<Declaration> it = progAST.getDecls().iterator(); it.hasNext(); ) {
+            Declaration decl = it.next();
+            if (decl instanceof VariableDecl && !used.containsKey(decl.getSymbol())) {
+                it.remove();
+                stats.removed(1);
+            }
+        }
+    }
+
+    /*
+     * Removes the dead stores to the variables from stmts, and then the
+     * local declarations nothing uses any more.  Returns the symbols still
+     * read or written.
+     */
+    private SymbolMap<Boolean> removeDeadStores(List<VariableDecl> varDecls, List<Statement> stmts,
+            List<Statement> otherStmts, PassStats stats) {
+
+        SymbolMap<Boolean> vars = new SymbolMap<>(varDecls.size());
+        for (VariableDecl varDecl : varDecls) {
+            vars.put(varDecl.getSymbol(), Boolean.TRUE);
+        }
+
+        // A variable is needed if something other than a store that can go
+        // reads it, or a store to a needed variable does
+        List<LabelAssignmentStatement> stores = new ArrayList<>();
+        SymbolMap<Boolean> needed = new SymbolMap<>();
+        readsInStmts(stmts, needed, stores);
+        if (otherStmts != null) {
+            readsInStmts(otherStmts, needed, null);
+        }
+
+        List<LabelAssignmentStatement> removable = new ArrayList<>();
+        for (LabelAssignmentStatement store : stores) {
+            if (vars.containsKey(store.getSymbol()) && cannotFail(store.getExpr())) {
+                removable.add(store);
+            } else {
+                reads(store.getExpr(), needed);
+            }
+        }
+
+        boolean changed;
+        do {
+            changed = false;
+            for (Iterator<LabelAssignmentStatement> it = removable.iterator(); it.hasNext(); ) {
+                LabelAssignmentStatement store = it.next();
+                if (needed.containsKey(store.getSymbol())) {
+                    int numNeeded = needed.size();
+                    reads(store.getExpr(), needed);
+                    changed |= needed.size() != numNeeded;
+                    it.remove();
+                }
+            }
+        } while (changed);
+
+        SymbolMap<Boolean> dead = new SymbolMap<>(removable.size());
+        for (LabelAssignmentStatement store : removable) {
+            dead.put(store.getSymbol(), Boolean.TRUE);
+        }
+        SymbolMap<Boolean> used = new SymbolMap<>(needed);
+        removeStores(stmts, dead, used, stats);
+
+        if (otherStmts == null) {
+            for (Iterator<VariableDecl> it = varDecls.iterator(); it.hasNext(); ) {
+                if (!used.containsKey(it.next().getSymbol())) {
+                    it.remove();
+                    stats.removed(1);
+                }
+            }
+        }
+        return used;
+    }
+
+    /*
+     * Removes the stores to dead variables that can't fail from stmts and
+     * anything nested in them, adding the variables of the stores that stay
+     * to used
+     */
+    private void removeStores(List<Statement> stmts, SymbolMap<Boolean> dead, SymbolMap<Boolean> used,
+            PassStats stats) {
+        if (stmts == null) {
+            return;
+        }
+
+        for (Iterator<Statement> it = stmts.iterator(); it.hasNext(); ) {
+            Statement stmt = it.next();
+
+            if (stmt instanceof LabelAssignmentStatement) {
+                LabelAssignmentStatement assign = (LabelAssignmentStatement) stmt;
+                if (dead.containsKey(assign.getSymbol()) && cannotFail(assign.getExpr())) {
+                    it.remove();
+                    stats.removed(countNodes(assign));
+                } else {
+                    used.put(assign.getSymbol(), Boolean.TRUE);
+                }
+
+            } else if (stmt instanceof WhileLoopStatement) {
+                removeStores(((WhileLoopStatement) stmt).getStmts(), dead, used, stats);
+
+            } else if (stmt instanceof IfElseStatement) {
+                IfElseStatement ifElse = (IfElseStatement) stmt;
+                removeStores(ifElse.getStmts(), dead, used, stats);
+                removeStores(ifElse.getElseStmts(), dead, used, stats);
+            }
+        }
+    }
+
+    /*
+     * Adds what stmts read to read, except for the values of stores, which
+     * are added to stores instead if given, or read as well if not
+     */
+    private static void readsInStmts(List<Statement> stmts, SymbolMap<Boolean> read,
+            List<LabelAssignmentStatement> stores) {
+        if (stmts == null) {
+            return;
+        }
+        for (Statement stmt : stmts) {
+
+            if (stmt instanceof LabelAssignmentStatement) {
+                LabelAssignmentStatement assign = (LabelAssignmentStatement) stmt;
+                if (stores != null) {
+                    stores.add(assign);
+                } else {
+                    reads(assign.getExpr(), read);
+                }
+
+            } else if (stmt instanceof WhileLoopStatement) {
+                WhileLoopStatement loop = (WhileLoopStatement) stmt;
+                reads(loop.getExpr(), read);
+                readsInStmts(loop.getStmts(), read, stores);
+
+            } else if (stmt instanceof IfElseStatement) {
+                IfElseStatement ifElse = (IfElseStatement) stmt;
+                reads(ifElse.getBinExpr(), read);
+                readsInStmts(ifElse.getStmts(), read, stores);
+                readsInStmts(ifElse.getElseStmts(), read, stores);
+
+            } else if (stmt instanceof PrintStatement) {
+                reads(((PrintStatement) stmt).getExpr(), read);
+
+            } else if (stmt instanceof ReturnStatement) {
+                Expression expr = ((ReturnStatement) stmt).getExpr();
+                if (expr != null) {
+                    reads(expr, read);
+                }
+
+            } else if (stmt instanceof LabelArgsStatement) {
+                for (Expression arg : ((LabelArgsStatement) stmt).getArgs()) {
+                    reads(arg, read);
+                }
+            }
+        }
+    }
+
+    private static void reads(Expression expr, SymbolMap<Boolean> read) {
+
+        if (expr instanceof LabelExpression) {
+            read.put(((LabelExpression) expr).getSymbol(), Boolean.TRUE);
+
+        } else if (expr instanceof UnaryOpExpression) {
+            reads(((UnaryOpExpression) expr).getRightExpr(), read);
+
+        } else if (expr instanceof BinaryOpExpression) {
+            BinaryOpExpression binary = (BinaryOpExpression) expr;
+            reads(binary.getLeftExpr(), read);
+            reads(binary.getRightExpr(), read);
+
+        } else if (expr instanceof LabelArgsExpression) {
+            for (Expression arg : ((LabelArgsExpression) expr).getArgs()) {
+                reads(arg, read);
+            }
+        }
+    }
+
+    /*
+     * Whether evaluating expr can neither fail nor have an effect
+     */
+    static boolean cannotFail(Expression expr) {
+
+        if (expr instanceof Literal || expr instanceof LabelExpression) {
+            return true;
+
+        } else if (expr instanceof UnaryOpExpression) {
+            return cannotFail(((UnaryOpExpression) expr).getRightExpr());
+
+        } else if (expr instanceof BinaryOpExpression) {
+            BinaryOpExpression binary = (BinaryOpExpression) expr;
+            String op = binary.getOperator();
+            if (op.equals("/") || op.equals("%")) {
+                Expression divisor = binary.getRightExpr();
+                if (!(divisor instanceof Literal) || Integer.parseInt(((Literal) divisor).getValue()) == 0) {
+                    return false;
+                }
+            }
+            return cannotFail(binary.getLeftExpr()) && cannotFail(binary.getRightExpr());
+        }
+
+        // Calls can print, recurse forever or fail
+        return false;
+    }
+}
@@ -0,0 +1,111 @@
+package splat.optimizer;
+
+import java.util.List;
+
+import splat.parser.elements.BinaryOpExpression;
+import splat.parser.elements.Expression;
+import splat.parser.elements.IfElseStatement;
+import splat.parser.elements.LabelArgsExpression;
+import splat.parser.elements.LabelArgsStatement;
+import splat.parser.elements.LabelAssignmentStatement;
+import splat.parser.elements.Literal;
+import splat.parser.elements.PrintStatement;
+import splat.parser.elements.ProgramAST;
+import splat.parser.elements.ReturnStatement;
+import splat.parser.elements.Statement;
+import splat.parser.elements.Type;
+import splat.parser.elements.UnaryOpExpression;
+import splat.parser.elements.WhileLoopStatement;
+
+/**
+ * A rewrite of an analyzed program that doesn't change what it prints or
+ * which execution error it stops with.  Passes run in place, one after the
+ * other, under a PassManager.
+ */
+public abstract class Pass {
+
+    /**
+     * A short name for statistics and error messages.
+     */
+    public abstract String getName();
+
+    /**
+     * Rewrites the program, counting the nodes it removes and rewrites in
+     * stats.
+     */
+    public abstract void run(ProgramAST progAST, PassStats stats);
+
+    /**
+     * Returns the value of a Boolean literal, or null if expr is anything
+     * else.
+     */
+    protected static Boolean booleanLiteral(Expression expr) {
+        if (expr instanceof Literal && ((Literal) expr).getType() == Type.BOOLEAN) {
+            return Boolean.valueOf(((Literal) expr).getValue());
+        }
+        return null;
+    }
+
+    /**
+     * Counts the nodes of the statements, with everything under them.
+     */
+    protected static int countNodes(List<Statement> stmts) {
+        int count = 0;
+        if (stmts != null) {
+            for (Statement stmt : stmts) {
+                count += countNodes(stmt);
+            }
+        }
+        return count;
+    }
+
+    protected static int countNodes(Statement stmt) {
+
+        if (stmt instanceof LabelAssignmentStatement) {
+            return 1 + countNodes(((LabelAssignmentStatement) stmt).getExpr());
+
+        } else if (stmt instanceof WhileLoopStatement) {
+            WhileLoopStatement loop = (WhileLoopStatement) stmt;
+            return 1 + countNodes(loop.getExpr()) + countNodes(loop.getStmts());
+
+        } else if (stmt instanceof IfElseStatement) {
+            IfElseStatement ifElse = (IfElseStatement) stmt;
+            return 1 + countNodes(ifElse.getBinExpr()) + countNodes(ifElse.getStmts())
+                    + countNodes(ifElse.getElseStmts());
+
+        } else if (stmt instanceof PrintStatement) {
+            return 1 + countNodes(((PrintStatement) stmt).getExpr());
+
+        } else if (stmt instanceof ReturnStatement) {
+            Expression expr = ((ReturnStatement) stmt).getExpr();
+            return 1 + (expr != null ? countNodes(expr) : 0);
+
+        } else if (stmt instanceof LabelArgsStatement) {
+            return 1 + countArgs(((LabelArgsStatement) stmt).getArgs());
+        }
+        return 1;
+    }
+
+    protected static int countNodes(Expression expr) {
+
+        if (expr instanceof UnaryOpExpression) {
+            return 1 + countNodes(((UnaryOpExpression) expr).getRightExpr());
+
+        } else if (expr instanceof BinaryOpExpression) {
+            BinaryOpExpression binary = (BinaryOpExpression) expr;
+            return 1 + countNodes(binary.getLeftExpr()) + countNodes(binary.getRightExpr());
+
+        } else if (expr instanceof LabelArgsExpression) {
+            return 1 + countArgs(((LabelArgsExpression) expr).getArgs());
+        }
+        return 1;
+    }
+
+    private static int countArgs(List<Expression> args) {
+        int count = 0;
+        for (Expression arg : args) {
+            count += countNodes(arg);
+        }
+        return count;
+    }
+}
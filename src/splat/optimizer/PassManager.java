@@ -0,0 +1,117 @@
+package splat.optimizer;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import splat.parser.elements.ProgramAST;
+import splat.semanticanalyzer.SemanticAnalysisException;
+import splat.semanticanalyzer.SemanticAnalyzer;
+
+/**
+ * Runs an ordered list of passes over an analyzed program, timing each one.
+ *
+ * With verification on, the program is analyzed again after every pass, so
+ * a pass that leaves a tree semantic analysis would reject is caught right
+ * where it went wrong rather than as a strange execution error.  It costs
+ * a full analysis per pass, so it's meant for working on the passes.
+ */
+public class PassManager {
+
+    /** The highest optimization level forLevel accepts. */
+    public static final int MAX_LEVEL = 2;
+
+    private final List<Pass> passes = new ArrayList<>();
+    private final List<PassStats> stats = new ArrayList<>();
+    private boolean verifying = false;
+
+    /**
+     * Returns a manager with the passes of an optimization level: none at
+     * level 0, constant folding and dead code elimination at level 1, and
+     * at level 2 constant propagation instead of just folding, plus dead
+     * store elimination.
+     */
+    public static PassManager forLevel(int level) {
+        if (level < 0 || level > MAX_LEVEL) {
+            throw new IllegalArgumentException("No optimization level " + level);
+        }
+
+        PassManager manager = new PassManager();
+        if (level == 1) {
+            manager.add(new ConstantFolding());
+            manager.add(new DeadCodeElimination());
+        }
+        if (level >= 2) {
+            // Conditions that become literals leave dead code, and reads
+            // that become literals leave dead stores
+            manager.add(new ConstantPropagation());
+            manager.add(new DeadCodeElimination());
+            manager.add(new DeadStoreElimination());
+        }
+        return manager;
+    }
+
+    public PassManager add(Pass pass) {
+        passes.add(pass);
+        return this;
+    }
+
+    public void setVerifying(boolean verifying) {
+        this.verifying = verifying;
+    }
+
+    /**
+     * Runs the passes in order, adding the statistics of each run to the
+     * ones getStats returns.
+     *
+     * @throws IllegalStateException if verifying, when a pass leaves a
+     *         program that doesn't pass semantic analysis
+     */
+    public void run(ProgramAST progAST) {
+        for (Pass pass : passes) {
+            PassStats passStats = new PassStats(pass.getName());
+            long start = System.nanoTime();
+            pass.run(progAST, passStats);
+            passStats.setNanos(System.nanoTime() - start);
+            stats.add(passStats);
+
+            if (verifying) {
+                verify(progAST, pass);
+            }
+        }
+    }
+
+    private static void verify(ProgramAST progAST, Pass pass) {
+        try {
+            new SemanticAnalyzer(progAST).analyze();
+        } catch (SemanticAnalysisException ex) {
+            throw new IllegalStateException("Pass " + pass.getName()
+                    + " left a program that fails semantic analysis: " + ex.getMessage(), ex);
+        }
+    }
+
+    public List<PassStats> getStats() {
+        return Collections.unmodifiableList(stats);
+    }
+
+    /**
+     * Prints a line per pass run, and the totals.
+     */
+    public void printStats(PrintStream out) {
+        long nanos = 0;
+        int removed = 0;
+        int rewritten = 0;
+        for (PassStats passStats : stats) {
+            out.println(passStats);
+            nanos += passStats.getNanos();
+            removed += passStats.getNodesRemoved();
+            rewritten += passStats.getNodesRewritten();
+        }
+        PassStats total = new PassStats("total");
+        total.setNanos(nanos);
+        total.removed(removed);
+        total.rewritten(rewritten);
+        out.println(total);
+    }
+}
@@ -0,0 +1,52 @@
+package splat.optimizer;
+
+/**
+ * What one run of a pass took and changed.  A removed node is one that is
+ * gone from the tree along with everything under it; a rewritten node is
+ * one that was replaced by something simpler.
+ */
+public class PassStats {
+
+    private final String passName;
+    private long nanos;
+    private int nodesRemoved;
+    private int nodesRewritten;
+
+    public PassStats(String passName) {
+        this.passName = passName;
+    }
+
+    public void removed(int nodes) {
+        this.nodesRemoved += nodes;
+    }
+
+    public void rewritten(int nodes) {
+        this.nodesRewritten += nodes;
+    }
+
+    void setNanos(long nanos) {
+        this.nanos = nanos;
+    }
+
+    public String getPassName() {
+        return passName;
+    }
+
+    public long getNanos() {
+        return nanos;
+    }
+
+    public int getNodesRemoved() {
+        return nodesRemoved;
+    }
+
+    public int getNodesRewritten() {
+        return nodesRewritten;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%-20s %9.3f ms %8d removed %8d rewritten",
+                passName, nanos / 1e6, nodesRemoved, nodesRewritten);
+    }
+}
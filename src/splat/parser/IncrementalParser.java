@@ -0,0 +1,197 @@
+package splat.parser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import splat.lexer.IncrementalLexer;
+import splat.lexer.LexException;
+import splat.lexer.Lexer;
+import splat.lexer.SourceBuffer;
+import splat.lexer.Token;
+import splat.lexer.TokenBuffer;
+import splat.lexer.TokenBufferStream;
+import splat.lexer.TokenEdit;
+import splat.parser.elements.Declaration;
+import splat.parser.elements.ProgramAST;
+import splat.parser.elements.Statement;
+
+/**
+ * Parses successive versions of the same program, keeping the tokens and the
+ * AST of the last version that parsed.  After an edit only the damaged lines
+ * are re-lexed (see IncrementalLexer), and only the top-level declarations
+ * those tokens fall in, or the program body, are parsed again.  Parsing
+ * resumes from the edit until it lands on the start of an old declaration
+ * past the edit; that declaration and everything after it are reused, with
+ * their source offsets moved if the edit added or removed bytes.
+ *
+ * The result, or the exception, is always the same as a full parse of the
+ * new source.  A version that fails to lex or parse leaves the kept state
+ * alone, so the next version is compared against the last good one.
+ */
+public class IncrementalParser {
+
+	private TokenBuffer tokens;
+	private ProgramAST progAST;
+	private Token startTok;
+
+	// Token indices of each declaration's first token, of the 'begin' of
+	// the program body, and just past the ';' that ends the program
+	private int[] declStarts;
+	private int bodyStart;
+	private int bodyEnd;
+
+	private int reusedDecls;
+
+	public ProgramAST parse(SourceBuffer source) throws LexException, ParseException {
+
+		if (progAST == null) {
+			return parseAll(new Lexer(source).tokenizeToBuffer());
+		}
+
+		TokenEdit edit = IncrementalLexer.relex(tokens.getSource(), tokens, source);
+		if (edit.getFrom() == 0) {
+			return parseAll(edit.getTokens());
+		}
+		return reparse(edit);
+	}
+
+	/**
+	 * Returns how many declarations the last call to parse() kept from the
+	 * previous version.
+	 */
+	public int getReusedDecls() {
+		return reusedDecls;
+	}
+
+	private ProgramAST parseAll(TokenBuffer newTokens) throws ParseException {
+
+		TokenBufferStream stream = newTokens.stream(0);
+		Parser parser = new Parser(stream);
+
+		Token newStartTok = parser.parseProgramHeader();
+
+		List<Declaration> decls = new ArrayList<>();
+		int[] starts = new int[16];
+		while (!parser.atProgramBody()) {
+			if (decls.size() == starts.length) {
+				starts = Arrays.copyOf(starts, starts.length * 2);
+			}
+			starts[decls.size()] = stream.position();
+			decls.add(parser.parseDecl());
+		}
+
+		int newBodyStart = stream.position();
+		List<Statement> stmts = parser.parseProgramBody();
+
+		startTok = newStartTok;
+		declStarts = Arrays.copyOf(starts, decls.size());
+		bodyStart = newBodyStart;
+		bodyEnd = stream.position();
+		reusedDecls = 0;
+
+		return commit(newTokens, decls, stmts);
+	}
+
+	private ProgramAST reparse(TokenEdit edit) throws ParseException {
+
+		int from = edit.getFrom();
+		int tokenShift = edit.getTokenShift();
+		int offsetShift = edit.getOffsetShift();
+		List<Declaration> oldDecls = progAST.getDecls();
+		int numDecls = oldDecls.size();
+
+		// Everything ends before the edit, which only touched trailing tokens
+		if (bodyEnd <= from) {
+			reusedDecls = numDecls;
+			return commit(edit.getTokens(), oldDecls, progAST.getStmts());
+		}
+
+		// Keep the declarations that end before the edit
+		List<Declaration> decls = new ArrayList<>(numDecls);
+		int[] starts = new int[numDecls + 16];
+		int kept = 0;
+		while (kept < numDecls && declEnd(kept) <= from) {
+			decls.add(oldDecls.get(kept));
+			starts[kept] = declStarts[kept];
+			kept++;
+		}
+
+		// Parse from there until the parser is back in step with an old
+		// declaration, or reaches the program body
+		TokenBufferStream stream = edit.getTokens().stream(kept < numDecls ? declStarts[kept] : bodyStart);
+		Parser parser = new Parser(stream);
+		int resume = -1;
+
+		while (true) {
+			int pos = stream.position();
+			if (pos >= edit.getNewEnd()) {
+				int old = pos - tokenShift;
+				int j = Arrays.binarySearch(declStarts, kept, numDecls, old);
+				if (j >= 0 || old == bodyStart) {
+					resume = j >= 0 ? j : numDecls;
+					break;
+				}
+			}
+			if (parser.atProgramBody()) {
+				break;
+			}
+
+			if (decls.size() == starts.length) {
+				starts = Arrays.copyOf(starts, starts.length * 2);
+			}
+			starts[decls.size()] = pos;
+			decls.add(parser.parseDecl());
+		}
+
+		List<Statement> stmts;
+		int newBodyStart;
+		int newBodyEnd;
+		if (resume >= 0) {
+			for (int j = resume; j < numDecls; j++) {
+				if (decls.size() == starts.length) {
+					starts = Arrays.copyOf(starts, starts.length * 2);
+				}
+				starts[decls.size()] = declStarts[j] + tokenShift;
+				decls.add(oldDecls.get(j));
+			}
+			stmts = progAST.getStmts();
+			newBodyStart = bodyStart + tokenShift;
+			newBodyEnd = bodyEnd + tokenShift;
+		} else {
+			newBodyStart = stream.position();
+			stmts = parser.parseProgramBody();
+			newBodyEnd = stream.position();
+		}
+
+		// Everything parsed, so the kept nodes past the edit can be moved
+		if (resume >= 0 && offsetShift != 0) {
+			for (int j = resume; j < numDecls; j++) {
+				oldDecls.get(j).shiftOffsets(offsetShift);
+			}
+			for (Statement stmt : stmts) {
+				stmt.shiftOffsets(offsetShift);
+			}
+		}
+
+		declStarts = Arrays.copyOf(starts, decls.size());
+		bodyStart = newBodyStart;
+		bodyEnd = newBodyEnd;
+		reusedDecls = kept + (resume >= 0 ? numDecls - resume : 0);
+
+		return commit(edit.getTokens(), decls, stmts);
+	}
+
+	/*
+	 * Returns the token index just past old declaration i.
+	 */
+	private int declEnd(int i) {
+		return i + 1 < declStarts.length ? declStarts[i + 1] : bodyStart;
+	}
+
+	private ProgramAST commit(TokenBuffer newTokens, List<Declaration> decls, List<Statement> stmts) {
+		tokens = newTokens;
+		progAST = new ProgramAST(decls, stmts, startTok);
+		return progAST;
+	}
+}
@@ -0,0 +1,250 @@
+package splat.parser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import splat.lexer.LexException;
+import splat.lexer.Token;
+import splat.lexer.TokenBuffer;
+import splat.lexer.TokenBufferStream;
+import splat.lexer.TokenKind;
+import splat.parser.elements.Declaration;
+import splat.parser.elements.ProgramAST;
+import splat.parser.elements.Statement;
+
+/**
+ * Parses the top-level declarations of a fully lexed program on several
+ * cores.  A quick scan over the tokens guesses where each declaration ends:
+ * a variable declaration at its first ';', a function at its first 'end ;'
+ * (nested blocks close with 'end while ;' or 'end if ;').  Runs of
+ * declarations are then parsed as separate ForkJoin tasks.
+ *
+ * A guessed declaration is only used once the declarations before it have
+ * been taken and end right where it starts.  Wherever a guess was wrong,
+ * parsing goes on sequentially until it is back on a guessed start, so the
+ * ProgramAST, or the ParseException, is always the same as a plain Parser
+ * would produce.
+ */
+public class ParallelParser {
+
+	/** Programs with fewer tokens than this aren't worth splitting. */
+	public static final int MIN_TOKENS = 1 << 14;
+
+	private static final int MIN_BATCH_TOKENS = 1 << 11;
+
+	private final TokenBuffer tokens;
+	private final ForkJoinPool pool;
+	private final int minTokens;
+
+	public ParallelParser(TokenBuffer tokens) {
+		this(tokens, ForkJoinPool.commonPool());
+	}
+
+	public ParallelParser(TokenBuffer tokens, ForkJoinPool pool) {
+		this(tokens, pool, MIN_TOKENS);
+	}
+
+	ParallelParser(TokenBuffer tokens, ForkJoinPool pool, int minTokens) {
+		this.tokens = tokens;
+		this.pool = pool;
+		this.minTokens = minTokens;
+	}
+
+	public ProgramAST parse() throws ParseException {
+
+		if (tokens.size() < minTokens || pool.getParallelism() <= 1) {
+			return parseSequentially();
+		}
+
+		TokenBufferStream stream = tokens.stream(0);
+		Parser parser = new Parser(stream);
+		Token startTok = parser.parseProgramHeader();
+
+		int[] starts = scanDecls(stream.position());
+		int numDecls = starts.length - 1;
+
+		Declaration[] parsed = new Declaration[numDecls];
+		pool.invoke(new ParseDecls(parsed, starts, batches(starts)));
+
+		// Walk the declarations in order.  A parsed guess is used whenever
+		// the walk lands on its start, and anything else is parsed here,
+		// one declaration at a time, exactly as Parser would
+		List<Declaration> decls = new ArrayList<>(numDecls);
+		int pos = stream.position();
+		int d = 0;
+		while (true) {
+			while (d < numDecls && starts[d] < pos) {
+				d++;
+			}
+			if (d < numDecls && starts[d] == pos && parsed[d] != null) {
+				decls.add(parsed[d]);
+				pos = starts[++d];
+				continue;
+			}
+
+			if (stream.position() != pos) {
+				stream = tokens.stream(pos);
+				parser = new Parser(stream);
+			}
+			if (parser.atProgramBody()) {
+				break;
+			}
+			decls.add(parser.parseDecl());
+			pos = stream.position();
+		}
+		List<Statement> stmts = parser.parseProgramBody();
+
+		return new ProgramAST(decls, stmts, startTok);
+	}
+
+	private ProgramAST parseSequentially() throws ParseException {
+		try {
+			return new Parser(tokens.stream(0)).parse();
+		} catch (LexException ex) {
+			// The tokens are already lexed, so this can't happen
+			throw new IllegalStateException(ex);
+		}
+	}
+
+	/*
+	 * Returns the guessed start of every top-level declaration from index
+	 * from on, followed by the index where the scan stopped: normally the
+	 * 'begin' of the program body, or the first thing that doesn't look like
+	 * a declaration.
+	 */
+	private int[] scanDecls(int from) {
+		int[] starts = new int[64];
+		int count = 0;
+		int i = from;
+		int size = tokens.size();
+
+		while (i + 1 < size && tokens.kind(i) == TokenKind.IDENTIFIER) {
+			int end;
+			if (tokens.textEquals(i + 1, ":")) {
+				end = find(i + 2, ";", null);
+			} else if (tokens.textEquals(i + 1, "(")) {
+				end = find(i + 2, "end", ";");
+			} else {
+				break;
+			}
+			if (end < 0) {
+				break;
+			}
+
+			if (count + 1 >= starts.length) {
+				starts = Arrays.copyOf(starts, starts.length * 2);
+			}
+			starts[count++] = i;
+			i = end;
+		}
+
+		starts[count++] = i;
+		return Arrays.copyOf(starts, count);
+	}
+
+	/*
+	 * Returns the index just past the first 'first' at or after i that is
+	 * followed by 'second' (if given), or -1 if there is none.
+	 */
+	private int find(int i, String first, String second) {
+		int size = tokens.size();
+		for (; i < size; i++) {
+			if (!tokens.textEquals(i, first)) {
+				continue;
+			}
+			if (second == null) {
+				return i + 1;
+			}
+			if (i + 1 < size && tokens.textEquals(i + 1, second)) {
+				return i + 2;
+			}
+		}
+		return -1;
+	}
+
+	/*
+	 * Groups the declarations into batches of at least MIN_BATCH_TOKENS
+	 * tokens, and a few batches per worker.  Returns the first declaration
+	 * of each batch, followed by the number of declarations.
+	 */
+	private int[] batches(int[] starts) {
+		int numDecls = starts.length - 1;
+		int total = starts[numDecls] - starts[0];
+		int batchTokens = Math.max(MIN_BATCH_TOKENS, total / (pool.getParallelism() * 4));
+
+		int[] firsts = new int[numDecls + 1];
+		int count = 0;
+		int d = 0;
+		while (d < numDecls) {
+			firsts[count++] = d;
+			int limit = starts[d] + batchTokens;
+			do {
+				d++;
+			} while (d < numDecls && starts[d] < limit);
+		}
+		firsts[count++] = numDecls;
+
+		return Arrays.copyOf(firsts, count);
+	}
+
+	/*
+	 * Parses the declarations of one batch, leaving null from the first one
+	 * that fails or doesn't end where the next guess starts.  Everything
+	 * after that in the batch is left to the sequential walk.
+	 */
+	private void parseBatch(Declaration[] parsed, int[] starts, int from, int to) {
+		TokenBufferStream stream = tokens.stream(starts[from]);
+		Parser parser = new Parser(stream);
+
+		for (int d = from; d < to; d++) {
+			Declaration decl;
+			try {
+				decl = parser.parseDecl();
+			} catch (ParseException ex) {
+				return;
+			}
+			if (stream.position() != starts[d + 1]) {
+				return;
+			}
+			parsed[d] = decl;
+		}
+	}
+
+	@SuppressWarnings("serial")
+	private class ParseDecls extends RecursiveAction {
+		private final Declaration[] parsed;
+		private final int[] starts;
+		private final int[] batches;
+		private final int from;
+		private final int to;
+
+		ParseDecls(Declaration[] parsed, int[] starts, int[] batches) {
+			this(parsed, starts, batches, 0, batches.length - 1);
+		}
+
+		private ParseDecls(Declaration[] parsed, int[] starts, int[] batches, int from, int to) {
+			this.parsed = parsed;
+			this.starts = starts;
+			this.batches = batches;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= 1) {
+				if (to > from) {
+					parseBatch(parsed, starts, batches[from], batches[to]);
+				}
+				return;
+			}
+
+			int mid = (from + to) >>> 1;
+			invokeAll(new ParseDecls(parsed, starts, batches, from, mid),
+					new ParseDecls(parsed, starts, batches, mid, to));
+		}
+	}
+}
@@ -1,651 +1,834 @@
-package splat.parser;
-
-import java.util.ArrayList;
-import java.util.List;
-
-import splat.lexer.Token;
-import splat.parser.elements.*;
-import splat.lang.Operations;
-import splat.lang.Keywords;
-
-public class Parser {
-
-	private List<Token> tokens;
-	
-	public Parser(List<Token> tokens) {
-		this.tokens = tokens;
-	}
-
-	/**
-	 * Compares the next token to an expected value, and throws
-	 * an exception if they don't match.  This removes the front-most
-	 * (next) token  
-	 * 
-	 * @param expected value of the next token
-	 * @throws ParseException if the actual token doesn't match what 
-	 * 			was expected
-	 */
-	private void checkNext(String expected) throws ParseException {
-
-		Token tok = tokens.remove(0);
-		
-		if (!tok.getValue().equals(expected)) {
-			throw new ParseException("Expected '"+ expected + "', got '" 
-					+ tok.getValue()+ "'.", tok);
-		}
-	}
-
-	/**
-	 * Compares the next token to an expected value, and if they match,
-     * then it returns true and removes the front-most (next) token.
-     * If they don't match, then it just returns false without removing
-     * anything.
-	 * 
-	 * @param expected value of the next token
-	 */
-	private boolean checkNextIfMatch(String expected) {
-
-		Token tok = tokens.get(0);
-		
-		if (tok.getValue().equals(expected)) {
-            tokens.remove(0);
-            return true;
-		}
-
-        return false;
-	}
-	
-	/**
-	 * Returns a boolean indicating whether or not the next token matches
-	 * the expected String value.  This does not remove the token from the
-	 * token list.
-	 * 
-	 * @param expected value of the next token
-	 * @return true iff the token value matches the expected string
-	 */
-	private boolean peekNext(String expected) {
-		return tokens.get(0).getValue().equals(expected);
-	}
-	
-	/**
-	 * Returns a boolean indicating whether or not the token directly after
-	 * the front most token matches the expected String value.  This does 
-	 * not remove any tokens from the token list.
-	 * 
-	 * @param expected value of the token directly after the next token
-	 * @return true iff the value matches the expected string
-	 */
-	private boolean peekTwoAhead(String expected) {
-		return tokens.get(1).getValue().equals(expected);
-	}
-	
-	
-	/*
-	 *  <program> ::= program <decls> begin <stmts> end ;
-	 */
-	public ProgramAST parse() throws ParseException {
-		
-		try {
-			// Needed for 'program' token position info
-			Token startTok = tokens.get(0);
-			
-			checkNext("program");
-			
-			List<Declaration> decls = parseDecls();
-			
-			checkNext("begin");
-			
-			List<Statement> stmts = parseStmts();
-			
-			checkNext("end");
-			checkNext(";");
-	
-			return new ProgramAST(decls, stmts, startTok);
-			
-		// This might happen if we do a tokens.get(), and nothing is there!
-		} catch (IndexOutOfBoundsException ex) {
-			
-			throw new ParseException("Unexpectedly reached the end of file.", -1, -1);
-		}
-	}
-	
-	/*
-	 *  <decls> ::= (  <decl>  )*
-	 */
-	private List<Declaration> parseDecls() throws ParseException {
-		
-		List<Declaration> decls = new ArrayList<Declaration>();
-		
-		while (!peekNext("begin")) {
-			Declaration decl = parseDecl();
-			decls.add(decl);
-		}
-		
-		return decls;
-	}
-	
-	/*
-	 * <decl> ::= <var-decl> | <func-decl>
-	 */
-	private Declaration parseDecl() throws ParseException {
-
-		if (peekTwoAhead(":")) {
-			return parseVarDecl();
-		} else if (peekTwoAhead("(")) {
-			return parseFuncDecl();
-		} else {
-			Token tok = tokens.get(0);
-			throw new ParseException("Declaration expected", tok);
-		}
-	}
-
-	/*
-	 * <var-decl> ::= <label> : <type> ;
-	 */
-	private VariableDecl parseVarDecl() throws ParseException {
-        Token varLabelTok = tokens.remove(0);
-        verifyLabel(varLabelTok);
-
-        Token delimTok = tokens.remove(0);
-        if (!delimTok.getValue().equals(":")) {
-            throw new ParseException("You probably forgot ':' after the variable label.", delimTok);
-        }
-
-        Token typeTok = tokens.remove(0);
-        Type type = Type.getVarType(typeTok);
-
-        Token endSemiCol = tokens.remove(0);
-        if (!endSemiCol.getValue().equals(";")) {
-            throw new ParseException("Expected ';' after variable declaration.", endSemiCol);
-        }
-
-        VariableDecl varDecl = new VariableDecl(varLabelTok, varLabelTok.getValue(), type);
-
-        return varDecl;
-	}
-	
-	/*
-	 * <func-decl> ::= <label> ( <params> ) : <ret-type> is 
-	 * 						<loc-var-decls> begin <stmts> end ;
-	 */
-	private FunctionDecl parseFuncDecl() throws ParseException {
-        Token funcLabelTok = tokens.remove(0);
-        verifyLabel(funcLabelTok);
-
-        Token firstParanthTok = tokens.remove(0);
-        if (!firstParanthTok.getValue().equals("(")) {
-            throw new ParseException("Expected '(' after the function label.", firstParanthTok);
-        }
-
-        List<FuncParamDecl> params = parseFuncParams();
-
-        Token secondParanthTok = tokens.remove(0);
-        if (!secondParanthTok.getValue().equals(")")) {
-            throw new ParseException("Expected ')' after the function parameters.", secondParanthTok);
-        }
-
-        Token delimTok = tokens.remove(0);
-        if (!delimTok.getValue().equals(":")) {
-            throw new ParseException(
-                    "You probably forgot ':' before the function return type.", 
-                    delimTok);
-        }
-
-        Token returnTypeTok = tokens.remove(0);
-        Type type = Type.getFuncReturnType(returnTypeTok);
-
-        Token isKeyword = tokens.remove(0);
-        if (!isKeyword.getValue().equals("is")) {
-            throw new ParseException("Expected keyword 'is' after the function return type.", isKeyword);
-        }
-
-        List<VariableDecl> localVarDecls = parseLocalVariableDecls();
-
-        checkNext("begin");
-
-        List<Statement> statements = parseStmts();
-        setFuncLabelForStmts(statements, funcLabelTok.getValue());
-
-        Token endTok = tokens.remove(0);
-        if (!endTok.getValue().equals("end")) {
-            throw new ParseException("Expected keyword 'end' after the function body.", endTok);
-        }
-
-        Token endSemiCol = tokens.remove(0);
-        if (!endSemiCol.getValue().equals(";")) {
-            throw new ParseException("Expected ';' at the end of the function declaration.", endSemiCol);
-        }
-
-        FunctionDecl funcDecl = new FunctionDecl(
-                funcLabelTok,
-                funcLabelTok.getValue(),
-                params,
-                type,
-                localVarDecls,
-                statements);
-
-		return funcDecl;
-	}
-
-    /*
-     * <param> ::= <label> : <type>
-     */
-    private FuncParamDecl parseFuncParam() throws ParseException {
-        Token paramLabelTok = tokens.remove(0);
-        verifyLabel(paramLabelTok);
-
-        Token delimTok = tokens.remove(0);
-        if (!delimTok.getValue().equals(":")) {
-            throw new ParseException(
-                    "You probably forgot ':' after the function parameter label.", 
-                    delimTok);
-        }
-
-        Token typeTok = tokens.remove(0);
-        Type type = Type.getVarType(typeTok);
-
-        FuncParamDecl paramDecl = new FuncParamDecl(paramLabelTok, paramLabelTok.getValue(), type);
-
-        return paramDecl;
-    }
-
-    /*
-     * <params> ::= <param> ( , <param> )* | ɛ
-     */
-    private List<FuncParamDecl> parseFuncParams() throws ParseException {
-        List<FuncParamDecl> params = new ArrayList<FuncParamDecl>();
-        while (!peekNext(")")) {
-            FuncParamDecl param = parseFuncParam();
-            params.add(param);
-            if (!checkNextIfMatch(",")) {
-                break;
-            }
-        }
-
-        return params;
-    }
-
-    /*
-     * <loc-var-decls> ::= ( <var-decl> )*
-     */
-    private List<VariableDecl> parseLocalVariableDecls() throws ParseException {
-        List<VariableDecl> varDecls = new ArrayList<VariableDecl>();
-        while (!peekNext("begin")) {
-            VariableDecl varDecl = parseVarDecl();
-            varDecls.add(varDecl);
-        }
-
-        return varDecls;
-    }
-	
-	/*
-	 * <stmts> ::= (  <stmt>  )*
-	 */
-	private List<Statement> parseStmts() throws ParseException {
-        List<Statement> statements = new ArrayList<Statement>();
-        while(!peekNext("end") && !peekNext("else")) {
-            Statement stmt = parseStmt();
-            statements.add(stmt);
-        }
-
-		return statements;
-	}
-
-    /*
-     * <stmt> ::= <label> := <expr> ;
-                | while <expr> do <stmts> end while ;
-                | if <expr> then <stmts> else <stmts> end if ;
-                | if <expr> then <stmts> end if ;
-                | <label> ( <args> ) ;
-                | print <expr> ;
-                | print_line ;
-                | return <expr> ;
-                | return ;
-     */
-    private Statement parseStmt() throws ParseException {
-        Token tok = tokens.get(0);
-        switch (tok.getValue()) {
-            case "while":
-                return parseWhileLoopStmt();
-            case "if":
-                return parseIfElseStmt();
-            case "print":
-                return parsePrintStmt();
-            case "print_line":
-                return parsePrintLineStmt();
-            case "return":
-                return parseReturnStmt();
-            default:
-                if (peekTwoAhead(":=")) {
-                    return parseLabelAssignmentStmt();
-                }
-                return parseLabelArgsStmt();
-        }
-    }
-
-    /*
-     * while <expr> do <stmts> end while ;
-     */
-    private WhileLoopStatement parseWhileLoopStmt() throws ParseException {
-        Token whileKeywordTok = tokens.remove(0);
-        if (!whileKeywordTok.getValue().equals("while")) {
-            throw new ParseException("No 'while' keyword before the while loop.", whileKeywordTok);
-        }
-
-        Expression expr = parseExpression();
-        Token doTok = tokens.remove(0);
-        if (!doTok.getValue().equals("do")) {
-            throw new ParseException(
-                    "Expected 'do' keyword after the binary operation expression.", 
-                    doTok);
-        }
-
-        List<Statement> stmts = parseStmts();
-
-        checkNext("end");
-        checkNext("while");
-        checkNext(";");
-
-        WhileLoopStatement wls = new WhileLoopStatement(whileKeywordTok, expr, stmts);
-
-        return wls;
-    }
-
-    /*
-     * if <expr> then <stmts> else <stmts> end if ; 
-     * | if <expr> then <stmts> end if ;
-     */
-    private IfElseStatement parseIfElseStmt() throws ParseException {
-        Token ifTok = tokens.remove(0);
-        if (!ifTok.getValue().equals("if")) {
-            throw new ParseException("Expected 'if' keyword.", ifTok);
-        }
-        
-        Expression expr = parseExpression();
-        Token thenTok = tokens.remove(0);
-        if (!thenTok.getValue().equals("then")) {
-            throw new ParseException(
-                    "Expected 'then' keyword after the binary operation expression.", 
-                    thenTok);
-        }
-
-        List<Statement> stmts = parseStmts();
-        List<Statement> elseStmts = null;
-
-        Token nextKeywordTok = tokens.remove(0);
-        String nextKeyword = nextKeywordTok.getValue();
-        if (nextKeyword.equals("else")) {
-            elseStmts = parseStmts();
-            checkNext("end");
-            checkNext("if");
-            checkNext(";");
-        } else if (nextKeyword.equals("end")) {
-            checkNext("if");
-            checkNext(";");
-        } else {
-            throw new ParseException(
-                    "Expected 'else' or 'end' after the if statement body.", nextKeywordTok);
-        }
-
-        IfElseStatement ifElseStmt = new IfElseStatement(ifTok, expr, stmts, elseStmts);
-
-        return ifElseStmt;
-    }
-
-    /*
-     * print <expr> ;
-     */
-    private Statement parsePrintStmt() throws ParseException {
-        Token printTok = tokens.remove(0);
-        if (!printTok.getValue().equals("print")) {
-            throw new ParseException("Expected 'print' keyword.", printTok);
-        }
-        Expression expr = parseExpression();
-        checkNext(";");
-
-        PrintStatement printStmt = new PrintStatement(printTok, expr);
-
-        return printStmt;
-    }
-
-    /*
-     * print_line ;
-     */
-    private Statement parsePrintLineStmt() throws ParseException {
-        Token printLineTok = tokens.remove(0);
-        if (!printLineTok.getValue().equals("print_line")) {
-            throw new ParseException("Expected 'print_line' keyword.", printLineTok);
-        }
-        checkNext(";");
-
-        Statement stmt = new PrintLineStatement(printLineTok);
-
-        return stmt;
-    }
-
-    /*
-     * return <expr> ; | return ;
-     */
-    private Statement parseReturnStmt() throws ParseException {
-        Token returnTok = tokens.remove(0);
-        if (!returnTok.getValue().equals("return")) {
-            throw new ParseException("Expected 'return' keyword.", returnTok);
-        }
-
-        Expression expr = null;
-        if (!peekNext(";")) {
-            expr = parseExpression();
-        }
-        checkNext(";");
-
-        ReturnStatement stmt = new ReturnStatement(returnTok, expr);
-        return stmt;
-    }
-
-    private LabelAssignmentStatement parseLabelAssignmentStmt() throws ParseException {
-        Token labelTok = tokens.remove(0);
-        verifyLabel(labelTok);
-        checkNext(":=");
-        Expression expr = parseExpression();
-        checkNext(";");
-
-        LabelAssignmentStatement las = new LabelAssignmentStatement(labelTok, labelTok.getValue(), expr);
-        return las;
-    }
-
-    /*
-     * <expr> ::= ( <expr> <bin-op> <expr> )
-                | ( <unary-op> <expr> )
-                | <label> ( <args> )
-                | <label>
-                | <literal>
-     */
-    private Expression parseExpression() throws ParseException {
-        if (peekNext("(")) { // operation expression
-            Token tok = tokens.get(1);
-            String tokValue = tok.getValue();
-            if (Operations.UNARY_OPERATORS.contains(tokValue)) {
-                return parseUnaryOpExpression();
-            }
-
-            return parseBinaryOpExpression();
-        } else if (peekTwoAhead("(")) {
-            return parseLabelArgsExpr();
-        } else {
-            return parseLabelOrLiteral();
-        }
-    }
-
-    private Expression parseLabelOrLiteral() throws ParseException {
-        ParseException labelEx = null;
-        ParseException literalEx = null;
-        LabelExpression labelExpr = null;
-        Literal literal = null;
-
-        Token tok = tokens.remove(0);
-        try {
-            verifyLabel(tok);
-            labelExpr = new LabelExpression(tok);
-        } catch (ParseException ex) {
-            labelEx = ex;
-        }
-
-        try {
-            literal = new Literal(tok);
-        } catch (ParseException ex) {
-            literalEx = ex;
-        }
-
-        // Note: priority is given to literal
-        if (literalEx == null) {
-            return literal;
-        } else if (labelEx == null) {
-            return labelExpr;
-        } else {
-            throw literalEx;
-        }
-    }
-
-    /*
-     * ( <expr> <bin-op> <expr> )
-     */
-    private BinaryOpExpression parseBinaryOpExpression() throws ParseException {
-        Token startParenthTok = tokens.remove(0);
-        if (!startParenthTok.getValue().equals("(")) {
-            throw new ParseException(
-                    "Expected '(' before a binary operation expression.", startParenthTok);
-        }
-
-        Expression leftExpr = parseExpression();
-        Token opTok = tokens.remove(0);
-        String operator = opTok.getValue();
-        if (!Operations.BINARY_OPERATORS.contains(operator)) {
-            throw new ParseException("Unknown binary operator: " + operator, opTok);
-        }
-        Expression rightExpr = parseExpression();
-
-        Token lastParenthTok = tokens.remove(0);
-        if (!lastParenthTok.getValue().equals(")")) {
-            throw new ParseException(
-                    "Expected ')' after a binary operation expression.", lastParenthTok);
-        }
-
-        BinaryOpExpression binOpExpression = new BinaryOpExpression(
-                startParenthTok, leftExpr, rightExpr, operator);
-
-        return binOpExpression;
-    }
-
-    /*
-     * ( <unary-op> <expr> )
-     */
-    private UnaryOpExpression parseUnaryOpExpression() throws ParseException {
-        Token startParenthTok = tokens.remove(0);
-        if (!startParenthTok.getValue().equals("(")) {
-            throw new ParseException(
-                    "Expected '(' before a unary operation expression.", startParenthTok);
-        }
-
-        Token opTok = tokens.remove(0);
-        String operator = opTok.getValue();
-        if (!Operations.UNARY_OPERATORS.contains(operator)) {
-            throw new ParseException("Unknown unary operator: " + operator, opTok);
-        }
-        Expression rightExpr = parseExpression();
-
-        Token lastParenthTok = tokens.remove(0);
-        if (!lastParenthTok.getValue().equals(")")) {
-            throw new ParseException(
-                    "Expected ')' after a unary operation expression.", lastParenthTok);
-        }
-
-        UnaryOpExpression unaryExpr = new UnaryOpExpression(startParenthTok, rightExpr, operator);
-
-        return unaryExpr;
-    }
-
-    /*
-     * <label> ( <args> ) ;
-     *
-     * <args> ::= <expr> ( , <expr> )* | ɛ
-     */
-    private LabelArgsStatement parseLabelArgsStmt() throws ParseException {
-        Token tok = tokens.get(0); // just for the initialization later.
-        LabelArgsExpression labelArgsExpr = parseLabelArgsExpr();
-        checkNext(";");
-
-        LabelArgsStatement stmt = new LabelArgsStatement(
-                tok, labelArgsExpr.getLabel(), labelArgsExpr.getArgs());
-
-        return stmt;
-    }
-
-    /*
-     * <label> ( <args> )
-     *
-     * <args> ::= <expr> ( , <expr> )* | ɛ
-     */
-    private LabelArgsExpression parseLabelArgsExpr() throws ParseException {
-        Token labelTok = tokens.remove(0);
-        verifyLabel(labelTok);
-
-        checkNext("(");
-
-        List<Expression> args = parseArgs();
-
-        checkNext(")");
-
-        LabelArgsExpression labelArgsExpr = new LabelArgsExpression(labelTok, labelTok.getValue(), args);
-
-        return labelArgsExpr;
-    }
-
-    private List<Expression> parseArgs() throws ParseException {
-        List<Expression> exprs = new ArrayList<Expression>();
-
-        while(!peekNext(")")) {
-            Expression expr = parseExpression();
-            exprs.add(expr);
-
-            if (!checkNextIfMatch(",")) {
-                break;
-            }
-        }
-
-        return exprs;
-    }
-
-    /*
-     * <label> ::= ...sequence of alphanumeric characters and underscore, not starting with a digit,
-     *              which are not keywords...
-     */
-    private void verifyLabel(Token tok) throws ParseException {
-        String tokValue = tok.getValue();
-        if (Character.isDigit(tokValue.charAt(0))) {
-            throw new ParseException("Variable label can't start with a digit!", tok);
-        }
-        if (Keywords.RESERVED_WORDS.contains(tokValue)) {
-            throw new ParseException("Reserved word " + tokValue + " can't be used as a label!", tok);
-        }
-    }
-
-    private void setFuncLabelForStmts(List<Statement> stmts, String funcLabel) {
-        for (Statement st : stmts) {
-            if (st instanceof WhileLoopStatement) {
-                WhileLoopStatement whileLoopStmt = (WhileLoopStatement) st;
-                whileLoopStmt.setFuncLabel(funcLabel);
-                setFuncLabelForStmts(whileLoopStmt.getStmts(), funcLabel);
-            } else if (st instanceof IfElseStatement) {
-                IfElseStatement ifElseStmt = (IfElseStatement) st;
-                ifElseStmt.setFuncLabel(funcLabel);
-                setFuncLabelForStmts(ifElseStmt.getStmts(), funcLabel);
-
-                if (ifElseStmt.getElseStmts() != null) {
-                    setFuncLabelForStmts(ifElseStmt.getElseStmts(), funcLabel);
-                }
-            } else {
-                st.setFuncLabel(funcLabel);
-            }
-        }
-    }
-}
+package splat.parser;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+import splat.lexer.LexException;
+import splat.lexer.Token;
+import splat.lexer.TokenKind;
+import splat.lexer.TokenListStream;
+import splat.lexer.TokenStream;
+import splat.parser.elements.*;
+import splat.lang.Operations;
+
+public class Parser {
+
+	private TokenStream tokens;
+
+	// Set when pulling the next token failed to lex.  Lex errors take priority
+	// over parse errors, just as if the whole file had been tokenized up front.
+	private LexException lexError;
+	
+	public Parser(TokenStream tokens) {
+		this.tokens = tokens;
+	}
+
+	public Parser(List<Token> tokens) {
+		this(new TokenListStream(tokens));
+	}
+
+	/*
+	 * Remembers a lex error hit while pulling tokens, and turns it into a
+	 * ParseException so it unwinds the parse like any other error.
+	 */
+	private ParseException lexFailed(LexException ex) {
+		lexError = ex;
+		return new ParseException(ex.getMessage(), ex.getLine(), ex.getColumn());
+	}
+
+	/*
+	 * Makes sure there is a token k positions ahead of the front-most token.
+	 */
+	private void requireToken(int k) throws ParseException {
+
+		boolean present;
+		try {
+			present = tokens.hasToken(k);
+		} catch (LexException ex) {
+			throw lexFailed(ex);
+		}
+
+		if (!present) {
+			throw new ParseException("Unexpectedly reached the end of file.", -1, -1);
+		}
+	}
+
+	/**
+	 * Returns the token k positions ahead of the front-most (next) token
+	 * without removing anything.
+	 *
+	 * @throws ParseException if the input ends before that token, or if it
+	 * 			can't be lexed (the LexException is kept in lexError)
+	 */
+	private Token peekToken(int k) throws ParseException {
+
+		requireToken(k);
+		try {
+			return tokens.peek(k);
+		} catch (LexException ex) {
+			throw lexFailed(ex);
+		}
+	}
+
+	/**
+	 * Removes and returns the front-most (next) token.
+	 */
+	private Token nextToken() throws ParseException {
+
+		Token tok = peekToken(0);
+		skipToken();
+
+		return tok;
+	}
+
+	/**
+	 * Removes the front-most (next) token without building a Token for it.
+	 */
+	private void skipToken() throws ParseException {
+
+		requireToken(0);
+		try {
+			tokens.advance();
+		} catch (LexException ex) {
+			throw lexFailed(ex);
+		}
+	}
+
+	/*
+	 * Returns the kind of the token k positions ahead.
+	 */
+	private TokenKind peekKind(int k) throws ParseException {
+
+		requireToken(k);
+		try {
+			return tokens.peekKind(k);
+		} catch (LexException ex) {
+			throw lexFailed(ex);
+		}
+	}
+
+	/*
+	 * Returns true iff the token k positions ahead matches the expected value,
+	 * without building a Token for it.
+	 */
+	private boolean peekIs(int k, String expected) throws ParseException {
+
+		requireToken(k);
+		try {
+			return tokens.peekIs(k, expected);
+		} catch (LexException ex) {
+			throw lexFailed(ex);
+		}
+	}
+
+	/**
+	 * Compares the next token to an expected value, and throws
+	 * an exception if they don't match.  This removes the front-most
+	 * (next) token  
+	 * 
+	 * @param expected value of the next token
+	 * @throws ParseException if the actual token doesn't match what 
+	 * 			was expected
+	 */
+	private void checkNext(String expected) throws ParseException {
+
+		if (!peekIs(0, expected)) {
+			Token tok = nextToken();
+			throw new ParseException("Expected '"+ expected + "', got '" 
+					+ tok.getValue()+ "'.", tok);
+		}
+
+		skipToken();
+	}
+
+	/**
+	 * Same as checkNext(expected), but reports a mismatch with the given
+	 * error message.
+	 * 
+	 * @param expected value of the next token
+	 * @param errorMsg message of the ParseException thrown on a mismatch
+	 */
+	private void checkNext(String expected, String errorMsg) throws ParseException {
+
+		if (!peekIs(0, expected)) {
+			throw new ParseException(errorMsg, nextToken());
+		}
+
+		skipToken();
+	}
+
+	/**
+	 * Compares the next token to an expected value, and if they match,
+     * then it returns true and removes the front-most (next) token.
+     * If they don't match, then it just returns false without removing
+     * anything.
+	 * 
+	 * @param expected value of the next token
+	 */
+	private boolean checkNextIfMatch(String expected) throws ParseException {
+
+		if (peekIs(0, expected)) {
+            skipToken();
+            return true;
+		}
+
+        return false;
+	}
+	
+	/**
+	 * Returns a boolean indicating whether or not the next token matches
+	 * the expected String value.  This does not remove the token from the
+	 * token list.
+	 * 
+	 * @param expected value of the next token
+	 * @return true iff the token value matches the expected string
+	 */
+	private boolean peekNext(String expected) throws ParseException {
+		return peekIs(0, expected);
+	}
+	
+	/**
+	 * Returns a boolean indicating whether or not the token directly after
+	 * the front most token matches the expected String value.  This does 
+	 * not remove any tokens from the token list.
+	 * 
+	 * @param expected value of the token directly after the next token
+	 * @return true iff the value matches the expected string
+	 */
+	private boolean peekTwoAhead(String expected) throws ParseException {
+		return peekIs(1, expected);
+	}
+	
+	
+	/*
+	 *  <program> ::= program <decls> begin <stmts> end ;
+	 */
+	public ProgramAST parse() throws ParseException, LexException {
+		
+		try {
+			// Needed for 'program' token position info
+			Token startTok = parseProgramHeader();
+			
+			List<Declaration> decls = parseDecls();
+			
+			List<Statement> stmts = parseProgramBody();
+
+			// Whatever follows the program still has to be valid tokens
+			skipRemainingTokens();
+	
+			return new ProgramAST(decls, stmts, startTok);
+			
+		} catch (ParseException ex) {
+			throw failed(ex);
+		}
+	}
+
+	/*
+	 * Turns a parse failure into the exception to report: the lex error
+	 * that caused it, or one further on in the file, takes priority.
+	 */
+	ParseException failed(ParseException ex) throws LexException {
+
+		if (lexError != null) {
+			throw lexError;
+		}
+		skipRemainingTokens();
+
+		return ex;
+	}
+
+	/*
+	 * Lexes the rest of the input without keeping it, so that a lex error
+	 * anywhere in the file is still reported.
+	 */
+	void skipRemainingTokens() throws LexException {
+		while (tokens.hasToken(0)) {
+			tokens.advance();
+		}
+	}
+	
+	/*
+	 * program -- returns the 'program' token
+	 */
+	Token parseProgramHeader() throws ParseException {
+		Token startTok = peekToken(0);
+		checkNext("program");
+
+		return startTok;
+	}
+
+	/*
+	 *  <decls> ::= (  <decl>  )*
+	 */
+	private List<Declaration> parseDecls() throws ParseException {
+		
+		List<Declaration> decls = new ArrayList<Declaration>();
+		
+		while (!atProgramBody()) {
+			Declaration decl = parseDecl();
+			decls.add(decl);
+		}
+		
+		return decls;
+	}
+
+	/*
+	 * Returns true iff the declarations are over and the program body is next.
+	 */
+	boolean atProgramBody() throws ParseException {
+		return peekNext("begin");
+	}
+
+	/*
+	 * begin <stmts> end ;
+	 */
+	List<Statement> parseProgramBody() throws ParseException {
+		beginProgramBody();
+
+		List<Statement> stmts = new ArrayList<Statement>();
+		Statement stmt;
+		while ((stmt = parseProgramBodyStmt()) != null) {
+			stmts.add(stmt);
+		}
+
+		return stmts;
+	}
+
+	void beginProgramBody() throws ParseException {
+		checkNext("begin");
+	}
+
+	/*
+	 * Returns the next statement of the program body, or null once the
+	 * 'end ;' that closes it has been read.
+	 */
+	Statement parseProgramBodyStmt() throws ParseException {
+		if (!peekNext("end") && !peekNext("else")) {
+			return parseStmt();
+		}
+
+		checkNext("end");
+		checkNext(";");
+
+		return null;
+	}
+	
+	/*
+	 * <decl> ::= <var-decl> | <func-decl>
+	 */
+	Declaration parseDecl() throws ParseException {
+
+		if (peekTwoAhead(":")) {
+			return parseVarDecl();
+		} else if (peekTwoAhead("(")) {
+			return parseFuncDecl();
+		} else {
+			Token tok = peekToken(0);
+			throw new ParseException("Declaration expected", tok);
+		}
+	}
+
+	/*
+	 * <var-decl> ::= <label> : <type> ;
+	 */
+	private VariableDecl parseVarDecl() throws ParseException {
+        Token varLabelTok = nextToken();
+        verifyLabel(varLabelTok);
+
+        checkNext(":", "You probably forgot ':' after the variable label.");
+
+        Token typeTok = nextToken();
+        Type type = Type.getVarType(typeTok);
+
+        checkNext(";", "Expected ';' after variable declaration.");
+
+        VariableDecl varDecl = new VariableDecl(varLabelTok, varLabelTok.getValue(), type);
+
+        return varDecl;
+	}
+	
+	/*
+	 * <func-decl> ::= <label> ( <params> ) : <ret-type> is 
+	 * 						<loc-var-decls> begin <stmts> end ;
+	 */
+	private FunctionDecl parseFuncDecl() throws ParseException {
+        Token funcLabelTok = nextToken();
+        verifyLabel(funcLabelTok);
+
+        checkNext("(", "Expected '(' after the function label.");
+
+        List<FuncParamDecl> params = parseFuncParams();
+
+        checkNext(")", "Expected ')' after the function parameters.");
+
+        checkNext(":", "You probably forgot ':' before the function return type.");
+
+        Token returnTypeTok = nextToken();
+        Type type = Type.getFuncReturnType(returnTypeTok);
+
+        checkNext("is", "Expected keyword 'is' after the function return type.");
+
+        List<VariableDecl> localVarDecls = parseLocalVariableDecls();
+
+        checkNext("begin");
+
+        List<Statement> statements = parseStmts();
+        setFuncLabelForStmts(statements, funcLabelTok.getValue(), funcLabelTok.getSymbol());
+
+        checkNext("end", "Expected keyword 'end' after the function body.");
+
+        checkNext(";", "Expected ';' at the end of the function declaration.");
+
+        FunctionDecl funcDecl = new FunctionDecl(
+                funcLabelTok,
+                funcLabelTok.getValue(),
+                params,
+                type,
+                localVarDecls,
+                statements);
+
+		return funcDecl;
+	}
+
+    /*
+     * <param> ::= <label> : <type>
+     */
+    private FuncParamDecl parseFuncParam() throws ParseException {
+        Token paramLabelTok = nextToken();
+        verifyLabel(paramLabelTok);
+
+        checkNext(":", "You probably forgot ':' after the function parameter label.");
+
+        Token typeTok = nextToken();
+        Type type = Type.getVarType(typeTok);
+
+        FuncParamDecl paramDecl = new FuncParamDecl(paramLabelTok, paramLabelTok.getValue(), type);
+
+        return paramDecl;
+    }
+
+    /*
+     * <params> ::= <param> ( , <param> )* | ɛ
+     */
+    private List<FuncParamDecl> parseFuncParams() throws ParseException {
+        List<FuncParamDecl> params = new ArrayList<FuncParamDecl>();
+        while (!peekNext(")")) {
+            FuncParamDecl param = parseFuncParam();
+            params.add(param);
+            if (!checkNextIfMatch(",")) {
+                break;
+            }
+        }
+
+        return params;
+    }
+
+    /*
+     * <loc-var-decls> ::= ( <var-decl> )*
+     */
+    private List<VariableDecl> parseLocalVariableDecls() throws ParseException {
+        List<VariableDecl> varDecls = new ArrayList<VariableDecl>();
+        while (!peekNext("begin")) {
+            VariableDecl varDecl = parseVarDecl();
+            varDecls.add(varDecl);
+        }
+
+        return varDecls;
+    }
+	
+	/*
+	 * <stmts> ::= (  <stmt>  )*
+	 */
+	private List<Statement> parseStmts() throws ParseException {
+        List<Statement> statements = new ArrayList<Statement>();
+        while(!peekNext("end") && !peekNext("else")) {
+            Statement stmt = parseStmt();
+            statements.add(stmt);
+        }
+
+		return statements;
+	}
+
+    /*
+     * <stmt> ::= <label> := <expr> ;
+                | while <expr> do <stmts> end while ;
+                | if <expr> then <stmts> else <stmts> end if ;
+                | if <expr> then <stmts> end if ;
+                | <label> ( <args> ) ;
+                | print <expr> ;
+                | print_line ;
+                | return <expr> ;
+                | return ;
+     */
+    private Statement parseStmt() throws ParseException {
+        if (peekKind(0) == TokenKind.KEYWORD) {
+            if (peekNext("while")) {
+                return parseWhileLoopStmt();
+            } else if (peekNext("if")) {
+                return parseIfElseStmt();
+            } else if (peekNext("print")) {
+                return parsePrintStmt();
+            } else if (peekNext("print_line")) {
+                return parsePrintLineStmt();
+            } else if (peekNext("return")) {
+                return parseReturnStmt();
+            }
+        }
+
+        if (peekTwoAhead(":=")) {
+            return parseLabelAssignmentStmt();
+        }
+        return parseLabelArgsStmt();
+    }
+
+    /*
+     * while <expr> do <stmts> end while ;
+     */
+    private WhileLoopStatement parseWhileLoopStmt() throws ParseException {
+        Token whileKeywordTok = nextToken();
+        if (!whileKeywordTok.getValue().equals("while")) {
+            throw new ParseException("No 'while' keyword before the while loop.", whileKeywordTok);
+        }
+
+        Expression expr = parseExpression();
+        checkNext("do", "Expected 'do' keyword after the binary operation expression.");
+
+        List<Statement> stmts = parseStmts();
+
+        checkNext("end");
+        checkNext("while");
+        checkNext(";");
+
+        WhileLoopStatement wls = new WhileLoopStatement(whileKeywordTok, expr, stmts);
+
+        return wls;
+    }
+
+    /*
+     * if <expr> then <stmts> else <stmts> end if ; 
+     * | if <expr> then <stmts> end if ;
+     */
+    private IfElseStatement parseIfElseStmt() throws ParseException {
+        Token ifTok = nextToken();
+        if (!ifTok.getValue().equals("if")) {
+            throw new ParseException("Expected 'if' keyword.", ifTok);
+        }
+        
+        Expression expr = parseExpression();
+        checkNext("then", "Expected 'then' keyword after the binary operation expression.");
+
+        List<Statement> stmts = parseStmts();
+        List<Statement> elseStmts = null;
+
+        if (checkNextIfMatch("else")) {
+            elseStmts = parseStmts();
+            checkNext("end");
+            checkNext("if");
+            checkNext(";");
+        } else if (checkNextIfMatch("end")) {
+            checkNext("if");
+            checkNext(";");
+        } else {
+            throw new ParseException(
+                    "Expected 'else' or 'end' after the if statement body.", nextToken());
+        }
+
+        IfElseStatement ifElseStmt = new IfElseStatement(ifTok, expr, stmts, elseStmts);
+
+        return ifElseStmt;
+    }
+
+    /*
+     * print <expr> ;
+     */
+    private Statement parsePrintStmt() throws ParseException {
+        Token printTok = nextToken();
+        if (!printTok.getValue().equals("print")) {
+            throw new ParseException("Expected 'print' keyword.", printTok);
+        }
+        Expression expr = parseExpression();
+        checkNext(";");
+
+        PrintStatement printStmt = new PrintStatement(printTok, expr);
+
+        return printStmt;
+    }
+
+    /*
+     * print_line ;
+     */
+    private Statement parsePrintLineStmt() throws ParseException {
+        Token printLineTok = nextToken();
+        if (!printLineTok.getValue().equals("print_line")) {
+            throw new ParseException("Expected 'print_line' keyword.", printLineTok);
+        }
+        checkNext(";");
+
+        Statement stmt = new PrintLineStatement(printLineTok);
+
+        return stmt;
+    }
+
+    /*
+     * return <expr> ; | return ;
+     */
+    private Statement parseReturnStmt() throws ParseException {
+        Token returnTok = nextToken();
+        if (!returnTok.getValue().equals("return")) {
+            throw new ParseException("Expected 'return' keyword.", returnTok);
+        }
+
+        Expression expr = null;
+        if (!peekNext(";")) {
+            expr = parseExpression();
+        }
+        checkNext(";");
+
+        ReturnStatement stmt = new ReturnStatement(returnTok, expr);
+        return stmt;
+    }
+
+    private LabelAssignmentStatement parseLabelAssignmentStmt() throws ParseException {
+        Token labelTok = nextToken();
+        verifyLabel(labelTok);
+        checkNext(":=");
+        Expression expr = parseExpression();
+        checkNext(";");
+
+        LabelAssignmentStatement las = new LabelAssignmentStatement(labelTok, labelTok.getValue(), expr);
+        return las;
+    }
+
+    /*
+     * <expr> ::= ( <expr> <bin-op> <expr> )
+                | ( <unary-op> <expr> )
+                | <label> ( <args> )
+                | <label>
+                | <literal>
+     *
+     * Parsed without recursion: every expression still waiting for an
+     * operand is kept on an explicit stack, so nesting depth is only limited
+     * by the heap.  Tokens are consumed, and errors reported, in exactly the
+     * order a recursive descent parser would.
+     */
+    private Expression parseExpression() throws ParseException {
+        ArrayDeque<PendingExpr> pending = new ArrayDeque<>();
+
+        while (true) {
+            // Go down through the openings until an operand is complete
+            Expression expr = null;
+            while (expr == null) {
+                if (peekNext("(")) {
+                    Token startParenthTok = nextToken();
+                    if (startsUnaryOp()) {
+                        // ( <unary-op> <expr> )
+                        String operator = nextToken().getValue();
+                        pending.push(new PendingExpr(PendingExpr.UNARY, startParenthTok, operator));
+                    } else {
+                        // ( <expr> <bin-op> <expr> )
+                        pending.push(new PendingExpr(PendingExpr.BINARY, startParenthTok, null));
+                    }
+                } else if (peekTwoAhead("(")) {
+                    // <label> ( <args> )
+                    Token labelTok = nextToken();
+                    verifyLabel(labelTok);
+                    checkNext("(");
+
+                    PendingExpr call = new PendingExpr(PendingExpr.CALL, labelTok, null);
+                    if (peekNext(")")) {
+                        expr = call.finishCall();
+                    } else {
+                        pending.push(call);
+                    }
+                } else {
+                    expr = parseLabelOrLiteral();
+                }
+            }
+
+            // Come back up, completing every expression this operand finishes
+            while (true) {
+                PendingExpr top = pending.peek();
+                if (top == null) {
+                    return expr;
+                }
+
+                if (top.kind == PendingExpr.UNARY) {
+                    checkNext(")", "Expected ')' after a unary operation expression.");
+                    expr = new UnaryOpExpression(top.tok, expr, top.operator);
+                } else if (top.kind == PendingExpr.BINARY && top.left == null) {
+                    top.left = expr;
+                    Token opTok = nextToken();
+                    top.operator = opTok.getValue();
+                    if (!Operations.BINARY_OPERATORS.contains(top.operator)) {
+                        throw new ParseException("Unknown binary operator: " + top.operator, opTok);
+                    }
+                    break; // on to the right operand
+                } else if (top.kind == PendingExpr.BINARY) {
+                    checkNext(")", "Expected ')' after a binary operation expression.");
+                    expr = new BinaryOpExpression(top.tok, top.left, expr, top.operator);
+                } else {
+                    top.args.add(expr);
+                    if (checkNextIfMatch(",") && !peekNext(")")) {
+                        break; // on to the next argument
+                    }
+                    expr = top.finishCall();
+                }
+                pending.pop();
+            }
+        }
+    }
+
+    /*
+     * Returns true iff the token after the '(' that was just consumed is a
+     * unary operator.
+     */
+    private boolean startsUnaryOp() throws ParseException {
+        if (peekKind(0) == TokenKind.OPERATOR) {
+            for (String unaryOp : Operations.UNARY_OPERATORS) {
+                if (peekNext(unaryOp)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /*
+     * An expression parseExpression() has started but that still waits for an
+     * operand: a unary or binary operation after its '(', or a function call
+     * after its '('.
+     */
+    private final class PendingExpr {
+        static final int UNARY = 0;
+        static final int BINARY = 1;
+        static final int CALL = 2;
+
+        final int kind;
+        final Token tok;
+        String operator;
+        Expression left;
+        List<Expression> args;
+
+        PendingExpr(int kind, Token tok, String operator) {
+            this.kind = kind;
+            this.tok = tok;
+            this.operator = operator;
+            if (kind == CALL) {
+                this.args = new ArrayList<Expression>();
+            }
+        }
+
+        LabelArgsExpression finishCall() throws ParseException {
+            checkNext(")");
+            return new LabelArgsExpression(tok, tok.getValue(), args);
+        }
+    }
+
+    private Expression parseLabelOrLiteral() throws ParseException {
+        Token tok = nextToken();
+
+        switch (tok.getKind()) {
+            case IDENTIFIER:
+                return new LabelExpression(tok);
+            case INT_LITERAL:
+            case STRING_LITERAL:
+            case BOOL_LITERAL:
+                return new Literal(tok);
+            default:
+                throw new ParseException(
+                        "Expected a label or a literal, got '" + tok.getValue() + "'.", tok);
+        }
+    }
+
+    /*
+     * <label> ( <args> ) ;
+     *
+     * <args> ::= <expr> ( , <expr> )* | ɛ
+     */
+    private LabelArgsStatement parseLabelArgsStmt() throws ParseException {
+        Token tok = peekToken(0); // just for the initialization later.
+        LabelArgsExpression labelArgsExpr = parseLabelArgsExpr();
+        checkNext(";");
+
+        LabelArgsStatement stmt = new LabelArgsStatement(
+                tok, labelArgsExpr.getLabel(), labelArgsExpr.getArgs());
+
+        return stmt;
+    }
+
+    /*
+     * <label> ( <args> )
+     *
+     * <args> ::= <expr> ( , <expr> )* | ɛ
+     */
+    private LabelArgsExpression parseLabelArgsExpr() throws ParseException {
+        Token labelTok = nextToken();
+        verifyLabel(labelTok);
+
+        checkNext("(");
+
+        List<Expression> args = parseArgs();
+
+        checkNext(")");
+
+        LabelArgsExpression labelArgsExpr = new LabelArgsExpression(labelTok, labelTok.getValue(), args);
+
+        return labelArgsExpr;
+    }
+
+    private List<Expression> parseArgs() throws ParseException {
+        List<Expression> exprs = new ArrayList<Expression>();
+
+        while(!peekNext(")")) {
+            Expression expr = parseExpression();
+            exprs.add(expr);
+
+            if (!checkNextIfMatch(",")) {
+                break;
+            }
+        }
+
+        return exprs;
+    }
+
+    /*
+     * <label> ::= ...sequence of alphanumeric characters and underscore, not starting with a digit,
+     *              which are not keywords...
+     */
+    private void verifyLabel(Token tok) throws ParseException {
+        String tokValue = tok.getValue();
+        switch (tok.getKind()) {
+            case IDENTIFIER:
+                return;
+            case INT_LITERAL:
+                throw new ParseException("Variable label can't start with a digit!", tok);
+            case KEYWORD:
+            case BOOL_LITERAL:
+            case OPERATOR:
+                throw new ParseException("Reserved word " + tokValue + " can't be used as a label!", tok);
+            default:
+                throw new ParseException("Expected a label, got '" + tokValue + "'.", tok);
+        }
+    }
+
+    private void setFuncLabelForStmts(List<Statement> stmts, String funcLabel, int funcSymbol) {
+        for (Statement st : stmts) {
+            if (st instanceof WhileLoopStatement) {
+                WhileLoopStatement whileLoopStmt = (WhileLoopStatement) st;
+                whileLoopStmt.setFuncLabel(funcLabel, funcSymbol);
+                setFuncLabelForStmts(whileLoopStmt.getStmts(), funcLabel, funcSymbol);
+            } else if (st instanceof IfElseStatement) {
+                IfElseStatement ifElseStmt = (IfElseStatement) st;
+                ifElseStmt.setFuncLabel(funcLabel, funcSymbol);
+                setFuncLabelForStmts(ifElseStmt.getStmts(), funcLabel, funcSymbol);
+
+                if (ifElseStmt.getElseStmts() != null) {
+                    setFuncLabelForStmts(ifElseStmt.getElseStmts(), funcLabel, funcSymbol);
+                }
+            } else {
+                st.setFuncLabel(funcLabel, funcSymbol);
+            }
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package splat.parser;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import splat.lexer.LexException;
+import splat.lexer.Token;
+import splat.lexer.TokenStream;
+import splat.parser.elements.Declaration;
+import splat.parser.elements.ProgramAST;
+import splat.parser.elements.Statement;
+
+/**
+ * Parses a program in two steps: first the header and all the declarations,
+ * then the statements of the program body one at a time, so each one can be
+ * run and dropped before the next is even lexed.
+ *
+ * Errors are reported the same way Parser reports them, except that each
+ * step can only see the input up to where it stopped: a lex error further on
+ * in the file only takes priority over a parse error once the parser has
+ * failed.
+ */
+public class StreamingParser {
+
+	private final Parser parser;
+	private boolean done = false;
+
+	public StreamingParser(TokenStream tokens) {
+		this.parser = new Parser(tokens);
+	}
+
+	/**
+	 * Parses everything up to and including the 'begin' of the program body.
+	 * The returned ProgramAST has no statements.
+	 */
+	public ProgramAST parseDecls() throws ParseException, LexException {
+		try {
+			Token startTok = parser.parseProgramHeader();
+
+			List<Declaration> decls = new ArrayList<Declaration>();
+			while (!parser.atProgramBody()) {
+				decls.add(parser.parseDecl());
+			}
+			parser.beginProgramBody();
+
+			return new ProgramAST(decls, Collections.<Statement>emptyList(), startTok);
+
+		} catch (ParseException ex) {
+			throw parser.failed(ex);
+		}
+	}
+
+	/**
+	 * Returns the next statement of the program body, or null once the body
+	 * is over and the rest of the input has been checked to lex.
+	 */
+	public Statement nextStmt() throws ParseException, LexException {
+		if (done) {
+			return null;
+		}
+
+		try {
+			Statement stmt = parser.parseProgramBodyStmt();
+			if (stmt == null) {
+				done = true;
+				parser.skipRemainingTokens();
+			}
+			return stmt;
+
+		} catch (ParseException ex) {
+			throw parser.failed(ex);
+		}
+	}
+}
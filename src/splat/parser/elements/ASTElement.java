@@ -1,22 +1,44 @@
-package splat.parser.elements;
-
-import splat.lexer.Token;
-
-public abstract class ASTElement {
-
-	private int line;
-	private int column;
-	
-	public ASTElement(Token tok) {
-		this.line = tok.getLine();
-		this.column = tok.getColumn();
-	}
-	
-	public int getLine() {
-		return line;
-	}
-	
-	public int getColumn() {
-		return column;
-	}
-}
+package splat.parser.elements;
+
+import splat.executor.ExecutionException;
+import splat.lang.SymbolMap;
+import splat.lexer.Token;
+
+public abstract class ASTElement {
+
+	// Where the element's first token starts in the source.  Only turned
+	// into a line and column, with a LineIndex, when an error is reported.
+	private int offset;
+	
+	public ASTElement(Token tok) {
+		this.offset = tok.getOffset();
+	}
+	
+	/**
+	 * Returns the source offset of the element's first token, or -1 if it
+	 * wasn't parsed from a source.
+	 */
+	public int getOffset() {
+		return offset;
+	}
+
+	/**
+	 * Moves this element, and everything under it, by delta bytes.  Used
+	 * when an element is kept across an edit that added or removed bytes
+	 * before it.
+	 */
+	public void shiftOffsets(int delta) {
+		this.offset += delta;
+	}
+
+	/**
+	 * Binds the variable references in this element, and everything under
+	 * it, to the slots they are kept in at run time.  localSlots holds the
+	 * slots of the enclosing function's frame, and is null outside of
+	 * functions.  Throws if a reference is bound to neither.  See
+	 * SlotResolver.
+	 */
+	public void resolveSlots(SymbolMap<Integer> localSlots, SymbolMap<Integer> globalSlots)
+			throws ExecutionException {
+	}
+}
@@ -1,6 +1,5 @@
 package splat.parser.elements;
 
-import java.util.Map;
 import java.util.Stack;
 
 import splat.lexer.Token;
@@ -12,6 +11,7 @@ import splat.executor.StringValue;
 import splat.executor.IntegerValue;
 import splat.executor.ExecutionException;
 import splat.executor.ScopeEnvironment;
+import splat.lang.SymbolMap;
 
 public class BinaryOpExpression extends Expression {
     private Expression leftExpr;
@@ -26,7 +26,7 @@ public class BinaryOpExpression extends Expression {
     }
     
     @Override
-    public Type analyzeAndGetType(Map<String, FunctionDecl> funcMap, Map<String, Type> varAndParamMap) 
+    public Type analyzeAndGetType(SymbolMap<FunctionDecl> funcMap, SymbolMap<Type> varAndParamMap) 
          throws SemanticAnalysisException
     {
         Type LHSType = this.leftExpr.analyzeAndGetType(funcMap, varAndParamMap);
@@ -37,8 +37,8 @@ public class BinaryOpExpression extends Expression {
 
     @Override
     public Value evaluate(
-        Map<String, FunctionDecl> funcMap,
-        Map<String, Value> varAndParamMap,
+        SymbolMap<FunctionDecl> funcMap,
+        SymbolMap<Value> varAndParamMap,
         Stack<ScopeEnvironment> callStack) throws ExecutionException
     {
         Value leftVal = this.leftExpr.evaluate(funcMap, varAndParamMap, callStack);
@@ -167,11 +167,33 @@ public class BinaryOpExpression extends Expression {
         return this.leftExpr;
     }
 
+    public void setLeftExpr(Expression leftExpr) {
+        this.leftExpr = leftExpr;
+    }
+
     public Expression getRightExpr() {
         return this.rightExpr;
     }
 
+    public void setRightExpr(Expression rightExpr) {
+        this.rightExpr = rightExpr;
+    }
+
     public String getOperator() {
         return this.operator;
     }
+
+    @Override
+    public void shiftOffsets(int delta) {
+        super.shiftOffsets(delta);
+        this.leftExpr.shiftOffsets(delta);
+        this.rightExpr.shiftOffsets(delta);
+    }
+
+    @Override
+    public void resolveSlots(SymbolMap<Integer> localSlots, SymbolMap<Integer> globalSlots)
+            throws ExecutionException {
+        this.leftExpr.resolveSlots(localSlots, globalSlots);
+        this.rightExpr.resolveSlots(localSlots, globalSlots);
+    }
 }
@@ -1,17 +1,23 @@
-package splat.parser.elements;
-
-import splat.lexer.Token;
-
-public abstract class Declaration extends ASTElement {
-
-    private String label;
-
-	public Declaration(Token tok, String label) {
-		super(tok);
-        this.label = label;
-	}
-
-    public String getLabel() {
-        return this.label;
-    }
-}
+package splat.parser.elements;
+
+import splat.lexer.Token;
+
+public abstract class Declaration extends ASTElement {
+
+    private String label;
+    private int symbol;
+
+	public Declaration(Token tok, String label) {
+		super(tok);
+        this.label = label;
+        this.symbol = tok.getSymbol();
+	}
+
+    public String getLabel() {
+        return this.label;
+    }
+
+    public int getSymbol() {
+        return this.symbol;
+    }
+}
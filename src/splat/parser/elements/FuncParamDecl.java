@@ -5,6 +5,9 @@ import splat.lexer.Token;
 public class FuncParamDecl extends Declaration {
 
     private Type type;
+
+    // Index in the function's frame, set by SlotResolver
+    private int slot = -1;
 	
 	public FuncParamDecl(Token tok, String label, Type type) {
 		super(tok, label);
@@ -14,6 +17,14 @@ public class FuncParamDecl extends Declaration {
     public Type getType() {
         return this.type;
     }
+
+    public int getSlot() {
+        return this.slot;
+    }
+
+    public void setSlot(int slot) {
+        this.slot = slot;
+    }
 	
 	public String toString() {
         return this.getLabel() + ": " + this.type;
@@ -1,7 +1,5 @@
 package splat.parser.elements;
 
-import java.util.Map;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Stack;
 
@@ -12,6 +10,7 @@ import splat.executor.BoolValue;
 import splat.executor.ReturnFromCall;
 import splat.executor.ExecutionException;
 import splat.executor.ScopeEnvironment;
+import splat.lang.SymbolMap;
 
 public class IfElseStatement extends Statement {
     private Expression expr;
@@ -33,7 +32,7 @@ public class IfElseStatement extends Statement {
     }
 
     @Override
-    public void analyze(Map<String, FunctionDecl> funcMap, Map<String, Type> varAndParamMap)
+    public void analyze(SymbolMap<FunctionDecl> funcMap, SymbolMap<Type> varAndParamMap)
         throws SemanticAnalysisException
     {
         Type type = this.expr.analyzeAndGetType(funcMap, varAndParamMap);
@@ -42,7 +41,7 @@ public class IfElseStatement extends Statement {
                     "If-else statement expression should return a boolean type value.", this.expr);
         }
 
-        FunctionDecl funcDecl = funcMap.get(this.getFuncLabel());
+        FunctionDecl funcDecl = funcMap.get(this.getFuncSymbol());
         boolean funcMustReturn = funcDecl != null && funcDecl.getReturnType() == Type.VOID ? false : true;
         boolean ifStmtReturns = false;
         boolean elseStmtReturns = false;
@@ -96,20 +95,12 @@ public class IfElseStatement extends Statement {
 
     @Override
     public void execute(
-            Map<String, FunctionDecl> funcMap, 
-            Map<String, Value> varAndParamMap,
+            SymbolMap<FunctionDecl> funcMap, 
+            SymbolMap<Value> varAndParamMap,
             Stack<ScopeEnvironment> callStack) throws ReturnFromCall, ExecutionException
     {
+        // Analysis made sure the expression is a Boolean
         Value exprValue = this.expr.evaluate(funcMap, varAndParamMap, callStack);
-        Type exprValType = exprValue.getType();
-        if (exprValType != Type.BOOLEAN) 
-        {
-            throw new ExecutionException(
-                "If-else statement expression evaluated to a value of type non-boolean: " + 
-                exprValType, this.expr
-            );
-        }
-
         BoolValue boolVal = (BoolValue) exprValue;
         if (boolVal.getValue()) {
             if (this.stmts == null) {
@@ -134,6 +125,10 @@ public class IfElseStatement extends Statement {
         return this.expr;
     }
 
+    public void setBinExpr(Expression expr) {
+        this.expr = expr;
+    }
+
     public List<Statement> getStmts() {
         return this.stmts;
     }
@@ -145,4 +140,32 @@ public class IfElseStatement extends Statement {
     public boolean returns() {
         return this.returns;
     }
+
+    @Override
+    public void shiftOffsets(int delta) {
+        super.shiftOffsets(delta);
+        this.expr.shiftOffsets(delta);
+        for (Statement stmt : this.stmts) {
+            stmt.shiftOffsets(delta);
+        }
+        if (this.elseStmts != null) {
+            for (Statement stmt : this.elseStmts) {
+                stmt.shiftOffsets(delta);
+            }
+        }
+    }
+
+    @Override
+    public void resolveSlots(SymbolMap<Integer> localSlots, SymbolMap<Integer> globalSlots)
+            throws ExecutionException {
+        this.expr.resolveSlots(localSlots, globalSlots);
+        for (Statement stmt : this.stmts) {
+            stmt.resolveSlots(localSlots, globalSlots);
+        }
+        if (this.elseStmts != null) {
+            for (Statement stmt : this.elseStmts) {
+                stmt.resolveSlots(localSlots, globalSlots);
+            }
+        }
+    }
 }
@@ -2,7 +2,6 @@ package splat.parser.elements;
 
 import java.util.List;
 import java.util.Map;
-import java.util.HashMap;
 import java.util.Stack;
 
 import splat.lexer.Token;
@@ -12,25 +11,28 @@ import splat.executor.ExecutionException;
 import splat.executor.ReturnFromCall;
 import splat.executor.Executor;
 import splat.executor.ScopeEnvironment;
+import splat.lang.SymbolMap;
 
 /**
  * A function call expression ::= <label> ( <args> )
  */
 public class LabelArgsExpression extends Expression {
     private String label;
+    private int symbol;
     private List<Expression> args;
 
     public LabelArgsExpression(Token tok, String label, List<Expression> args) {
         super(tok);
         this.label = label;
+        this.symbol = tok.getSymbol();
         this.args = args;
     }
     
     @Override
-    public Type analyzeAndGetType(Map<String, FunctionDecl> funcMap, Map<String, Type> varAndParamMap) 
+    public Type analyzeAndGetType(SymbolMap<FunctionDecl> funcMap, SymbolMap<Type> varAndParamMap) 
         throws SemanticAnalysisException
     {
-        FunctionDecl funcDecl = funcMap.get(this.label);
+        FunctionDecl funcDecl = funcMap.get(this.symbol);
         if (funcDecl == null) {
             throw new SemanticAnalysisException(
                     "No function named '" + this.label + "' is defined!", this);
@@ -65,12 +67,12 @@ public class LabelArgsExpression extends Expression {
 
     @Override
     public Value evaluate(
-            Map<String, FunctionDecl> funcMap,
-            Map<String, Value> varAndParamMap,
+            SymbolMap<FunctionDecl> funcMap,
+            SymbolMap<Value> varAndParamMap,
             Stack<ScopeEnvironment> callStack) throws ExecutionException
     {
         FunctionDecl funcDecl = this.getFunctionDecl(funcMap);
-        ScopeEnvironment scopeEnv = this.createFuncScopeEnv();
+        ScopeEnvironment scopeEnv = this.createFuncScopeEnv(funcDecl);
         this.addLocalVarsToScopeEnv(funcDecl, scopeEnv);
         this.addFuncArgsToScopeEnv(funcDecl, funcMap, varAndParamMap, callStack, scopeEnv);
         callStack.push(scopeEnv);
@@ -104,9 +106,9 @@ public class LabelArgsExpression extends Expression {
         );
     }
 
-    public FunctionDecl getFunctionDecl(Map<String, FunctionDecl> funcMap) throws ExecutionException
+    public FunctionDecl getFunctionDecl(SymbolMap<FunctionDecl> funcMap) throws ExecutionException
     {
-        FunctionDecl funcDecl = funcMap.get(this.label);
+        FunctionDecl funcDecl = funcMap.get(this.symbol);
         if (funcDecl == null)
         {
             throw new ExecutionException("Dude, this function " + funcDecl.toString() + 
@@ -118,10 +120,10 @@ public class LabelArgsExpression extends Expression {
         return funcDecl;
     }
 
-    private ScopeEnvironment createFuncScopeEnv()
+    private ScopeEnvironment createFuncScopeEnv(FunctionDecl funcDecl)
     {
-        Map<String, Value> localVarAndParamMap = new HashMap<>();
-        ScopeEnvironment scopeEnv = new ScopeEnvironment(localVarAndParamMap);
+        Value[] slots = new Value[funcDecl.getParams().size() + funcDecl.getLocalVarDecls().size()];
+        ScopeEnvironment scopeEnv = new ScopeEnvironment(slots);
 
         return scopeEnv;
     }
@@ -137,17 +139,15 @@ public class LabelArgsExpression extends Expression {
             for (VariableDecl varDecl : localVarDecls)
             {
                 Value varVal = Executor.returnZeroValueOf(varDecl);
-                scopeEnv
-                    .getLocalVarAndParamMap()
-                    .put(varDecl.getLabel(), varVal);
+                scopeEnv.getSlots()[varDecl.getSlot()] = varVal;
             }
         }
     }
 
     private void addFuncArgsToScopeEnv(
-        FunctionDecl funcDecl, Map<String, 
-        FunctionDecl> funcMap, 
-        Map<String, Value> varAndParamMap,
+        FunctionDecl funcDecl,
+        SymbolMap<FunctionDecl> funcMap, 
+        SymbolMap<Value> varAndParamMap,
         Stack<ScopeEnvironment> callStack,
         ScopeEnvironment scopeEnv) throws ExecutionException
     {
@@ -158,9 +158,7 @@ public class LabelArgsExpression extends Expression {
             for (int i = 0; i < funcParams.size(); i++)
             {
                 Value argVal = this.args.get(i).evaluate(funcMap, varAndParamMap, callStack);
-                scopeEnv
-                    .getLocalVarAndParamMap()
-                    .put(funcParams.get(i).getLabel(), argVal);
+                scopeEnv.getSlots()[funcParams.get(i).getSlot()] = argVal;
             }
         }
     }
@@ -172,4 +170,24 @@ public class LabelArgsExpression extends Expression {
     public String getLabel() {
         return this.label;
     }
+
+    public int getSymbol() {
+        return this.symbol;
+    }
+
+    @Override
+    public void shiftOffsets(int delta) {
+        super.shiftOffsets(delta);
+        for (Expression arg : this.args) {
+            arg.shiftOffsets(delta);
+        }
+    }
+
+    @Override
+    public void resolveSlots(SymbolMap<Integer> localSlots, SymbolMap<Integer> globalSlots)
+            throws ExecutionException {
+        for (Expression arg : this.args) {
+            arg.resolveSlots(localSlots, globalSlots);
+        }
+    }
 }
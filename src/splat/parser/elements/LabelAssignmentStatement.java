@@ -1,6 +1,5 @@
 package splat.parser.elements;
 
-import java.util.Map;
 import java.util.Stack;
 
 import splat.lexer.Token;
@@ -9,22 +8,29 @@ import splat.executor.ReturnFromCall;
 import splat.executor.ExecutionException;
 import splat.executor.Value;
 import splat.executor.ScopeEnvironment;
+import splat.lang.SymbolMap;
 
 public class LabelAssignmentStatement extends Statement {
     private String label;
+    private int symbol;
     private Expression expr;
 
+    // Where the variable lives at run time, set by SlotResolver
+    private boolean global;
+    private int slot = -1;
+
     public LabelAssignmentStatement(Token tok, String label, Expression expr) {
         super(tok);
         this.label = label;
+        this.symbol = tok.getSymbol();
         this.expr = expr;
     }
 
     @Override
-    public void analyze(Map<String, FunctionDecl> funcMap, Map<String, Type> varAndParamMap)
+    public void analyze(SymbolMap<FunctionDecl> funcMap, SymbolMap<Type> varAndParamMap)
         throws SemanticAnalysisException
     {
-        Type LHSType = varAndParamMap.get(this.label);
+        Type LHSType = varAndParamMap.get(this.symbol);
         if (LHSType == null) {
             throw new SemanticAnalysisException(
                     "Can't assign to a variable '" + this.label + "' that is not declared!", this);
@@ -39,35 +45,65 @@ public class LabelAssignmentStatement extends Statement {
 
     @Override
     public void execute(
-            Map<String, FunctionDecl> funcMap,
-            Map<String, Value> varAndParamMap,
+            SymbolMap<FunctionDecl> funcMap,
+            SymbolMap<Value> varAndParamMap,
             Stack<ScopeEnvironment> callStack) throws ExecutionException
     {
-        this.checkNotFuncLabel(this.label, funcMap);
-        Value varVal = this.getVarVal(this.label, callStack, varAndParamMap);
+        // SlotResolver made sure the label is bound to a slot, so the slot
+        // is all there is to look up
         Value newVarVal = this.expr.evaluate(funcMap, varAndParamMap, callStack);
-        this.updateVarVal(this.label, newVarVal, callStack, varAndParamMap);
-    }
-
-    private void checkNotFuncLabel(String label, Map<String, FunctionDecl> funcMap)
-            throws ExecutionException
-    {
-        FunctionDecl funcDecl = funcMap.get(this.label);
-        if (funcDecl != null)
-        {
-            throw new ExecutionException(
-                "Sorry, dude, SPLAT doesn't support functional programming! Can't assign to a function " +
-                "label '" + this.label + "'. Yeah, I know... it fucking sucks...", 
-                this
-            );
-        }
+        this.updateVarVal(this.global, this.slot, newVarVal, callStack, varAndParamMap);
     }
 
     public Expression getExpr() {
         return this.expr;
     }
 
+    public void setExpr(Expression expr) {
+        this.expr = expr;
+    }
+
     public String getLabel() {
         return this.label;
     }
+
+    public int getSymbol() {
+        return this.symbol;
+    }
+
+    @Override
+    public void resolveSlots(SymbolMap<Integer> localSlots, SymbolMap<Integer> globalSlots)
+            throws ExecutionException {
+        this.expr.resolveSlots(localSlots, globalSlots);
+        Integer localSlot = localSlots != null ? localSlots.get(this.symbol) : null;
+        if (localSlot != null) {
+            this.global = false;
+            this.slot = localSlot;
+        } else {
+            Integer globalSlot = globalSlots.get(this.symbol);
+            if (globalSlot == null) {
+                throw new ExecutionException(
+                    "Naaaaah, bro, this can't be... No variable found with the label '" + this.label + 
+                    "' while trying to update the variable value to a new value... Just no words...",
+                    this
+                );
+            }
+            this.global = true;
+            this.slot = globalSlot;
+        }
+    }
+
+    public boolean isGlobal() {
+        return this.global;
+    }
+
+    public int getSlot() {
+        return this.slot;
+    }
+
+    @Override
+    public void shiftOffsets(int delta) {
+        super.shiftOffsets(delta);
+        this.expr.shiftOffsets(delta);
+    }
 }
@@ -1,6 +1,5 @@
 package splat.parser.elements;
 
-import java.util.Map;
 import java.util.Stack;
 
 import splat.lexer.Token;
@@ -8,20 +7,27 @@ import splat.semanticanalyzer.SemanticAnalysisException;
 import splat.executor.Value;
 import splat.executor.ExecutionException;
 import splat.executor.ScopeEnvironment;
+import splat.lang.SymbolMap;
 
 public class LabelExpression extends Expression {
     private String value;
+    private int symbol;
+
+    // Where the variable lives at run time, set by SlotResolver
+    private boolean global;
+    private int slot = -1;
 
     public LabelExpression(Token tok) {
         super(tok);
         this.value = tok.getValue();
+        this.symbol = tok.getSymbol();
     }
     
     @Override
-    public Type analyzeAndGetType(Map<String, FunctionDecl> funcMap, Map<String, Type> varAndParamMap) 
+    public Type analyzeAndGetType(SymbolMap<FunctionDecl> funcMap, SymbolMap<Type> varAndParamMap) 
         throws SemanticAnalysisException
     {
-        Type type = varAndParamMap.get(this.value);
+        Type type = varAndParamMap.get(this.symbol);
         if (type == null) {
             throw new SemanticAnalysisException("Undefined variable: " + this.value, this);
         }
@@ -31,14 +37,47 @@ public class LabelExpression extends Expression {
 
     @Override
     public Value evaluate(
-            Map<String, FunctionDecl> funcMap,
-            Map<String, Value> varAndParamMap,
+            SymbolMap<FunctionDecl> funcMap,
+            SymbolMap<Value> varAndParamMap,
             Stack<ScopeEnvironment> callStack) throws ExecutionException
     {
-        return this.getVarVal(this.value, callStack, varAndParamMap);
+        return this.getVarVal(this.global, this.slot, callStack, varAndParamMap);
     }
 
     public String getValue() {
         return this.value;
     }
+
+    public int getSymbol() {
+        return this.symbol;
+    }
+
+    @Override
+    public void resolveSlots(SymbolMap<Integer> localSlots, SymbolMap<Integer> globalSlots)
+            throws ExecutionException {
+        Integer localSlot = localSlots != null ? localSlots.get(this.symbol) : null;
+        if (localSlot != null) {
+            this.global = false;
+            this.slot = localSlot;
+        } else {
+            Integer globalSlot = globalSlots.get(this.symbol);
+            if (globalSlot == null) {
+                throw new ExecutionException(
+                    "WTF, dude??? Nothing found with the label '" + this.value + 
+                    "'! Your semantic analyzer is FUCKED UP! GO FIX IT!!!",
+                    this
+                );
+            }
+            this.global = true;
+            this.slot = globalSlot;
+        }
+    }
+
+    public boolean isGlobal() {
+        return this.global;
+    }
+
+    public int getSlot() {
+        return this.slot;
+    }
 }
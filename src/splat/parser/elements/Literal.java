@@ -4,7 +4,6 @@ import java.util.List;
 import java.util.Collections;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Map;
 import java.util.Stack;
 
 import splat.lexer.Token;
@@ -16,11 +15,16 @@ import splat.executor.IntegerValue;
 import splat.executor.BoolValue;
 import splat.executor.ExecutionException;
 import splat.executor.ScopeEnvironment;
+import splat.lang.SymbolMap;
 
 public class Literal extends Expression {
     private Type type;
     private String value;
 
+    // The value, made the first time the literal is evaluated rather than
+    // each time
+    private Value constant;
+
     public static final List<String> BOOLEAN_LITERALS = Collections.unmodifiableList(
             new ArrayList<String>(Arrays.asList("true", "false"))
         );
@@ -42,9 +46,21 @@ public class Literal extends Expression {
 
         this.value = tok.getValue();
     }
+
+    /**
+     * Creates the literal a constant expression was folded into, with the
+     * text and position of tok.  Unlike a parsed one, an integer literal
+     * made this way can be negative.
+     */
+    public Literal(Token tok, Value constant) {
+        super(tok);
+        this.type = constant.getType();
+        this.value = tok.getValue();
+        this.constant = constant;
+    }
     
     @Override
-    public Type analyzeAndGetType(Map<String, FunctionDecl> funcMap, Map<String, Type> varAndParamMap) 
+    public Type analyzeAndGetType(SymbolMap<FunctionDecl> funcMap, SymbolMap<Type> varAndParamMap) 
         throws SemanticAnalysisException
     {
         return this.type;
@@ -52,9 +68,17 @@ public class Literal extends Expression {
 
     @Override
     public Value evaluate(
-            Map<String, FunctionDecl> funcMap,
-            Map<String, Value> varAndParamMap,
+            SymbolMap<FunctionDecl> funcMap,
+            SymbolMap<Value> varAndParamMap,
             Stack<ScopeEnvironment> callStack) throws ExecutionException
+    {
+        if (this.constant == null) {
+            this.constant = this.toValue();
+        }
+        return this.constant;
+    }
+
+    private Value toValue() throws ExecutionException
     {
         switch (this.type)
         {
@@ -119,6 +143,10 @@ public class Literal extends Expression {
         }
     }
 
+    public Type getType() {
+        return this.type;
+    }
+
     public String getValue() {
         return this.value;
     }
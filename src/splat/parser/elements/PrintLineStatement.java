@@ -1,6 +1,5 @@
 package splat.parser.elements;
 
-import java.util.Map;
 import java.util.Stack;
 
 import splat.lexer.Token;
@@ -9,6 +8,7 @@ import splat.executor.ReturnFromCall;
 import splat.executor.ExecutionException;
 import splat.executor.ScopeEnvironment;
 import splat.executor.Value;
+import splat.lang.SymbolMap;
 
 public class PrintLineStatement extends Statement {
     public PrintLineStatement(Token tok) {
@@ -16,7 +16,7 @@ public class PrintLineStatement extends Statement {
     }
 
     @Override
-    public void analyze(Map<String, FunctionDecl> funcMap, Map<String, Type> varAndParamMap)
+    public void analyze(SymbolMap<FunctionDecl> funcMap, SymbolMap<Type> varAndParamMap)
         throws SemanticAnalysisException
     {
         // Nothing to analyze here, bro! Good for you! :)
@@ -24,8 +24,8 @@ public class PrintLineStatement extends Statement {
 
     @Override
     public void execute(
-            Map<String, FunctionDecl> funcMap,
-            Map<String, Value> varAndParamMap,
+            SymbolMap<FunctionDecl> funcMap,
+            SymbolMap<Value> varAndParamMap,
             Stack<ScopeEnvironment> callStack) throws ReturnFromCall, ExecutionException
     {
         System.out.println();
@@ -1,6 +1,5 @@
 package splat.parser.elements;
 
-import java.util.Map;
 import java.util.Stack;
 
 import splat.lexer.Token;
@@ -12,6 +11,7 @@ import splat.executor.StringValue;
 import splat.executor.IntegerValue;
 import splat.executor.BoolValue;
 import splat.executor.ScopeEnvironment;
+import splat.lang.SymbolMap;
 
 public class PrintStatement extends Statement {
     private Expression expr;
@@ -22,7 +22,7 @@ public class PrintStatement extends Statement {
     }
 
     @Override
-    public void analyze(Map<String, FunctionDecl> funcMap, Map<String, Type> varAndParamMap)
+    public void analyze(SymbolMap<FunctionDecl> funcMap, SymbolMap<Type> varAndParamMap)
         throws SemanticAnalysisException
     {
         // Well, seems like you can print any type to the console...
@@ -33,8 +33,8 @@ public class PrintStatement extends Statement {
 
     @Override
     public void execute(
-            Map<String, FunctionDecl> funcMap,
-            Map<String, Value> varAndParamMap,
+            SymbolMap<FunctionDecl> funcMap,
+            SymbolMap<Value> varAndParamMap,
             Stack<ScopeEnvironment> callStack) throws ReturnFromCall, ExecutionException
     {
         Value val = this.expr.evaluate(funcMap, varAndParamMap, callStack);
@@ -71,4 +71,20 @@ public class PrintStatement extends Statement {
     public Expression getExpr() {
         return this.expr;
     }
+
+    public void setExpr(Expression expr) {
+        this.expr = expr;
+    }
+
+    @Override
+    public void shiftOffsets(int delta) {
+        super.shiftOffsets(delta);
+        this.expr.shiftOffsets(delta);
+    }
+
+    @Override
+    public void resolveSlots(SymbolMap<Integer> localSlots, SymbolMap<Integer> globalSlots)
+            throws ExecutionException {
+        this.expr.resolveSlots(localSlots, globalSlots);
+    }
 }
@@ -1,6 +1,5 @@
 package splat.parser.elements;
 
-import java.util.Map;
 import java.util.Stack;
 
 import splat.lexer.Token;
@@ -9,6 +8,7 @@ import splat.executor.ReturnFromCall;
 import splat.executor.ExecutionException;
 import splat.executor.Value;
 import splat.executor.ScopeEnvironment;
+import splat.lang.SymbolMap;
 
 public class ReturnStatement extends Statement {
     private Expression expr;
@@ -19,10 +19,10 @@ public class ReturnStatement extends Statement {
     }
 
     @Override
-    public void analyze(Map<String, FunctionDecl> funcMap, Map<String, Type> varAndParamMap)
+    public void analyze(SymbolMap<FunctionDecl> funcMap, SymbolMap<Type> varAndParamMap)
         throws SemanticAnalysisException
     {
-        FunctionDecl funcDecl = funcMap.get(this.getFuncLabel());
+        FunctionDecl funcDecl = funcMap.get(this.getFuncSymbol());
         if (funcDecl == null) { // Assumed the return statement is in the program body not in a funciton.
             // TODO: Wait, can a splat program return something? If so, what specifically? 
             // Maybe int and void?
@@ -64,56 +64,41 @@ public class ReturnStatement extends Statement {
 
     @Override
     public void execute(
-            Map<String, FunctionDecl> funcMap,
-            Map<String, Value> varAndParamMap,
+            SymbolMap<FunctionDecl> funcMap,
+            SymbolMap<Value> varAndParamMap,
             Stack<ScopeEnvironment> callStack) throws ReturnFromCall, ExecutionException
     {
-        FunctionDecl funcDecl = this.getFuncDecl(funcMap);
-
-        Type funcReturnType = funcDecl.getReturnType();
-        if (funcReturnType == null)
-        {
-            throw new ExecutionException(
-                "A function must have a return type!!! Go fix your semantic analyzer, kid!",
-                this
-            );
-        }
-
+        // Analysis made sure this is inside a function and that the value,
+        // if any, has the function's return type
         Value returnVal = null;
-        Type returnExprType = Type.VOID;
         if (this.expr != null) {
             returnVal = this.expr.evaluate(funcMap, varAndParamMap, callStack);
-            returnExprType = returnVal.getType();
-        }
-
-        if (funcReturnType != returnExprType)
-        {
-            throw new ExecutionException(
-                "The return value type '" + returnExprType + 
-                "' doesn't match the function return type '" + funcReturnType + "'",
-                this
-            );
         }
 
         throw new ReturnFromCall(returnVal);
     }
 
-    private FunctionDecl getFuncDecl(Map<String, FunctionDecl> funcMap) throws ExecutionException
-    {
-        FunctionDecl funcDecl = funcMap.get(this.getFuncLabel());
+    public Expression getExpr() {
+        return this.expr;
+    }
 
-        if (funcDecl == null) 
-        {
-            throw new ExecutionException(
-                "Outside function return statement is detected! Or your semantic analyzer is FUCKED UP!", 
-                this
-            );
-        }
+    public void setExpr(Expression expr) {
+        this.expr = expr;
+    }
 
-        return funcDecl;
+    @Override
+    public void shiftOffsets(int delta) {
+        super.shiftOffsets(delta);
+        if (this.expr != null) {
+            this.expr.shiftOffsets(delta);
+        }
     }
 
-    public Expression getExpr() {
-        return this.expr;
+    @Override
+    public void resolveSlots(SymbolMap<Integer> localSlots, SymbolMap<Integer> globalSlots)
+            throws ExecutionException {
+        if (this.expr != null) {
+            this.expr.resolveSlots(localSlots, globalSlots);
+        }
     }
 }
@@ -1,6 +1,5 @@
 package splat.parser.elements;
 
-import java.util.Map;
 import java.util.Stack;
 
 import splat.lexer.Token;
@@ -11,6 +10,7 @@ import splat.executor.BoolValue;
 import splat.executor.IntegerValue;
 import splat.executor.ExecutionException;
 import splat.executor.ScopeEnvironment;
+import splat.lang.SymbolMap;
 
 public class UnaryOpExpression extends Expression {
     private Expression rightExpr;
@@ -23,7 +23,7 @@ public class UnaryOpExpression extends Expression {
     }
     
     @Override
-    public Type analyzeAndGetType(Map<String, FunctionDecl> funcMap, Map<String, Type> varAndParamMap) 
+    public Type analyzeAndGetType(SymbolMap<FunctionDecl> funcMap, SymbolMap<Type> varAndParamMap) 
         throws SemanticAnalysisException
     {
         Type type = this.rightExpr.analyzeAndGetType(funcMap, varAndParamMap);
@@ -32,8 +32,8 @@ public class UnaryOpExpression extends Expression {
 
     @Override
     public Value evaluate(
-            Map<String, FunctionDecl> funcMap,
-            Map<String, Value> varAndParamMap,
+            SymbolMap<FunctionDecl> funcMap,
+            SymbolMap<Value> varAndParamMap,
             Stack<ScopeEnvironment> callStack) throws ExecutionException
     {
         Value rightVal = this.rightExpr.evaluate(funcMap, varAndParamMap, callStack);
@@ -56,7 +56,23 @@ public class UnaryOpExpression extends Expression {
         return this.rightExpr;
     }
 
+    public void setRightExpr(Expression rightExpr) {
+        this.rightExpr = rightExpr;
+    }
+
     public String getOperator() {
         return this.operator;
     }
+
+    @Override
+    public void shiftOffsets(int delta) {
+        super.shiftOffsets(delta);
+        this.rightExpr.shiftOffsets(delta);
+    }
+
+    @Override
+    public void resolveSlots(SymbolMap<Integer> localSlots, SymbolMap<Integer> globalSlots)
+            throws ExecutionException {
+        this.rightExpr.resolveSlots(localSlots, globalSlots);
+    }
 }
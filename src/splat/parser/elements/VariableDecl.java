@@ -5,6 +5,10 @@ import splat.lexer.Token;
 public class VariableDecl extends Declaration {
 
     private Type type;
+
+    // Index in the function's frame, for a local variable,
+    // or among the program variables, set by SlotResolver
+    private int slot = -1;
 	
 	public VariableDecl(Token tok, String label, Type type) {
 		super(tok, label);
@@ -14,6 +18,14 @@ public class VariableDecl extends Declaration {
     public Type getType() {
         return this.type;
     }
+
+    public int getSlot() {
+        return this.slot;
+    }
+
+    public void setSlot(int slot) {
+        this.slot = slot;
+    }
 	
 	public String toString() {
         return this.getLabel() + ": " + this.type;
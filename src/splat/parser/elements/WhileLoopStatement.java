@@ -1,8 +1,6 @@
 package splat.parser.elements;
 
 import java.util.List;
-import java.util.Map;
-import java.util.HashMap;
 import java.util.Stack;
 
 import splat.lexer.Token;
@@ -12,6 +10,7 @@ import splat.executor.ExecutionException;
 import splat.executor.Value;
 import splat.executor.BoolValue;
 import splat.executor.ScopeEnvironment;
+import splat.lang.SymbolMap;
 
 public class WhileLoopStatement extends Statement {
     private Expression expr;
@@ -24,7 +23,7 @@ public class WhileLoopStatement extends Statement {
     }
 
     @Override
-    public void analyze(Map<String, FunctionDecl> funcMap, Map<String, Type> varAndParamMap)
+    public void analyze(SymbolMap<FunctionDecl> funcMap, SymbolMap<Type> varAndParamMap)
         throws SemanticAnalysisException
     {
         Type exprType = this.expr.analyzeAndGetType(funcMap, varAndParamMap);
@@ -40,22 +39,14 @@ public class WhileLoopStatement extends Statement {
 
     @Override
     public void execute(
-            Map<String, FunctionDecl> funcMap,
-            Map<String, Value> varAndParamMap,
+            SymbolMap<FunctionDecl> funcMap,
+            SymbolMap<Value> varAndParamMap,
             Stack<ScopeEnvironment> callStack) throws ReturnFromCall, ExecutionException
     {
         boolean exprEvaluatedToTrue = false;
         do {
+            // Analysis made sure the expression is a Boolean
             Value exprVal = this.expr.evaluate(funcMap, varAndParamMap, callStack);
-            Type exprValType = exprVal.getType();
-            if (exprValType != Type.BOOLEAN)
-            {
-                throw new ExecutionException(
-                    "While-loop statement expression must be 'Boolean' but got '" + exprValType + "'.",
-                    this.expr
-                );
-            }
-
             exprEvaluatedToTrue = ((BoolValue) exprVal).getValue();
             if (exprEvaluatedToTrue)
             {
@@ -74,7 +65,29 @@ public class WhileLoopStatement extends Statement {
         return this.expr;
     }
 
+    public void setExpr(Expression expr) {
+        this.expr = expr;
+    }
+
     public List<Statement> getStmts() {
         return this.stmts;
     }
+
+    @Override
+    public void shiftOffsets(int delta) {
+        super.shiftOffsets(delta);
+        this.expr.shiftOffsets(delta);
+        for (Statement stmt : this.stmts) {
+            stmt.shiftOffsets(delta);
+        }
+    }
+
+    @Override
+    public void resolveSlots(SymbolMap<Integer> localSlots, SymbolMap<Integer> globalSlots)
+            throws ExecutionException {
+        this.expr.resolveSlots(localSlots, globalSlots);
+        for (Statement stmt : this.stmts) {
+            stmt.resolveSlots(localSlots, globalSlots);
+        }
+    }
 }
@@ -0,0 +1,171 @@
+package splat.parser.flat;
+
+import splat.executor.Value;
+import splat.parser.elements.Type;
+
+/**
+ * A whole program packed into a few int arrays instead of a graph of
+ * ASTElement objects.  Every expression and statement is a node index; a
+ * node is a kind and up to three int operands, stored side by side in one
+ * array, and the source offset of its first token sits in another.  The
+ * offsets can be left out altogether for a program already known to be
+ * valid, which only leaves execution errors without a position.  What the
+ * operands mean depends on the kind:
+ *
+ *   LITERAL             constant index
+ *   LOCAL, GLOBAL       variable slot
+ *   NOT, NEG            operand node
+ *   ADD ... EQ          left node, right node
+ *   CALL, CALL_STMT     function index, argument list
+ *   ASSIGN_LOCAL/GLOBAL variable slot, value node
+ *   WHILE               condition node, body list
+ *   IF                  condition node, then list, else list
+ *   PRINT               value node
+ *   RETURN              value node (or -1), enclosing function (or -1)
+ *
+ * A list is an offset into a shared array holding its length followed by
+ * its items.  Local slots index the frame of the enclosing function, which
+ * holds its parameters and then its local variables; global slots index the
+ * program variables.  Build one with FlatASTBuilder.
+ */
+public final class FlatAST {
+
+    public static final int LITERAL = 0;
+    public static final int LOCAL = 1;
+    public static final int GLOBAL = 2;
+    public static final int NOT = 3;
+    public static final int NEG = 4;
+    public static final int ADD = 5;
+    public static final int SUB = 6;
+    public static final int MUL = 7;
+    public static final int DIV = 8;
+    public static final int MOD = 9;
+    public static final int AND = 10;
+    public static final int OR = 11;
+    public static final int LT = 12;
+    public static final int GT = 13;
+    public static final int LE = 14;
+    public static final int GE = 15;
+    public static final int EQ = 16;
+    public static final int CALL = 17;
+
+    public static final int ASSIGN_LOCAL = 18;
+    public static final int ASSIGN_GLOBAL = 19;
+    public static final int WHILE = 20;
+    public static final int IF = 21;
+    public static final int PRINT = 22;
+    public static final int PRINT_LINE = 23;
+    public static final int RETURN = 24;
+    public static final int CALL_STMT = 25;
+
+    static final int NODE_SIZE = 4;
+
+    // Per function: body list, number of parameters, frame types list
+    // (one Type ordinal per slot), return Type ordinal
+    static final int FUNC_SIZE = 4;
+
+    private static final Type[] TYPES = Type.values();
+
+    private final int[] nodes;
+    private final int[] offsets; // null if positions were dropped
+    private final int nodeCount;
+    private final int[] lists;
+    private final Value[] constants;
+    private final int[] funcs;
+    private final int body;
+    private final int globalTypes;
+
+    FlatAST(int[] nodes, int[] offsets, int[] lists, Value[] constants,
+            int[] funcs, int body, int globalTypes)
+    {
+        this.nodes = nodes;
+        this.offsets = offsets;
+        this.nodeCount = nodes.length / NODE_SIZE;
+        this.lists = lists;
+        this.constants = constants;
+        this.funcs = funcs;
+        this.body = body;
+        this.globalTypes = globalTypes;
+    }
+
+    public int kind(int node) {
+        return nodes[node * NODE_SIZE];
+    }
+
+    public int first(int node) {
+        return nodes[node * NODE_SIZE + 1];
+    }
+
+    public int second(int node) {
+        return nodes[node * NODE_SIZE + 2];
+    }
+
+    public int third(int node) {
+        return nodes[node * NODE_SIZE + 3];
+    }
+
+    /**
+     * Returns the source offset of the node, or -1 if positions were dropped.
+     */
+    public int offset(int node) {
+        return offsets != null ? offsets[node] : -1;
+    }
+
+    public boolean hasPositions() {
+        return offsets != null;
+    }
+
+    public int nodeCount() {
+        return nodeCount;
+    }
+
+    public int listSize(int list) {
+        return lists[list];
+    }
+
+    public int listItem(int list, int i) {
+        return lists[list + 1 + i];
+    }
+
+    public Value constant(int i) {
+        return constants[i];
+    }
+
+    /**
+     * Returns the statement list of the program body.
+     */
+    public int body() {
+        return body;
+    }
+
+    /**
+     * Returns a list with the Type ordinal of each program variable.
+     */
+    public int globalTypes() {
+        return globalTypes;
+    }
+
+    public int funcBody(int func) {
+        return funcs[func * FUNC_SIZE];
+    }
+
+    public int funcParamCount(int func) {
+        return funcs[func * FUNC_SIZE + 1];
+    }
+
+    /**
+     * Returns a list with the Type ordinal of each slot in the function's
+     * frame: its parameters, then its local variables.
+     */
+    public int funcFrameTypes(int func) {
+        return funcs[func * FUNC_SIZE + 2];
+    }
+
+    public Type funcReturnType(int func) {
+        return TYPES[funcs[func * FUNC_SIZE + 3]];
+    }
+
+    public static Type type(int ordinal) {
+        return TYPES[ordinal];
+    }
+}
@@ -0,0 +1,322 @@
+package splat.parser.flat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import splat.executor.BoolValue;
+import splat.executor.IntegerValue;
+import splat.executor.StringValue;
+import splat.executor.Value;
+import splat.lang.SymbolMap;
+import splat.parser.elements.ASTElement;
+import splat.parser.elements.BinaryOpExpression;
+import splat.parser.elements.Declaration;
+import splat.parser.elements.Expression;
+import splat.parser.elements.FuncParamDecl;
+import splat.parser.elements.FunctionDecl;
+import splat.parser.elements.IfElseStatement;
+import splat.parser.elements.LabelArgsExpression;
+import splat.parser.elements.LabelArgsStatement;
+import splat.parser.elements.LabelAssignmentStatement;
+import splat.parser.elements.LabelExpression;
+import splat.parser.elements.Literal;
+import splat.parser.elements.PrintLineStatement;
+import splat.parser.elements.PrintStatement;
+import splat.parser.elements.ProgramAST;
+import splat.parser.elements.ReturnStatement;
+import splat.parser.elements.Statement;
+import splat.parser.elements.Type;
+import splat.parser.elements.UnaryOpExpression;
+import splat.parser.elements.VariableDecl;
+import splat.parser.elements.WhileLoopStatement;
+
+/**
+ * Packs a ProgramAST into a FlatAST.  Variable labels are resolved to frame
+ * or global slots and function labels to function indices on the way, so
+ * the program has to have passed semantic analysis first.
+ */
+public class FlatASTBuilder {
+
+    private int[] nodes = new int[64 * FlatAST.NODE_SIZE];
+    private int[] offsets = new int[64];
+    private int nodeCount = 0;
+
+    private int[] lists = new int[64];
+    private int listsSize = 0;
+
+    private final List<Value> constants = new ArrayList<>();
+
+    private final SymbolMap<Integer> funcIndices = new SymbolMap<>();
+    private final SymbolMap<Integer> globalSlots = new SymbolMap<>();
+
+    // Slots of the parameters and local variables of the function being
+    // built, or null in the program body
+    private SymbolMap<Integer> localSlots;
+    private int funcIndex = -1;
+
+    private FlatASTBuilder() {
+    }
+
+    public static FlatAST build(ProgramAST progAST) {
+        return build(progAST, true);
+    }
+
+    /**
+     * Packs the program, leaving out the source offsets of the nodes unless
+     * keepPositions is set.
+     */
+    public static FlatAST build(ProgramAST progAST, boolean keepPositions) {
+        return new FlatASTBuilder().buildProgram(progAST, keepPositions);
+    }
+
+    private FlatAST buildProgram(ProgramAST progAST, boolean keepPositions) {
+
+        List<FunctionDecl> funcDecls = new ArrayList<>();
+        List<Type> globalTypes = new ArrayList<>();
+        for (Declaration decl : progAST.getDecls()) {
+            if (decl instanceof FunctionDecl) {
+                funcIndices.put(decl.getSymbol(), funcDecls.size());
+                funcDecls.add((FunctionDecl) decl);
+            } else if (decl instanceof VariableDecl) {
+                globalSlots.put(decl.getSymbol(), globalTypes.size());
+                globalTypes.add(((VariableDecl) decl).getType());
+            }
+        }
+
+        int[] funcs = new int[funcDecls.size() * FlatAST.FUNC_SIZE];
+        for (int f = 0; f < funcDecls.size(); f++) {
+            FunctionDecl funcDecl = funcDecls.get(f);
+
+            List<Type> frameTypes = new ArrayList<>();
+            localSlots = new SymbolMap<>();
+            for (FuncParamDecl param : funcDecl.getParams()) {
+                localSlots.put(param.getSymbol(), frameTypes.size());
+                frameTypes.add(param.getType());
+            }
+            for (VariableDecl varDecl : funcDecl.getLocalVarDecls()) {
+                localSlots.put(varDecl.getSymbol(), frameTypes.size());
+                frameTypes.add(varDecl.getType());
+            }
+            funcIndex = f;
+
+            int base = f * FlatAST.FUNC_SIZE;
+            funcs[base] = stmtList(funcDecl.getStmts());
+            funcs[base + 1] = funcDecl.getParams().size();
+            funcs[base + 2] = typeList(frameTypes);
+            funcs[base + 3] = funcDecl.getReturnType().ordinal();
+        }
+
+        localSlots = null;
+        funcIndex = -1;
+        int body = stmtList(progAST.getStmts());
+        int globals = typeList(globalTypes);
+
+        return new FlatAST(
+                Arrays.copyOf(nodes, nodeCount * FlatAST.NODE_SIZE),
+                keepPositions ? Arrays.copyOf(offsets, nodeCount) : null,
+                Arrays.copyOf(lists, listsSize),
+                constants.toArray(new Value[0]),
+                funcs,
+                body,
+                globals);
+    }
+
+    private int stmt(Statement stmt) {
+
+        if (stmt instanceof LabelAssignmentStatement) {
+            LabelAssignmentStatement assign = (LabelAssignmentStatement) stmt;
+            int symbol = assign.getSymbol();
+            int value = expr(assign.getExpr());
+            Integer slot = localSlots != null ? localSlots.get(symbol) : null;
+            if (slot != null) {
+                return node(FlatAST.ASSIGN_LOCAL, slot, value, 0, stmt);
+            }
+            return node(FlatAST.ASSIGN_GLOBAL, globalSlot(symbol, stmt), value, 0, stmt);
+
+        } else if (stmt instanceof WhileLoopStatement) {
+            WhileLoopStatement loop = (WhileLoopStatement) stmt;
+            int cond = expr(loop.getExpr());
+            return node(FlatAST.WHILE, cond, stmtList(loop.getStmts()), 0, stmt);
+
+        } else if (stmt instanceof IfElseStatement) {
+            IfElseStatement ifElse = (IfElseStatement) stmt;
+            int cond = expr(ifElse.getBinExpr());
+            int thenList = stmtList(ifElse.getStmts());
+            int elseList = stmtList(ifElse.getElseStmts());
+            return node(FlatAST.IF, cond, thenList, elseList, stmt);
+
+        } else if (stmt instanceof PrintStatement) {
+            int value = expr(((PrintStatement) stmt).getExpr());
+            return node(FlatAST.PRINT, value, 0, 0, stmt);
+
+        } else if (stmt instanceof PrintLineStatement) {
+            return node(FlatAST.PRINT_LINE, 0, 0, 0, stmt);
+
+        } else if (stmt instanceof ReturnStatement) {
+            Expression expr = ((ReturnStatement) stmt).getExpr();
+            int value = expr != null ? expr(expr) : -1;
+            return node(FlatAST.RETURN, value, funcIndex, 0, stmt);
+
+        } else if (stmt instanceof LabelArgsStatement) {
+            LabelArgsStatement call = (LabelArgsStatement) stmt;
+            int func = funcIndex(call.getSymbol(), stmt);
+            return node(FlatAST.CALL_STMT, func, exprList(call.getArgs()), 0, stmt);
+        }
+
+        throw new IllegalArgumentException("Unknown statement: " + stmt.getClass().getSimpleName());
+    }
+
+    private int expr(Expression expr) {
+
+        if (expr instanceof Literal) {
+            return node(FlatAST.LITERAL, constant((Literal) expr), 0, 0, expr);
+
+        } else if (expr instanceof LabelExpression) {
+            int symbol = ((LabelExpression) expr).getSymbol();
+            Integer slot = localSlots != null ? localSlots.get(symbol) : null;
+            if (slot != null) {
+                return node(FlatAST.LOCAL, slot, 0, 0, expr);
+            }
+            return node(FlatAST.GLOBAL, globalSlot(symbol, expr), 0, 0, expr);
+
+        } else if (expr instanceof UnaryOpExpression) {
+            UnaryOpExpression unary = (UnaryOpExpression) expr;
+            int operand = expr(unary.getRightExpr());
+            int kind = unary.getOperator().equals("not") ? FlatAST.NOT : FlatAST.NEG;
+            return node(kind, operand, 0, 0, expr);
+
+        } else if (expr instanceof BinaryOpExpression) {
+            BinaryOpExpression binary = (BinaryOpExpression) expr;
+            int left = expr(binary.getLeftExpr());
+            int right = expr(binary.getRightExpr());
+            return node(binaryKind(binary.getOperator()), left, right, 0, expr);
+
+        } else if (expr instanceof LabelArgsExpression) {
+            LabelArgsExpression call = (LabelArgsExpression) expr;
+            int func = funcIndex(call.getSymbol(), expr);
+            return node(FlatAST.CALL, func, exprList(call.getArgs()), 0, expr);
+        }
+
+        throw new IllegalArgumentException("Unknown expression: " + expr.getClass().getSimpleName());
+    }
+
+    private static int binaryKind(String operator) {
+        switch (operator) {
+            case "+": return FlatAST.ADD;
+            case "-": return FlatAST.SUB;
+            case "*": return FlatAST.MUL;
+            case "/": return FlatAST.DIV;
+            case "%": return FlatAST.MOD;
+            case "and": return FlatAST.AND;
+            case "or": return FlatAST.OR;
+            case "<": return FlatAST.LT;
+            case ">": return FlatAST.GT;
+            case "<=": return FlatAST.LE;
+            case ">=": return FlatAST.GE;
+            case "==": return FlatAST.EQ;
+            default:
+                throw new IllegalArgumentException("Unknown binary operator: " + operator);
+        }
+    }
+
+    /*
+     * Literals were checked by the parser, so their values are made once
+     * here rather than every time they are evaluated.
+     */
+    private int constant(Literal literal) {
+        String value = literal.getValue();
+        Value constant;
+        switch (literal.getType()) {
+            case STRING:
+                constant = new StringValue(value);
+                break;
+            case INTEGER:
+                constant = new IntegerValue(Integer.parseInt(value));
+                break;
+            default:
+                constant = new BoolValue(Boolean.parseBoolean(value));
+                break;
+        }
+        constants.add(constant);
+        return constants.size() - 1;
+    }
+
+    private int globalSlot(int symbol, ASTElement elem) {
+        Integer slot = globalSlots.get(symbol);
+        if (slot == null) {
+            throw new IllegalStateException("Unresolved variable at offset " + elem.getOffset()
+                    + "; analyze the program first");
+        }
+        return slot;
+    }
+
+    private int funcIndex(int symbol, ASTElement elem) {
+        Integer func = funcIndices.get(symbol);
+        if (func == null) {
+            throw new IllegalStateException("Unresolved function at offset " + elem.getOffset()
+                    + "; analyze the program first");
+        }
+        return func;
+    }
+
+    private int node(int kind, int first, int second, int third, ASTElement elem) {
+        if (nodeCount == offsets.length) {
+            nodes = Arrays.copyOf(nodes, nodes.length * 2);
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+        }
+
+        int base = nodeCount * FlatAST.NODE_SIZE;
+        nodes[base] = kind;
+        nodes[base + 1] = first;
+        nodes[base + 2] = second;
+        nodes[base + 3] = third;
+        offsets[nodeCount] = elem.getOffset();
+        return nodeCount++;
+    }
+
+    /*
+     * The items of a list are built before the list itself is written, so
+     * the lists nested in them never interleave with it.
+     */
+    private int stmtList(List<Statement> stmts) {
+        if (stmts == null) {
+            return list(new int[0]);
+        }
+
+        int[] items = new int[stmts.size()];
+        for (int i = 0; i < items.length; i++) {
+            items[i] = stmt(stmts.get(i));
+        }
+        return list(items);
+    }
+
+    private int exprList(List<Expression> exprs) {
+        int[] items = new int[exprs.size()];
+        for (int i = 0; i < items.length; i++) {
+            items[i] = expr(exprs.get(i));
+        }
+        return list(items);
+    }
+
+    private int typeList(List<Type> types) {
+        int[] items = new int[types.size()];
+        for (int i = 0; i < items.length; i++) {
+            items[i] = types.get(i).ordinal();
+        }
+        return list(items);
+    }
+
+    private int list(int[] items) {
+        int n = items.length;
+        while (lists.length < listsSize + n + 1) {
+            lists = Arrays.copyOf(lists, lists.length * 2);
+        }
+
+        int list = listsSize;
+        lists[listsSize++] = n;
+        System.arraycopy(items, 0, lists, listsSize, n);
+        listsSize += n;
+        return list;
+    }
+}
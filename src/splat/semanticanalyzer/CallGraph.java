@@ -0,0 +1,492 @@
+package splat.semanticanalyzer;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import splat.lang.SymbolMap;
+import splat.parser.elements.Declaration;
+import splat.parser.elements.Expression;
+import splat.parser.elements.FuncParamDecl;
+import splat.parser.elements.FunctionDecl;
+import splat.parser.elements.IfElseStatement;
+import splat.parser.elements.LabelArgsExpression;
+import splat.parser.elements.LabelArgsStatement;
+import splat.parser.elements.LabelAssignmentStatement;
+import splat.parser.elements.ProgramAST;
+import splat.parser.elements.ReturnStatement;
+import splat.parser.elements.Statement;
+import splat.parser.elements.BinaryOpExpression;
+import splat.parser.elements.PrintLineStatement;
+import splat.parser.elements.PrintStatement;
+import splat.parser.elements.UnaryOpExpression;
+import splat.parser.elements.VariableDecl;
+import splat.parser.elements.WhileLoopStatement;
+
+/**
+ * Which functions of a checked program call which, grouped into strongly
+ * connected components to find recursion, and what effects each function
+ * can have once everything it calls is taken into account.  A function
+ * with no effects is pure: calling it only computes its return value.
+ *
+ * Components are numbered callees first, so a component only calls
+ * components numbered lower than itself, or itself if it is recursive.
+ */
+public class CallGraph {
+
+	public enum Effect {
+		/** Assigns to a program variable */
+		WRITES_GLOBALS,
+		/** Prints to the console */
+		PRINTS
+	}
+
+	private static final Effect[] EFFECTS = Effect.values();
+
+	private final SymbolMap<FunctionDecl> funcMap;
+
+	// Per function, in declaration order
+	private final int[][] callees;
+	private final int[][] callers;
+	private final int[] ownEffects;
+	private final int[] effects;
+	private final int[] component;
+	private final boolean[] recursive;
+
+	// Functions of each component, callees first
+	private final List<int[]> components = new ArrayList<>();
+
+	/**
+	 * Builds the call graph of the program's functions.
+	 */
+	public CallGraph(ProgramAST progAST) {
+		this(funcMapOf(progAST));
+	}
+
+	/*
+	 * funcMap has the functions in declaration order, as SemanticAnalyzer
+	 * keeps them
+	 */
+	CallGraph(SymbolMap<FunctionDecl> funcMap) {
+		this.funcMap = funcMap;
+		int numFuncs = funcMap.size();
+		this.callees = new int[numFuncs][];
+		this.ownEffects = new int[numFuncs];
+
+		BodyScanner scanner = new BodyScanner(numFuncs);
+		for (int i = 0; i < numFuncs; i++) {
+			callees[i] = scanner.scan(i, funcMap.valueAt(i));
+			ownEffects[i] = scanner.effects;
+		}
+
+		this.callers = invert(callees);
+		this.effects = new int[numFuncs];
+		this.component = new int[numFuncs];
+		this.recursive = new boolean[numFuncs];
+		findComponents();
+	}
+
+	private static SymbolMap<FunctionDecl> funcMapOf(ProgramAST progAST) {
+		SymbolMap<FunctionDecl> funcMap = new SymbolMap<>();
+		for (Declaration decl : progAST.getDecls()) {
+			if (decl instanceof FunctionDecl && !funcMap.containsKey(decl.getSymbol())) {
+				funcMap.put(decl.getSymbol(), (FunctionDecl)decl);
+			}
+		}
+		return funcMap;
+	}
+
+	public int size() {
+		return funcMap.size();
+	}
+
+	/**
+	 * Returns the functions in declaration order.
+	 */
+	public List<FunctionDecl> getFunctions() {
+		List<FunctionDecl> funcs = new ArrayList<>(funcMap.size());
+		for (FunctionDecl funcDecl : funcMap.values()) {
+			funcs.add(funcDecl);
+		}
+		return Collections.unmodifiableList(funcs);
+	}
+
+	/**
+	 * Returns the functions funcDecl calls, each once, in the order of
+	 * their first call.
+	 */
+	public List<FunctionDecl> getCallees(FunctionDecl funcDecl) {
+		return decls(callees[indexOf(funcDecl)]);
+	}
+
+	/**
+	 * Returns the functions that call funcDecl, in declaration order.
+	 */
+	public List<FunctionDecl> getCallers(FunctionDecl funcDecl) {
+		return decls(callers[indexOf(funcDecl)]);
+	}
+
+	/**
+	 * Returns the effects of funcDecl and of everything it calls, directly
+	 * or not.
+	 */
+	public Set<Effect> getEffects(FunctionDecl funcDecl) {
+		return toSet(effects[indexOf(funcDecl)]);
+	}
+
+	public boolean isPure(FunctionDecl funcDecl) {
+		return effects[indexOf(funcDecl)] == 0;
+	}
+
+	/**
+	 * Whether funcDecl can end up calling itself.
+	 */
+	public boolean isRecursive(FunctionDecl funcDecl) {
+		return recursive[indexOf(funcDecl)];
+	}
+
+	public int getComponent(FunctionDecl funcDecl) {
+		return component[indexOf(funcDecl)];
+	}
+
+	/**
+	 * Returns the strongly connected components, callees first, each with
+	 * its functions in declaration order.
+	 */
+	public List<List<FunctionDecl>> getComponents() {
+		List<List<FunctionDecl>> result = new ArrayList<>(components.size());
+		for (int[] members : components) {
+			result.add(decls(members));
+		}
+		return result;
+	}
+
+	/**
+	 * Prints each function with its effects and the functions it calls, in
+	 * declaration order.
+	 */
+	public void dump(PrintStream out) {
+		int numPure = 0;
+		int numRecursive = 0;
+
+		for (int i = 0; i < funcMap.size(); i++) {
+			FunctionDecl funcDecl = funcMap.valueAt(i);
+
+			StringBuilder sb = new StringBuilder();
+			sb.append(funcDecl.getLabel()).append(": ");
+			if (effects[i] == 0) {
+				sb.append("pure");
+				numPure++;
+			} else {
+				sb.append(describe(effects[i]));
+			}
+			if (recursive[i]) {
+				sb.append(", recursive");
+				numRecursive++;
+			}
+			sb.append(" (component ").append(component[i]).append(')');
+			out.println(sb);
+
+			if (callees[i].length > 0) {
+				sb.setLength(0);
+				sb.append("    calls: ");
+				for (int c = 0; c < callees[i].length; c++) {
+					if (c > 0) {
+						sb.append(", ");
+					}
+					sb.append(funcMap.valueAt(callees[i][c]).getLabel());
+				}
+				out.println(sb);
+			}
+		}
+
+		out.println(funcMap.size() + " functions, " + numPure + " pure, " + numRecursive
+				+ " recursive, " + components.size() + " components");
+	}
+
+	private int indexOf(FunctionDecl funcDecl) {
+		int i = funcMap.indexOf(funcDecl.getSymbol());
+		if (i < 0) {
+			throw new IllegalArgumentException("Not a function of this program: " + funcDecl.getLabel());
+		}
+		return i;
+	}
+
+	private List<FunctionDecl> decls(int[] indices) {
+		List<FunctionDecl> decls = new ArrayList<>(indices.length);
+		for (int i : indices) {
+			decls.add(funcMap.valueAt(i));
+		}
+		return Collections.unmodifiableList(decls);
+	}
+
+	private static Set<Effect> toSet(int bits) {
+		Set<Effect> set = EnumSet.noneOf(Effect.class);
+		for (Effect effect : EFFECTS) {
+			if ((bits & bit(effect)) != 0) {
+				set.add(effect);
+			}
+		}
+		return Collections.unmodifiableSet(set);
+	}
+
+	private static String describe(int bits) {
+		StringBuilder sb = new StringBuilder();
+		for (Effect effect : toSet(bits)) {
+			if (sb.length() > 0) {
+				sb.append(", ");
+			}
+			sb.append(effect.name().toLowerCase().replace('_', ' '));
+		}
+		return sb.toString();
+	}
+
+	private static int bit(Effect effect) {
+		return 1 << effect.ordinal();
+	}
+
+	private static int[][] invert(int[][] edges) {
+		int[] counts = new int[edges.length];
+		for (int[] targets : edges) {
+			for (int t : targets) {
+				counts[t]++;
+			}
+		}
+		int[][] inverted = new int[edges.length][];
+		for (int i = 0; i < edges.length; i++) {
+			inverted[i] = new int[counts[i]];
+			counts[i] = 0;
+		}
+		for (int i = 0; i < edges.length; i++) {
+			for (int t : edges[i]) {
+				inverted[t][counts[t]++] = i;
+			}
+		}
+		return inverted;
+	}
+
+	/*
+	 * Tarjan's algorithm, with an explicit stack since call chains in
+	 * generated programs can be far deeper than the thread stack allows.
+	 * A component is complete only after everything it calls is, so its
+	 * effects can be summed up right away.
+	 */
+	private void findComponents() {
+		int numFuncs = funcMap.size();
+		int[] index = new int[numFuncs];
+		int[] low = new int[numFuncs];
+		int[] nextEdge = new int[numFuncs];
+		boolean[] onStack = new boolean[numFuncs];
+		int[] stack = new int[numFuncs];
+		int[] path = new int[numFuncs];
+		int stackSize = 0;
+		int nextIndex = 0;
+		Arrays.fill(index, -1);
+
+		for (int root = 0; root < numFuncs; root++) {
+			if (index[root] >= 0) {
+				continue;
+			}
+
+			int pathSize = 0;
+			path[pathSize++] = root;
+			index[root] = low[root] = nextIndex++;
+			stack[stackSize++] = root;
+			onStack[root] = true;
+
+			while (pathSize > 0) {
+				int v = path[pathSize - 1];
+
+				if (nextEdge[v] < callees[v].length) {
+					int w = callees[v][nextEdge[v]++];
+					if (index[w] < 0) {
+						path[pathSize++] = w;
+						index[w] = low[w] = nextIndex++;
+						stack[stackSize++] = w;
+						onStack[w] = true;
+					} else if (onStack[w]) {
+						low[v] = Math.min(low[v], index[w]);
+					}
+					continue;
+				}
+
+				pathSize--;
+				if (pathSize > 0) {
+					int parent = path[pathSize - 1];
+					low[parent] = Math.min(low[parent], low[v]);
+				}
+
+				if (low[v] == index[v]) {
+					int start = stackSize;
+					do {
+						start--;
+					} while (stack[start] != v);
+
+					int[] members = Arrays.copyOfRange(stack, start, stackSize);
+					Arrays.sort(members);
+					for (int m : members) {
+						onStack[m] = false;
+					}
+					stackSize = start;
+					completeComponent(members);
+				}
+			}
+		}
+	}
+
+	private void completeComponent(int[] members) {
+		int id = components.size();
+		components.add(members);
+
+		int bits = 0;
+		for (int m : members) {
+			component[m] = id;
+		}
+		for (int m : members) {
+			bits |= ownEffects[m];
+			for (int c : callees[m]) {
+				if (component[c] != id) {
+					bits |= effects[c];
+				}
+			}
+		}
+
+		for (int m : members) {
+			effects[m] = bits;
+			recursive[m] = members.length > 1 || contains(callees[m], m);
+		}
+	}
+
+	private static boolean contains(int[] values, int value) {
+		for (int v : values) {
+			if (v == value) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/*
+	 * Collects the calls and the direct effects of one function body
+	 */
+	private class BodyScanner {
+		// Which function last called each function, to list callees once
+		private final int[] calledBy;
+		private int[] found = new int[8];
+		private int numFound;
+		private int caller;
+		private SymbolMap<Boolean> locals;
+		int effects;
+
+		BodyScanner(int numFuncs) {
+			this.calledBy = new int[numFuncs];
+			Arrays.fill(calledBy, -1);
+		}
+
+		int[] scan(int caller, FunctionDecl funcDecl) {
+			this.caller = caller;
+			this.numFound = 0;
+			this.effects = 0;
+			this.locals = new SymbolMap<>(
+					funcDecl.getParams().size() + funcDecl.getLocalVarDecls().size());
+			for (FuncParamDecl param : funcDecl.getParams()) {
+				locals.put(param.getSymbol(), Boolean.TRUE);
+			}
+			for (VariableDecl varDecl : funcDecl.getLocalVarDecls()) {
+				locals.put(varDecl.getSymbol(), Boolean.TRUE);
+			}
+
+			stmtList(funcDecl.getStmts());
+			return Arrays.copyOf(found, numFound);
+		}
+
+		private void stmtList(List<Statement> stmts) {
+			if (stmts == null) {
+				return;
+			}
+			for (Statement stmt : stmts) {
+				stmt(stmt);
+			}
+		}
+
+		private void stmt(Statement stmt) {
+
+			if (stmt instanceof LabelAssignmentStatement) {
+				LabelAssignmentStatement assign = (LabelAssignmentStatement) stmt;
+				if (!locals.containsKey(assign.getSymbol())) {
+					effects |= bit(Effect.WRITES_GLOBALS);
+				}
+				expr(assign.getExpr());
+
+			} else if (stmt instanceof WhileLoopStatement) {
+				WhileLoopStatement loop = (WhileLoopStatement) stmt;
+				expr(loop.getExpr());
+				stmtList(loop.getStmts());
+
+			} else if (stmt instanceof IfElseStatement) {
+				IfElseStatement ifElse = (IfElseStatement) stmt;
+				expr(ifElse.getBinExpr());
+				stmtList(ifElse.getStmts());
+				stmtList(ifElse.getElseStmts());
+
+			} else if (stmt instanceof PrintStatement) {
+				effects |= bit(Effect.PRINTS);
+				expr(((PrintStatement) stmt).getExpr());
+
+			} else if (stmt instanceof PrintLineStatement) {
+				effects |= bit(Effect.PRINTS);
+
+			} else if (stmt instanceof ReturnStatement) {
+				Expression expr = ((ReturnStatement) stmt).getExpr();
+				if (expr != null) {
+					expr(expr);
+				}
+
+			} else if (stmt instanceof LabelArgsStatement) {
+				LabelArgsStatement call = (LabelArgsStatement) stmt;
+				call(call.getSymbol());
+				for (Expression arg : call.getArgs()) {
+					expr(arg);
+				}
+			}
+		}
+
+		private void expr(Expression expr) {
+
+			if (expr instanceof UnaryOpExpression) {
+				expr(((UnaryOpExpression) expr).getRightExpr());
+
+			} else if (expr instanceof BinaryOpExpression) {
+				BinaryOpExpression binary = (BinaryOpExpression) expr;
+				expr(binary.getLeftExpr());
+				expr(binary.getRightExpr());
+
+			} else if (expr instanceof LabelArgsExpression) {
+				LabelArgsExpression call = (LabelArgsExpression) expr;
+				call(call.getSymbol());
+				for (Expression arg : call.getArgs()) {
+					expr(arg);
+				}
+			}
+		}
+
+		private void call(int symbol) {
+			int c = funcMap.indexOf(symbol);
+			if (c < 0) {
+				return;
+			}
+			if (calledBy[c] == caller) {
+				return;
+			}
+			calledBy[c] = caller;
+			if (numFound == found.length) {
+				found = Arrays.copyOf(found, numFound * 2);
+			}
+			found[numFound++] = c;
+		}
+	}
+}
@@ -6,7 +6,11 @@ import splat.parser.elements.ASTElement;
 public class SemanticAnalysisException extends SplatException {
 	
 	public SemanticAnalysisException(String msg, ASTElement elem) {
-		super(msg, elem.getLine(), elem.getColumn());
+		super(msg, elem.getOffset());
+	}
+	
+	public SemanticAnalysisException(String msg, int offset) {
+		super(msg, offset);
 	}
 	
 	public SemanticAnalysisException(String msg, int line, int column) {
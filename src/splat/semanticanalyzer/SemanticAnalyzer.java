@@ -1,165 +1,351 @@
-package splat.semanticanalyzer;
-
-import java.util.HashSet;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Set;
-
-import splat.parser.elements.Declaration;
-import splat.parser.elements.FunctionDecl;
-import splat.parser.elements.FuncParamDecl;
-import splat.parser.elements.ProgramAST;
-import splat.parser.elements.Statement;
-import splat.parser.elements.ReturnStatement;
-import splat.parser.elements.IfElseStatement;
-import splat.parser.elements.Type;
-import splat.parser.elements.VariableDecl;
-
-public class SemanticAnalyzer {
-
-	private ProgramAST progAST;
-	
-	private Map<String, FunctionDecl> funcMap = new HashMap<>();
-	private Map<String, Type> progVarMap = new HashMap<>();
-	
-	public SemanticAnalyzer(ProgramAST progAST) {
-		this.progAST = progAST;
-	}
-
-	public void analyze() throws SemanticAnalysisException {
-		
-		// Checks to make sure we don't use the same labels more than once
-		// for our program functions and variables 
-		checkNoDuplicateProgLabels();
-		
-		// This sets the maps that will be needed later when we need to
-		// typecheck variable references and function calls in the 
-		// program body
-		setProgVarAndFuncMaps();
-		
-		// Perform semantic analysis on the functions
-		for (FunctionDecl funcDecl : funcMap.values()) {	
-			analyzeFuncDecl(funcDecl);
-		}
-		
-		// Perform semantic analysis on the program body
-		for (Statement stmt : progAST.getStmts()) {
-			stmt.analyze(funcMap, progVarMap);
-		}
-		
-	}
-
-	private void analyzeFuncDecl(FunctionDecl funcDecl) throws SemanticAnalysisException {
-		
-		// Checks to make sure we don't use the same labels more than once
-		// among our function parameters, local variables, and function names
-		checkNoDuplicateFuncLabels(funcDecl);
-		
-		// Get the types of the parameters and local variables
-		Map<String, Type> varAndParamMap = getVarAndParamMap(funcDecl);
-		
-		// Perform semantic analysis on the function body
-		for (Statement stmt : funcDecl.getStmts()) {
-			stmt.analyze(funcMap, varAndParamMap);
-		}
-
-        if (funcDecl.getReturnType() != Type.VOID) {
-            int numStmts = funcDecl.getStmts().size();
-            if (numStmts == 0) {
-                throw new SemanticAnalysisException(
-                        "A function with a non void return type can't have an empty body!", funcDecl);
-            }
-
-            Statement lastStmt = funcDecl.getStmts().get(numStmts - 1);
-            if (!(lastStmt instanceof ReturnStatement)) {
-                if (lastStmt instanceof IfElseStatement) {
-                    IfElseStatement lastIfElseStmt = (IfElseStatement) lastStmt;
-                    if (!lastIfElseStmt.returns()) {
-                        throw new SemanticAnalysisException(
-                                "Missing a return statement in the if-else construct!", lastIfElseStmt);
-                    }
-                } else {
-                    // TODO: You may want to check if the last statement is a while-loop statement and
-                    // that it's condition expression is always true.
-                    throw new SemanticAnalysisException("Missing a return statement at the end of the " +
-                            "funciton body.", lastStmt);
-                }
-            }
-        }
-	}
-	
-	
-    /*
-     * Returns a map of function parameters and local variables of the function.
-     */
-	private Map<String, Type> getVarAndParamMap(FunctionDecl funcDecl) {
-		
-        Map<String, Type> vpMap = new HashMap<>();
-        for (FuncParamDecl param : funcDecl.getParams()) {
-            vpMap.put(param.getLabel(), param.getType());
-        }
-
-        for (VariableDecl varDecl : funcDecl.getLocalVarDecls()) {
-            vpMap.put(varDecl.getLabel(), varDecl.getType());
-        }
-
-		return vpMap;
-	}
-
-	private void checkNoDuplicateFuncLabels(FunctionDecl funcDecl) throws SemanticAnalysisException 
-    {
-        Set<String> labels = new HashSet<>(funcMap.keySet());
-
-        for (FuncParamDecl param : funcDecl.getParams()) {
-            String label = param.getLabel();
-            if (labels.contains(label)) {
-                throw new SemanticAnalysisException(
-                        "Cannot have duplicate label '" + label + "' in a function", funcDecl);
-            }
-            labels.add(label);
-        }
-
-        for (VariableDecl varDecl : funcDecl.getLocalVarDecls()) {
-            String label = varDecl.getLabel();
-            if (labels.contains(label)) {
-                throw new SemanticAnalysisException(
-                        "Cannot have duplicate label '" + label + "' in a function.", funcDecl);
-            }
-            labels.add(label);
-        }
-	}
-	
-	private void checkNoDuplicateProgLabels() throws SemanticAnalysisException {
-		
-		Set<String> labels = new HashSet<String>();
-		
- 		for (Declaration decl : progAST.getDecls()) {
- 			String label = decl.getLabel().toString();
- 			
-			if (labels.contains(label)) {
-				throw new SemanticAnalysisException("Cannot have duplicate label '"
-						+ label + "' in program", decl);
-			} else {
-				labels.add(label);
-			}
-			
-		}
-	}
-	
-	private void setProgVarAndFuncMaps() {
-		
-		for (Declaration decl : progAST.getDecls()) {
-
-			String label = decl.getLabel().toString();
-			
-			if (decl instanceof FunctionDecl) {
-				FunctionDecl funcDecl = (FunctionDecl)decl;
-				funcMap.put(label, funcDecl);
-				
-			} else if (decl instanceof VariableDecl) {
-				VariableDecl varDecl = (VariableDecl)decl;
-				progVarMap.put(label, varDecl.getType());
-			}
-		}
-	}
-}
+package splat.semanticanalyzer;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import splat.cache.AnalysisCache;
+import splat.lang.SymbolMap;
+import splat.lang.SymbolScope;
+import splat.parser.elements.Declaration;
+import splat.parser.elements.FunctionDecl;
+import splat.parser.elements.FuncParamDecl;
+import splat.parser.elements.ProgramAST;
+import splat.parser.elements.Statement;
+import splat.parser.elements.ReturnStatement;
+import splat.parser.elements.IfElseStatement;
+import splat.parser.elements.Type;
+import splat.parser.elements.VariableDecl;
+
+/**
+ * Checks a parsed program.  Function bodies only read the program level
+ * maps, so in programs with many functions they are checked as separate
+ * ForkJoin tasks.  If several functions have errors, the one declared first
+ * is reported, just as a check in declaration order would.
+ */
+public class SemanticAnalyzer {
+
+	/** Programs with fewer functions than this are checked sequentially. */
+	public static final int MIN_FUNCTIONS = 256;
+
+	private static final int MIN_BATCH_FUNCTIONS = 32;
+
+	private ProgramAST progAST;
+	private final ForkJoinPool pool;
+	private final int minFunctions;
+	private AnalysisCache analysisCache = null;
+	
+	// Source bytes each function spans, in funcMap order, when caching
+	private int[] funcSizes;
+	
+	private SymbolMap<FunctionDecl> funcMap = new SymbolMap<>();
+	private SymbolMap<Type> progVarMap = new SymbolMap<>();
+	
+	// Every program level label, frozen once the declarations are checked.
+	// Each function's scope is chained to it rather than copying it.
+	private SymbolScope<Declaration> globalScope;
+	
+	private CallGraph callGraph = null;
+	
+	public SemanticAnalyzer(ProgramAST progAST) {
+		this(progAST, ForkJoinPool.commonPool());
+	}
+
+	public SemanticAnalyzer(ProgramAST progAST, ForkJoinPool pool) {
+		this(progAST, pool, MIN_FUNCTIONS);
+	}
+
+	SemanticAnalyzer(ProgramAST progAST, ForkJoinPool pool, int minFunctions) {
+		this.progAST = progAST;
+		this.pool = pool;
+		this.minFunctions = minFunctions;
+	}
+
+	/**
+	 * Skips the functions the cache already has an outcome for, and records
+	 * the outcome of the rest.
+	 */
+	public void setAnalysisCache(AnalysisCache analysisCache) {
+		this.analysisCache = analysisCache;
+	}
+
+	public void analyze() throws SemanticAnalysisException {
+		
+		analyzeDecls();
+		
+		// Perform semantic analysis on the program body
+		for (Statement stmt : progAST.getStmts()) {
+			analyzeStmt(stmt);
+		}
+		
+	}
+
+	/**
+	 * Checks the declarations and the function bodies, but not the program
+	 * body, whose statements can then be passed to analyzeStmt one by one.
+	 */
+	public void analyzeDecls() throws SemanticAnalysisException {
+		
+		// Checks to make sure we don't use the same labels more than once
+		// for our program functions and variables 
+		checkNoDuplicateProgLabels();
+		
+		// This sets the maps that will be needed later when we need to
+		// typecheck variable references and function calls in the 
+		// program body
+		setProgVarAndFuncMaps();
+		
+		// Perform semantic analysis on the functions
+		if (funcMap.size() < minFunctions || pool.getParallelism() <= 1) {
+			for (int i = 0; i < funcMap.size(); i++) {	
+				checkFuncDecl(i);
+			}
+		} else {
+			analyzeFuncDeclsInParallel();
+		}
+	}
+
+	/*
+	 * Checks every function on the pool and throws what checking them in
+	 * declaration order would have thrown first.  Functions after one that
+	 * failed can be skipped, but the ones before it still have to be checked
+	 * in case one of them fails too.
+	 */
+	private void analyzeFuncDeclsInParallel() throws SemanticAnalysisException {
+		
+		int numFuncs = funcMap.size();
+		Throwable[] failures = new Throwable[numFuncs];
+		AtomicInteger firstFailed = new AtomicInteger(numFuncs);
+		int batchSize = Math.max(MIN_BATCH_FUNCTIONS, numFuncs / (pool.getParallelism() * 4));
+		
+		pool.invoke(new AnalyzeFuncDecls(failures, firstFailed, batchSize, 0, numFuncs));
+		
+		int first = firstFailed.get();
+		if (first == numFuncs) {
+			return;
+		}
+		Throwable failure = failures[first];
+		if (failure instanceof SemanticAnalysisException) {
+			throw (SemanticAnalysisException) failure;
+		} else if (failure instanceof RuntimeException) {
+			throw (RuntimeException) failure;
+		} else {
+			throw (Error) failure;
+		}
+	}
+
+	/**
+	 * Checks a statement of the program body.
+	 */
+	public void analyzeStmt(Statement stmt) throws SemanticAnalysisException {
+		stmt.analyze(funcMap, progVarMap);
+	}
+
+	/**
+	 * Returns the call graph of the program's functions, with their
+	 * effects, built the first time it is asked for.  Only valid once
+	 * analyzeDecls has passed.
+	 */
+	public CallGraph getCallGraph() {
+		if (callGraph == null) {
+			callGraph = new CallGraph(funcMap);
+		}
+		return callGraph;
+	}
+
+	/*
+	 * Analyzes the i-th function, unless the cache knows how that turns out
+	 */
+	private void checkFuncDecl(int i) throws SemanticAnalysisException {
+		
+		FunctionDecl funcDecl = funcMap.valueAt(i);
+		if (analysisCache == null || funcSizes[i] < AnalysisCache.MIN_FUNCTION_BYTES) {
+			analyzeFuncDecl(funcDecl);
+			return;
+		}
+		
+		AnalysisCache.Key key = analysisCache.key(funcDecl, funcMap);
+		AnalysisCache.Result result = analysisCache.get(key);
+		if (result == null) {
+			try {
+				analyzeFuncDecl(funcDecl);
+			} catch (SemanticAnalysisException ex) {
+				analysisCache.put(key, new AnalysisCache.Result(
+						ex.getMessage(), ex.getOffset() - funcDecl.getOffset()));
+				throw ex;
+			}
+			analysisCache.put(key, AnalysisCache.Result.PASSED);
+			
+		} else if (!result.passed()) {
+			throw new SemanticAnalysisException(result.getMessage(),
+					funcDecl.getOffset() + result.getOffset());
+		}
+	}
+
+	private void analyzeFuncDecl(FunctionDecl funcDecl) throws SemanticAnalysisException {
+		
+		// Checks to make sure we don't use the same labels more than once
+		// among our function parameters, local variables, and function names,
+		// and gets their types
+		SymbolMap<Type> varAndParamMap = getVarAndParamMap(funcDecl);
+		
+		// Perform semantic analysis on the function body
+		for (Statement stmt : funcDecl.getStmts()) {
+			stmt.analyze(funcMap, varAndParamMap);
+		}
+
+        if (funcDecl.getReturnType() != Type.VOID) {
+            int numStmts = funcDecl.getStmts().size();
+            if (numStmts == 0) {
+                throw new SemanticAnalysisException(
+                        "A function with a non void return type can't have an empty body!", funcDecl);
+            }
+
+            Statement lastStmt = funcDecl.getStmts().get(numStmts - 1);
+            if (!(lastStmt instanceof ReturnStatement)) {
+                if (lastStmt instanceof IfElseStatement) {
+                    IfElseStatement lastIfElseStmt = (IfElseStatement) lastStmt;
+                    if (!lastIfElseStmt.returns()) {
+                        throw new SemanticAnalysisException(
+                                "Missing a return statement in the if-else construct!", lastIfElseStmt);
+                    }
+                } else {
+                    // TODO: You may want to check if the last statement is a while-loop statement and
+                    // that it's condition expression is always true.
+                    throw new SemanticAnalysisException("Missing a return statement at the end of the " +
+                            "funciton body.", lastStmt);
+                }
+            }
+        }
+	}
+	
+	
+    /*
+     * Returns a map of function parameters and local variables of the function,
+     * checking that none of them reuses a label of the function or a function
+     * name.  Both the scope and the map only hold the function's own labels.
+     */
+	private SymbolMap<Type> getVarAndParamMap(FunctionDecl funcDecl) throws SemanticAnalysisException {
+		
+        int numLabels = funcDecl.getParams().size() + funcDecl.getLocalVarDecls().size();
+        SymbolScope<Declaration> scope = new SymbolScope<>(globalScope, numLabels);
+        SymbolMap<Type> vpMap = new SymbolMap<>(numLabels);
+
+        for (FuncParamDecl param : funcDecl.getParams()) {
+            if (!declareInFunction(scope, param)) {
+                throw new SemanticAnalysisException(
+                        "Cannot have duplicate label '" + param.getLabel() + "' in a function", funcDecl);
+            }
+            vpMap.put(param.getSymbol(), param.getType());
+        }
+
+        for (VariableDecl varDecl : funcDecl.getLocalVarDecls()) {
+            if (!declareInFunction(scope, varDecl)) {
+                throw new SemanticAnalysisException(
+                        "Cannot have duplicate label '" + varDecl.getLabel() + "' in a function.", funcDecl);
+            }
+            vpMap.put(varDecl.getSymbol(), varDecl.getType());
+        }
+
+		return vpMap;
+	}
+
+    /*
+     * Declares a parameter or local variable in its function's scope, unless
+     * the label is already taken there or by a function.  Program variables
+     * can be shadowed.
+     */
+    private static boolean declareInFunction(SymbolScope<Declaration> scope, Declaration decl) {
+        int symbol = decl.getSymbol();
+        if (scope.declaresLocally(symbol) || scope.lookup(symbol) instanceof FunctionDecl) {
+            return false;
+        }
+        scope.declare(symbol, decl);
+        return true;
+    }
+	
+	private void checkNoDuplicateProgLabels() throws SemanticAnalysisException {
+		
+		SymbolScope<Declaration> labels = new SymbolScope<>(null, progAST.getDecls().size());
+		
+ 		for (Declaration decl : progAST.getDecls()) {
+			if (labels.declaresLocally(decl.getSymbol())) {
+				throw new SemanticAnalysisException("Cannot have duplicate label '"
+						+ decl.getLabel() + "' in program", decl);
+			} else {
+				labels.declare(decl.getSymbol(), decl);
+			}
+			
+		}
+		
+		globalScope = labels.freeze();
+	}
+	
+	private void setProgVarAndFuncMaps() {
+		
+		List<Declaration> decls = progAST.getDecls();
+		if (analysisCache != null) {
+			funcSizes = new int[decls.size()];
+		}
+		
+		for (int d = 0; d < decls.size(); d++) {
+			
+			Declaration decl = decls.get(d);
+			int symbol = decl.getSymbol();
+			
+			if (decl instanceof FunctionDecl) {
+				FunctionDecl funcDecl = (FunctionDecl)decl;
+				if (funcSizes != null) {
+					// The last one runs into the program body, so it's
+					// taken to be big enough
+					funcSizes[funcMap.size()] = d + 1 < decls.size()
+							? decls.get(d + 1).getOffset() - decl.getOffset()
+							: Integer.MAX_VALUE;
+				}
+				funcMap.put(symbol, funcDecl);
+				
+			} else if (decl instanceof VariableDecl) {
+				VariableDecl varDecl = (VariableDecl)decl;
+				progVarMap.put(symbol, varDecl.getType());
+			}
+		}
+	}
+
+	@SuppressWarnings("serial")
+	private class AnalyzeFuncDecls extends RecursiveAction {
+		private final Throwable[] failures;
+		private final AtomicInteger firstFailed;
+		private final int batchSize;
+		private final int from;
+		private final int to;
+
+		AnalyzeFuncDecls(Throwable[] failures, AtomicInteger firstFailed, int batchSize, int from, int to) {
+			this.failures = failures;
+			this.firstFailed = firstFailed;
+			this.batchSize = batchSize;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > batchSize) {
+				int mid = (from + to) >>> 1;
+				invokeAll(new AnalyzeFuncDecls(failures, firstFailed, batchSize, from, mid),
+						new AnalyzeFuncDecls(failures, firstFailed, batchSize, mid, to));
+				return;
+			}
+
+			for (int i = from; i < to && i < firstFailed.get(); i++) {
+				try {
+					checkFuncDecl(i);
+				} catch (SemanticAnalysisException | RuntimeException | Error ex) {
+					failures[i] = ex;
+					firstFailed.accumulateAndGet(i, Math::min);
+					return;
+				}
+			}
+		}
+	}
+}
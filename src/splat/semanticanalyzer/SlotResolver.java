@@ -0,0 +1,87 @@
+package splat.semanticanalyzer;
+
+import splat.executor.ExecutionException;
+import splat.lang.SymbolMap;
+import splat.parser.elements.Declaration;
+import splat.parser.elements.FuncParamDecl;
+import splat.parser.elements.FunctionDecl;
+import splat.parser.elements.ProgramAST;
+import splat.parser.elements.Statement;
+import splat.parser.elements.VariableDecl;
+
+/**
+ * Binds every variable reference of a checked program to the slot its value
+ * lives in, so the executor can index straight into a frame or the program
+ * variables instead of hashing labels.
+ *
+ * Program variables are numbered in declaration order, the order the
+ * executor fills in its program variable map.  A function's frame holds its
+ * parameters followed by its local variables.  A label that is neither a
+ * local nor a program variable means the semantic analyzer let something
+ * through, and is reported here, before anything runs.
+ */
+public class SlotResolver {
+
+	private SymbolMap<Integer> globalSlots;
+
+	/**
+	 * Numbers the program variables and resolves every function body.
+	 */
+	public SlotResolver(ProgramAST progAST) throws ExecutionException {
+		this.globalSlots = new SymbolMap<>();
+
+		for (Declaration decl : progAST.getDecls()) {
+			if (decl instanceof VariableDecl) {
+				VariableDecl varDecl = (VariableDecl)decl;
+				varDecl.setSlot(addSlot(globalSlots, varDecl.getSymbol()));
+			}
+		}
+
+		for (Declaration decl : progAST.getDecls()) {
+			if (decl instanceof FunctionDecl) {
+				resolveFuncDecl((FunctionDecl)decl);
+			}
+		}
+	}
+
+	/**
+	 * Resolves a statement of the program body, where only program
+	 * variables are visible.
+	 */
+	public void resolveStmt(Statement stmt) throws ExecutionException {
+		stmt.resolveSlots(null, globalSlots);
+	}
+
+	public SymbolMap<Integer> getGlobalSlots() {
+		return globalSlots;
+	}
+
+	private void resolveFuncDecl(FunctionDecl funcDecl) throws ExecutionException {
+		SymbolMap<Integer> localSlots = new SymbolMap<>(
+				funcDecl.getParams().size() + funcDecl.getLocalVarDecls().size());
+
+		for (FuncParamDecl param : funcDecl.getParams()) {
+			param.setSlot(addSlot(localSlots, param.getSymbol()));
+		}
+		for (VariableDecl varDecl : funcDecl.getLocalVarDecls()) {
+			varDecl.setSlot(addSlot(localSlots, varDecl.getSymbol()));
+		}
+
+		for (Statement stmt : funcDecl.getStmts()) {
+			stmt.resolveSlots(localSlots, globalSlots);
+		}
+	}
+
+	/*
+	 * A label declared twice shares its first slot, just as a second put
+	 * into a SymbolMap replaces the value in place.
+	 */
+	private static int addSlot(SymbolMap<Integer> slots, int symbol) {
+		Integer slot = slots.get(symbol);
+		if (slot == null) {
+			slot = slots.size();
+			slots.put(symbol, slot);
+		}
+		return slot;
+	}
+}